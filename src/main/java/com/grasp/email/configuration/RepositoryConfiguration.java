@@ -0,0 +1,113 @@
+package com.grasp.email.configuration;
+
+import com.grasp.email.repository.BodyCompressor;
+import com.grasp.email.repository.EmailRepository;
+import com.grasp.email.repository.EmailShard;
+import com.grasp.email.repository.InMemoryEmailShard;
+import com.grasp.email.repository.LogEmailRepository;
+import com.grasp.email.repository.MeteredEmailRepository;
+import com.grasp.email.repository.MeteredEmailShard;
+import com.grasp.email.repository.RemoteEmailShard;
+import com.grasp.email.repository.ShardedEmailRepository;
+import com.grasp.email.repository.TieredEmailShard;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selects the {@link EmailRepository} implementation with <code>email.repository.type</code>. Whichever is
+ * selected is timed with a {@link MeteredEmailRepository}, or a {@link MeteredEmailShard} if it can serve as a
+ * shard, and holds message bodies compressed when <code>email.repository.compression.enabled</code> is set. A
+ * process serving as shard <code>n</code> of a sharded repository sets <code>email.repository.shard-index=n</code>,
+ * so that it allocates email identifiers from the shard's range. The log repository can't serve as a shard, as
+ * its mailboxes can't be moved. It pages inactive mailboxes out to disk when
+ * <code>email.repository.log.max-resident-emails</code> is set, while the tiered repository does so without
+ * durability, like the in-memory one
+ */
+@Configuration
+public class RepositoryConfiguration {
+
+    @Bean
+    @ConditionalOnProperty(name = "email.repository.compression.enabled", havingValue = "true")
+    public BodyCompressor bodyCompressor(@Value("${email.repository.compression.threshold:1024}") int threshold,
+                                         @Value("${email.repository.compression.level:6}") int level) {
+        return new BodyCompressor(threshold, level);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "email.repository.type", havingValue = "memory", matchIfMissing = true)
+    public EmailRepository inMemoryEmailRepository(MeterRegistry registry,
+                                                   ObjectProvider<BodyCompressor> compressor,
+                                                   @Value("${email.repository.shard-index:0}") int shardIndex) {
+        return new MeteredEmailShard(new InMemoryEmailShard(compressor.getIfAvailable(), ShardedEmailRepository.firstIdOf(shardIndex)), registry);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "email.repository.type", havingValue = "log")
+    public EmailRepository logEmailRepository(MeterRegistry registry,
+                                              ObjectProvider<BodyCompressor> compressor,
+                                              @Value("${email.repository.log.directory}") Path directory,
+                                              @Value("${email.repository.log.segment-size:67108864}") int segmentSize,
+                                              @Value("${email.repository.log.snapshot-interval:10m}") Duration snapshotInterval,
+                                              @Value("${email.repository.log.replay-threads:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}") int replayThreads,
+                                              @Value("${email.repository.log.max-resident-emails:0}") long maxResidentEmails,
+                                              @Value("${email.repository.tiered.directory:data/cold-mailboxes}") Path coldDirectory,
+                                              @Value("${email.repository.shard-index:0}") int shardIndex,
+                                              @Value("${email.shard.server.enabled:false}") boolean shardServer) throws IOException {
+        if (shardServer) {
+            // Adding a shard moves mailboxes off the existing ones, which the log has no record for
+            throw new IllegalStateException("email.repository.type=log can't serve as a shard, as its mailboxes can't be moved when shards are added");
+        }
+        return new MeteredEmailRepository(new LogEmailRepository(directory, segmentSize, snapshotInterval, replayThreads, compressor.getIfAvailable(),
+                maxResidentEmails > 0 ? coldDirectory : null, maxResidentEmails, ShardedEmailRepository.firstIdOf(shardIndex)), registry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "email.repository.type", havingValue = "tiered")
+    public EmailRepository tieredEmailRepository(MeterRegistry registry,
+                                                 ObjectProvider<BodyCompressor> compressor,
+                                                 @Value("${email.repository.tiered.directory}") Path directory,
+                                                 @Value("${email.repository.tiered.max-resident-emails:1000000}") long maxResidentEmails,
+                                                 @Value("${email.repository.shard-index:0}") int shardIndex) throws IOException {
+        return new MeteredEmailShard(new TieredEmailShard(directory, maxResidentEmails, compressor.getIfAvailable(), ShardedEmailRepository.firstIdOf(shardIndex)), registry);
+    }
+
+    /**
+     * Partitions mailboxes across the processes listed in <code>email.repository.sharded.remotes</code>, the
+     * process at position <code>n</code> serving as shard <code>n</code>, or across in-memory shards in this
+     * process if none are listed
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "email.repository.type", havingValue = "sharded")
+    public EmailRepository shardedEmailRepository(MeterRegistry registry,
+                                                  ObjectProvider<BodyCompressor> compressor,
+                                                  RestTemplateBuilder restTemplateBuilder,
+                                                  @Value("${email.repository.sharded.shards:4}") int shardCount,
+                                                  @Value("${email.repository.sharded.remotes:}") String[] remotes,
+                                                  @Value("${email.repository.sharded.username:}") String username,
+                                                  @Value("${email.repository.sharded.password:}") String password,
+                                                  @Value("${email.repository.sharded.timeout:5s}") Duration timeout) {
+        List<EmailShard> shards = new ArrayList<>();
+        for (String remote : remotes) {
+            if (!remote.isBlank()) {
+                shards.add(new RemoteEmailShard(restTemplateBuilder, remote.strip(), username, password, timeout));
+            }
+        }
+        if (shards.isEmpty()) {
+            for (int i = 0; i < shardCount; i++) {
+                shards.add(new InMemoryEmailShard(compressor.getIfAvailable(), ShardedEmailRepository.firstIdOf(i)));
+            }
+        }
+        return new MeteredEmailRepository(new ShardedEmailRepository(shards), registry);
+    }
+}
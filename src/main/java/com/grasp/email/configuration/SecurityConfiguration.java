@@ -0,0 +1,64 @@
+package com.grasp.email.configuration;
+
+import com.grasp.email.security.MailboxOwnerAuthorizationManager;
+import com.grasp.email.security.TokenAuthenticationFilter;
+import com.grasp.email.security.TokenService;
+import com.grasp.email.security.TokenIssuer;
+import jakarta.servlet.DispatcherType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.web.AuthenticationEntryPoint;
+import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.AnonymousAuthenticationFilter;
+
+import java.util.Base64;
+
+/**
+ * Secures the API with stateless bearer tokens issued by {@link TokenService}. Nothing is held per session:
+ * each request is authenticated from its token alone, with verified tokens cached, and CSRF protection is off
+ * as browsers don't attach bearer tokens by themselves. A user's endpoints are open to that user and to
+ * administrators, and every other endpoint, such as registration and Actuator, to administrators only. Error
+ * and async dispatches and the health endpoint are open, so that errors reach the caller with their own status
+ * rather than as 401, streamed exports can complete, and health probes need no token.
+ * <p>
+ * Tokens are signed with <code>email.security.token.secret</code>, base64 encoded, which must be set. They are
+ * issued by whichever service authenticates users and holds the secret, or by operators with {@link TokenIssuer}.
+ */
+@Configuration
+public class SecurityConfiguration {
+
+    @Bean
+    public TokenService tokenService(@Value("${email.security.token.secret:}") String secret,
+                                     @Value("${email.security.token.cache-size:100000}") long cacheSize) {
+        if (secret.isBlank()) {
+            throw new IllegalStateException("email.security.token.secret must be set to a base64 secret of at least 32 bytes");
+        }
+        return new TokenService(Base64.getDecoder().decode(secret), cacheSize);
+    }
+
+    @Bean
+    public SecurityFilterChain apiSecurityFilterChain(HttpSecurity http, TokenService tokenService) throws Exception {
+        AuthenticationEntryPoint entryPoint = (request, response, e) -> {
+            response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Bearer");
+            response.sendError(HttpStatus.UNAUTHORIZED.value());
+        };
+        return http.csrf(v -> v.disable())
+                .sessionManagement(v -> v.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .requestCache(v -> v.disable())
+                .logout(v -> v.disable())
+                .addFilterBefore(new TokenAuthenticationFilter(tokenService, entryPoint), AnonymousAuthenticationFilter.class)
+                .exceptionHandling(v -> v.authenticationEntryPoint(entryPoint))
+                .authorizeHttpRequests(v -> v
+                        // Error and async dispatches follow a request already authorized, but arrive without its token
+                        .dispatcherTypeMatchers(DispatcherType.ERROR, DispatcherType.ASYNC).permitAll()
+                        .requestMatchers("/actuator/health", "/actuator/health/**").permitAll()
+                        .requestMatchers("/v1/users/{userId}/**").access(new MailboxOwnerAuthorizationManager())
+                        .anyRequest().hasRole("ADMIN"))
+                .build();
+    }
+}
@@ -0,0 +1,32 @@
+package com.grasp.email.configuration;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.web.SecurityFilterChain;
+
+/**
+ * Security for a process serving its repository as a shard, enabled with <code>email.shard.server.enabled</code>.
+ * The shard endpoints below <code>/internal</code> are called by other processes rather than browsers, so
+ * they take the HTTP Basic credentials of <code>spring.security.user</code> on every request, without sessions
+ * or CSRF tokens. Every other endpoint is secured by {@link SecurityConfiguration}
+ */
+@Configuration
+@ConditionalOnProperty(name = "email.shard.server.enabled", havingValue = "true")
+public class ShardServerConfiguration {
+
+    @Bean
+    @Order(1)
+    public SecurityFilterChain shardSecurityFilterChain(HttpSecurity http) throws Exception {
+        return http.securityMatcher("/internal/**")
+                .csrf(v -> v.disable())
+                .sessionManagement(v -> v.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .authorizeHttpRequests(v -> v.anyRequest().authenticated())
+                .httpBasic(Customizer.withDefaults())
+                .build();
+    }
+}
@@ -1,9 +1,74 @@
 package com.grasp.email.configuration;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Web tier configuration. Requests are served on Tomcat's platform thread pool unless
+ * <code>email.web.execution-mode=virtual</code>, in which case each request runs on its own virtual thread
+ * so that requests blocked on storage or delivery don't hold on to a pool thread. Nothing on the request path
+ * caches state per thread, so short-lived virtual threads share identifier blocks, compressors and signers
+ * with the rest. Streamed responses, such as
+ * folder exports, are written by a separate bounded pool. Payloads are negotiated as JSON, CBOR or Smile by
+ * MVC's default converters, which add the binary encodings as their Jackson modules are on the classpath
+ */
+@Slf4j
 @Configuration
 @EnableWebMvc
-public class WebConfiguration {
+public class WebConfiguration implements WebMvcConfigurer {
+    @Value("${email.web.streaming.threads:8}")
+    private int streamingThreads;
+
+    @Value("${email.web.streaming.timeout:30m}")
+    private Duration streamingTimeout;
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(streamingTaskExecutor());
+        configurer.setDefaultTimeout(streamingTimeout.toMillis());
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor streamingTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(streamingThreads);
+        executor.setMaxPoolSize(streamingThreads);
+        executor.setThreadNamePrefix("streaming-");
+        return executor;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "email.web.execution-mode", havingValue = "virtual")
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        log.info("Serving requests on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+
+    /**
+     * Virtual threads need Java 21, which the build only targets through the <code>java21</code> profile, so
+     * the executor is looked up reflectively
+     * @return A virtual thread per task executor
+     * @throws IllegalStateException if the runtime doesn't support virtual threads, so that asking for them
+     *                               fails startup instead of serving on platform threads
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            throw new IllegalStateException("email.web.execution-mode=virtual needs Java 21, but is running on Java " + Runtime.version(), e);
+        }
+    }
 }
@@ -1,30 +1,150 @@
 package com.grasp.email.controller;
 
 import com.grasp.email.exception.ResourceNotFoundException;
+import com.grasp.email.model.BatchItemResult;
+import com.grasp.email.model.Changes;
 import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailSummary;
+import com.grasp.email.model.FolderVersion;
+import com.grasp.email.model.Page;
 import com.grasp.email.service.EmailService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.ContentNegotiationManager;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.math.BigInteger;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 @RestController
 class EmailController {
+    /** The encodings folders are served in, by ETag suffix, in the order MVC's default converters offer them */
+    private static final Map<MediaType, String> ENCODINGS = new LinkedHashMap<>();
+
+    static {
+        ENCODINGS.put(MediaType.APPLICATION_JSON, "json");
+        ENCODINGS.put(new MediaType("application", "x-jackson-smile"), "smile");
+        ENCODINGS.put(MediaType.APPLICATION_CBOR, "cbor");
+    }
+
     @Autowired
     private EmailService service;
 
+    @Autowired
+    private ContentNegotiationManager contentNegotiationManager;
+
 
     /**
-     * Get all emails for the user from their inbox
+     * Get all emails for the user from their inbox. Responses carry the inbox version as their ETag, and
+     * requests whose <code>If-None-Match</code> matches it are answered 304 Not Modified without reading the inbox
      * @param userId The user identifier
+     * @param request The request, checked for conditional headers
      * @return A list of all emails
      */
     @GetMapping("/v1/users/{userId}/emails/inbox")
-    public List<Email> getInbox(@PathVariable("userId") BigInteger userId) {
-        return service.getInbox(userId);
+    public ResponseEntity<List<Email>> getInbox(@PathVariable("userId") long userId, WebRequest request) {
+        return conditional(request, service.getInboxVersion(userId), () -> service.getInbox(userId));
+    }
+
+    /**
+     * Get a page of emails for the user from their inbox, newest first. Conditional as {@link #getInbox}
+     * @param userId The user identifier
+     * @param limit The maximum number of emails to return
+     * @param cursor The cursor returned with the previous page, omitted for the first page
+     * @param request The request, checked for conditional headers
+     * @return A page of emails
+     */
+    @GetMapping(value = "/v1/users/{userId}/emails/inbox", params = "limit")
+    public ResponseEntity<Page<Email>> getInboxPage(@PathVariable("userId") long userId,
+                                                    @RequestParam("limit") int limit,
+                                                    @RequestParam(value = "cursor", required = false) String cursor,
+                                                    WebRequest request) {
+        return conditional(request, service.getInboxVersion(userId), () -> service.getInbox(userId, limit, cursor));
+    }
+
+    /**
+     * Get summaries of all emails for the user from their inbox, without message bodies or recipients.
+     * Conditional as {@link #getInbox}
+     * @param userId The user identifier
+     * @param request The request, checked for conditional headers
+     * @return A list of all email summaries
+     */
+    @GetMapping(value = "/v1/users/{userId}/emails/inbox", params = "view=summary")
+    public ResponseEntity<List<EmailSummary>> getInboxSummaries(@PathVariable("userId") long userId, WebRequest request) {
+        return conditional(request, service.getInboxVersion(userId), () -> service.getInboxSummaries(userId));
+    }
+
+    /**
+     * Get a page of email summaries for the user from their inbox, newest first, without message bodies or recipients.
+     * Conditional as {@link #getInbox}
+     * @param userId The user identifier
+     * @param limit The maximum number of summaries to return
+     * @param cursor The cursor returned with the previous page, omitted for the first page
+     * @param request The request, checked for conditional headers
+     * @return A page of email summaries
+     */
+    @GetMapping(value = "/v1/users/{userId}/emails/inbox", params = {"limit", "view=summary"})
+    public ResponseEntity<Page<EmailSummary>> getInboxSummariesPage(@PathVariable("userId") long userId,
+                                                                    @RequestParam("limit") int limit,
+                                                                    @RequestParam(value = "cursor", required = false) String cursor,
+                                                                    WebRequest request) {
+        return conditional(request, service.getInboxVersion(userId), () -> service.getInboxSummaries(userId, limit, cursor));
+    }
+
+    /**
+     * Get the latest change to each of the user's emails changed since the client last synchronised, oldest
+     * first, so that a client holding the mailbox only downloads what is new. When the changes are no longer
+     * known, the response asks the client to resync: to download the mailbox again, then synchronise from the
+     * token returned
+     * @param userId The user identifier
+     * @param since The token returned with the previous changes, omitted if the client holds nothing
+     * @return The changes and the token to synchronise from next time
+     */
+    @GetMapping("/v1/users/{userId}/emails/changes")
+    public Changes getChanges(@PathVariable("userId") long userId, @RequestParam(value = "since", required = false) String since) {
+        return service.getChanges(userId, since);
+    }
+
+    /**
+     * Search the user's emails by subject, message and addresses, best matches first
+     * @param userId The user identifier
+     * @param query The query. Every term must match
+     * @param folder The folder to search, omitted to search every folder
+     * @param limit The maximum number of summaries to return
+     * @param cursor The cursor returned with the previous page, omitted for the first page
+     * @return A page of matching email summaries
+     */
+    @GetMapping("/v1/users/{userId}/emails/search")
+    public Page<EmailSummary> search(@PathVariable("userId") long userId,
+                                     @RequestParam("q") String query,
+                                     @RequestParam(value = "folder", required = false) String folder,
+                                     @RequestParam(value = "limit", defaultValue = "20") int limit,
+                                     @RequestParam(value = "cursor", required = false) String cursor) {
+        return service.search(userId, query, folder, limit, cursor);
+    }
+
+    /**
+     * Export every email in one of the user's folders as newline-delimited JSON, newest first. The response
+     * is streamed as it is read from the mailbox, so exports of any size start immediately
+     * @param userId The user identifier
+     * @param folder The folder name
+     * @return The streamed emails
+     */
+    @GetMapping(value = "/v1/users/{userId}/emails/{folder}/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportFolder(@PathVariable("userId") long userId, @PathVariable("folder") String folder) {
+        StreamingResponseBody body = out -> service.exportFolder(userId, folder, out);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 
     /**
@@ -34,7 +154,7 @@ class EmailController {
      * @return The requested email, or <code>null</code> if it doesn't exist
      */
     @GetMapping("/v1/users/{userId}/emails/{emailId}")
-    public Email getById(@PathVariable("userId") BigInteger userId, @PathVariable("emailId") BigInteger emailId) {
+    public Email getById(@PathVariable("userId") long userId, @PathVariable("emailId") long emailId) {
         Email email = service.get(userId, emailId);
         if (email == null) {
             throw new ResourceNotFoundException();
@@ -50,10 +170,21 @@ class EmailController {
      */
     @PostMapping("/v1/users/{userId}/emails/drafts")
     @ResponseStatus(HttpStatus.CREATED)
-    public Email createDraft(@PathVariable("userId") BigInteger userId, @RequestBody Email email) {
+    public Email createDraft(@PathVariable("userId") long userId, @RequestBody Email email) {
         return service.createDraft(userId, email);
     }
 
+    /**
+     * Save a batch of emails in the drafts folder, allocating each a unique identifier
+     * @param userId The user identifier
+     * @param emails The draft emails
+     * @return The result for each email, in the order submitted
+     */
+    @PostMapping("/v1/users/{userId}/emails/drafts/batch")
+    public List<BatchItemResult> createDrafts(@PathVariable("userId") long userId, @RequestBody List<Email> emails) {
+        return service.createDrafts(userId, emails);
+    }
+
     /**
      * Save the submitted email in the drafts folder and allocates it a unique identifier
      * @param userId The user identifier
@@ -62,7 +193,7 @@ class EmailController {
      */
     @PutMapping("/v1/users/{userId}/emails/drafts")
     @ResponseStatus(HttpStatus.OK)
-    public void updateDraft(@PathVariable("userId") BigInteger userId, @RequestBody Email email) {
+    public void updateDraft(@PathVariable("userId") long userId, @RequestBody Email email) {
         service.updateDraft(userId, email);
     }
 
@@ -75,9 +206,74 @@ class EmailController {
      */
     @PostMapping("/v1/users/{userId}/emails")
     @ResponseStatus(HttpStatus.OK)
-    public ResponseEntity<Email> send(@PathVariable("userId") BigInteger userId, @RequestBody Email email) {
+    public ResponseEntity<Email> send(@PathVariable("userId") long userId, @RequestBody Email email) {
         HttpStatus status = email.getId() == null? HttpStatus.CREATED : HttpStatus.OK;
         Email updatedEmail = service.send(userId, email);
         return new ResponseEntity<>(updatedEmail, status);
     }
+
+    /**
+     * Send a batch of emails to their recipients and move them to the sent folder
+     * @param userId The user identifier
+     * @param emails The emails
+     * @return The result for each email, in the order submitted
+     */
+    @PostMapping("/v1/users/{userId}/emails/batch")
+    public List<BatchItemResult> sendAll(@PathVariable("userId") long userId, @RequestBody List<Email> emails) {
+        return service.sendAll(userId, emails);
+    }
+
+    /**
+     * Answer a read of a folder conditionally on its version, which must be read before the folder itself so
+     * that the version served is never newer than the contents. Responses must be revalidated before reuse.
+     * The same version is served as JSON, CBOR or Smile, so the ETag names the encoding negotiated from the
+     * <code>Accept</code> header and responses vary by it, keeping each encoding's copy apart in caches
+     * @param request The request, checked for <code>If-None-Match</code> and <code>If-Modified-Since</code>
+     * @param version The version of the folder
+     * @param body Reads the folder, only called if the client's copy is out of date
+     * @return The response, or <code>null</code> if the request has been answered 304 Not Modified
+     */
+    private <T> ResponseEntity<T> conditional(WebRequest request, FolderVersion version, Supplier<T> body) {
+        String etag = '"' + version.getTag() + '-' + negotiatedEncoding(request) + '"';
+        long lastModified = version.getLastModified() > 0 ? version.getLastModified() : -1;
+        // Set directly on the response, so that 304 Not Modified responses carry it too
+        if (request instanceof ServletWebRequest servletRequest && servletRequest.getResponse() != null) {
+            servletRequest.getResponse().addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        }
+        if (request.checkNotModified(etag, lastModified)) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(etag);
+        if (lastModified > 0) {
+            response.lastModified(lastModified);
+        }
+        return response.body(body.get());
+    }
+
+    /**
+     * @param request The request
+     * @return The encoding MVC will write the response in: the first of the encodings its converters offer
+     *         that is compatible with the media types the request accepts, as resolved by MVC's content
+     *         negotiation, or JSON if none are
+     */
+    private String negotiatedEncoding(WebRequest request) {
+        List<MediaType> accepted;
+        try {
+            accepted = request instanceof NativeWebRequest nativeRequest
+                    ? contentNegotiationManager.resolveMediaTypes(nativeRequest)
+                    : ContentNegotiationManager.MEDIA_TYPE_ALL_LIST;
+        } catch (HttpMediaTypeNotAcceptableException e) {
+            return "json";
+        }
+        for (MediaType type : accepted) {
+            for (Map.Entry<MediaType, String> encoding : ENCODINGS.entrySet()) {
+                if (type.isCompatibleWith(encoding.getKey())) {
+                    return encoding.getValue();
+                }
+            }
+        }
+        return "json";
+    }
 }
@@ -0,0 +1,157 @@
+package com.grasp.email.controller;
+
+import com.grasp.email.model.Changes;
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailSummary;
+import com.grasp.email.model.FolderVersion;
+import com.grasp.email.model.MailboxUsage;
+import com.grasp.email.model.Page;
+import com.grasp.email.repository.EmailRepository;
+import com.grasp.email.repository.EmailShard;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Serves this process's repository as a shard of a <code>ShardedEmailRepository</code> in another process,
+ * which reaches it through a <code>RemoteEmailShard</code>. Operations map one to one onto the repository's,
+ * below <code>/internal/shard</code>, with rejected requests answered 400 Bad Request, conflicting writes
+ * 409 Conflict, and missing emails 204 No Content. Enabled with <code>email.shard.server.enabled</code>
+ */
+@RestController
+@RequestMapping("/internal/shard")
+@ConditionalOnProperty(name = "email.shard.server.enabled", havingValue = "true")
+class ShardController {
+    @Autowired
+    private EmailRepository repository;
+
+    @GetMapping("/users/{userId}/inbox")
+    public List<Email> getInbox(@PathVariable("userId") long userId) {
+        return repository.getInboxForUserId(userId);
+    }
+
+    @GetMapping("/users/{userId}/inbox/page")
+    public Page<Email> getInboxPage(@PathVariable("userId") long userId,
+                                    @RequestParam("limit") int limit,
+                                    @RequestParam(value = "cursor", required = false) String cursor) {
+        return repository.getInboxForUserId(userId, limit, cursor);
+    }
+
+    @GetMapping("/users/{userId}/inbox/summaries")
+    public List<EmailSummary> getInboxSummaries(@PathVariable("userId") long userId) {
+        return repository.getInboxSummariesForUserId(userId);
+    }
+
+    @GetMapping("/users/{userId}/inbox/summaries/page")
+    public Page<EmailSummary> getInboxSummariesPage(@PathVariable("userId") long userId,
+                                                    @RequestParam("limit") int limit,
+                                                    @RequestParam(value = "cursor", required = false) String cursor) {
+        return repository.getInboxSummariesForUserId(userId, limit, cursor);
+    }
+
+    @GetMapping("/users/{userId}/folders/{folder}")
+    public Page<Email> getFolder(@PathVariable("userId") long userId,
+                                 @PathVariable("folder") String folder,
+                                 @RequestParam("limit") int limit,
+                                 @RequestParam(value = "cursor", required = false) String cursor) {
+        return repository.getFolderForUserId(userId, folder, limit, cursor);
+    }
+
+    @GetMapping("/users/{userId}/search")
+    public Page<EmailSummary> search(@PathVariable("userId") long userId,
+                                     @RequestParam("query") String query,
+                                     @RequestParam(value = "folder", required = false) String folder,
+                                     @RequestParam("limit") int limit,
+                                     @RequestParam(value = "cursor", required = false) String cursor) {
+        return repository.searchForUserId(userId, query, folder, limit, cursor);
+    }
+
+    @GetMapping("/users/{userId}/folders/{folder}/version")
+    public FolderVersion getFolderVersion(@PathVariable("userId") long userId, @PathVariable("folder") String folder) {
+        return repository.getFolderVersionForUserId(userId, folder);
+    }
+
+    @GetMapping("/users/{userId}/changes")
+    public Changes getChanges(@PathVariable("userId") long userId, @RequestParam(value = "since", required = false) String since) {
+        return repository.getChangesForUserId(userId, since);
+    }
+
+    @GetMapping("/users/{userId}/usage")
+    public MailboxUsage getUsage(@PathVariable("userId") long userId) {
+        return repository.getUsageForUserId(userId);
+    }
+
+    @GetMapping("/users/{userId}/emails/{emailId}")
+    public ResponseEntity<Email> getEmail(@PathVariable("userId") long userId, @PathVariable("emailId") long emailId) {
+        return orNoContent(repository.getEmailForUserIdAndEmailId(userId, emailId));
+    }
+
+    @PostMapping("/emails")
+    public Email saveEmail(@RequestBody Email email) {
+        return repository.saveEmail(email);
+    }
+
+    @PostMapping("/emails/batch")
+    public List<Email> saveAll(@RequestBody List<Email> emails) {
+        return repository.saveAll(emails);
+    }
+
+    @PutMapping("/emails")
+    public ResponseEntity<Email> replaceEmail(@RequestBody Email email, @RequestParam("expectedFolder") String expectedFolder) {
+        return orNoContent(repository.replaceEmail(email, expectedFolder));
+    }
+
+    @PostMapping("/users/{userId}/emails/{emailId}/move")
+    public ResponseEntity<Email> moveEmail(@PathVariable("userId") long userId,
+                                           @PathVariable("emailId") long emailId,
+                                           @RequestParam("from") String fromFolder,
+                                           @RequestParam("to") String toFolder) {
+        return orNoContent(repository.moveEmail(userId, emailId, fromFolder, toFolder));
+    }
+
+    @GetMapping("/users")
+    public Collection<Long> getUserIds() {
+        return shard().getUserIds();
+    }
+
+    @GetMapping("/users/{userId}/mailbox")
+    public List<Email> exportMailbox(@PathVariable("userId") long userId) {
+        return shard().exportMailbox(userId);
+    }
+
+    @PostMapping("/mailboxes")
+    public void importMailbox(@RequestBody List<Email> emails) {
+        shard().importMailbox(emails);
+    }
+
+    @DeleteMapping("/users/{userId}/mailbox")
+    public void removeMailbox(@PathVariable("userId") long userId) {
+        shard().removeMailbox(userId);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> rejected(IllegalArgumentException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<String> conflicted(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+
+    private EmailShard shard() {
+        if (repository instanceof EmailShard shard) {
+            return shard;
+        }
+        throw new UnsupportedOperationException(repository.getClass().getSimpleName() + " cannot act as a shard");
+    }
+
+    private static <T> ResponseEntity<T> orNoContent(T body) {
+        return body == null ? ResponseEntity.noContent().build() : ResponseEntity.ok(body);
+    }
+}
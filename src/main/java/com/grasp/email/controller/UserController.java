@@ -0,0 +1,24 @@
+package com.grasp.email.controller;
+
+import com.grasp.email.model.User;
+import com.grasp.email.service.UserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+class UserController {
+    @Autowired
+    private UserService service;
+
+    /**
+     * Register a local user and allocate them a unique identifier
+     * @param user The user, which must have an address
+     * @return The user, post save
+     */
+    @PostMapping("/v1/users")
+    @ResponseStatus(HttpStatus.CREATED)
+    public User register(@RequestBody User user) {
+        return service.register(user);
+    }
+}
@@ -0,0 +1,8 @@
+package com.grasp.email.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.INSUFFICIENT_STORAGE)
+public class QuotaExceededException extends RuntimeException {
+}
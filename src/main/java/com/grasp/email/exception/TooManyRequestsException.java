@@ -0,0 +1,36 @@
+package com.grasp.email.exception;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+
+/**
+ * Answers 429 Too Many Requests, telling the client in <code>Retry-After</code> how many seconds to wait before
+ * retrying. Extends {@link ResponseStatusException} rather than carrying <code>@ResponseStatus</code>, as the
+ * header is set from the exception
+ */
+public class TooManyRequestsException extends ResponseStatusException {
+    private final Duration retryAfter;
+
+    /**
+     * @param retryAfter How long the client should wait, rounded up to whole seconds and to at least one
+     */
+    public TooManyRequestsException(Duration retryAfter) {
+        super(HttpStatus.TOO_MANY_REQUESTS);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        long seconds = Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(seconds));
+        return headers;
+    }
+}
@@ -0,0 +1,34 @@
+package com.grasp.email.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The outcome of one email in a batch request, reported with the HTTP status the email would have
+ * received on its own, in the same position as the email in the request
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResult {
+    @JsonProperty
+    private int status;
+    /** The stored email, or <code>null</code> if the email was rejected */
+    @JsonProperty
+    private Email email;
+    /** Why the email was rejected, or <code>null</code> if it was stored */
+    @JsonProperty
+    private String error;
+
+    public static BatchItemResult stored(int status, Email email) {
+        return new BatchItemResult(status, email, null);
+    }
+
+    public static BatchItemResult rejected(int status, String error) {
+        return new BatchItemResult(status, null, error);
+    }
+}
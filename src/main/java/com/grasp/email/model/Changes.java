@@ -0,0 +1,30 @@
+package com.grasp.email.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * The changes made to a mailbox since a client last synchronised, oldest first, with the token to
+ * synchronise from next time
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Changes {
+    /** The latest change to each email changed since the token given, or empty if a resync is needed */
+    @JsonProperty
+    private List<EmailChange> changes;
+    /** Token identifying the state of the mailbox the changes bring the client up to */
+    @JsonProperty
+    private String nextToken;
+    /**
+     * Whether the changes since the token given are no longer known, so the client must discard what it
+     * holds and download the mailbox again, synchronising from <code>nextToken</code> afterwards
+     */
+    @JsonProperty
+    private boolean resync;
+}
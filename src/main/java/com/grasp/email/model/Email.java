@@ -8,7 +8,6 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.math.BigInteger;
 import java.util.List;
 
 @Data
@@ -21,9 +20,9 @@ public class Email {
     public static final String SENT = "sent";
 
     @JsonProperty
-    private BigInteger id;
+    private Long id;
     @JsonProperty
-    private BigInteger userId;
+    private Long userId;
     @JsonProperty
     private String folder;
     @JsonProperty
@@ -38,4 +37,7 @@ public class Email {
     private String subject;
     @JsonProperty
     private String message;
+    /** Incremented by the repository each time the email is saved, to detect conflicting updates */
+    @JsonProperty
+    private Long version;
 }
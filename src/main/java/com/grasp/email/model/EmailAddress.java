@@ -1,17 +1,21 @@
 package com.grasp.email.model;
 
-import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import lombok.Value;
 
-@Data
-@NoArgsConstructor
-@AllArgsConstructor
+/**
+ * An address and the display name that goes with it. Immutable, so that stored emails can share one instance
+ * of each distinct address rather than copying it into every email
+ */
+@Value
 public class EmailAddress {
-    @JsonProperty
-    private String address;
-    @JsonProperty
-    private String senderInfo;
+    String address;
+    String senderInfo;
+
+    @JsonCreator
+    public EmailAddress(@JsonProperty("address") String address, @JsonProperty("senderInfo") String senderInfo) {
+        this.address = address;
+        this.senderInfo = senderInfo;
+    }
 }
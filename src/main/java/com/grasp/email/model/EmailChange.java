@@ -0,0 +1,22 @@
+package com.grasp.email.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A change to one email in a mailbox: the email was stored, modified or moved, and is now filed under the
+ * folder at the version given. The email itself is fetched separately if the client needs it
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmailChange {
+    @JsonProperty
+    private Long id;
+    @JsonProperty
+    private String folder;
+    @JsonProperty
+    private Long version;
+}
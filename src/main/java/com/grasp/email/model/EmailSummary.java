@@ -0,0 +1,64 @@
+package com.grasp.email.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+
+/**
+ * Headers-only view of an {@link Email}, for listing folders without their message bodies and
+ * recipient lists
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmailSummary {
+    public static final int SNIPPET_LENGTH = 100;
+
+    @JsonProperty
+    private Long id;
+    @JsonProperty
+    private String folder;
+    @JsonProperty
+    private EmailAddress sender;
+    @JsonProperty
+    private String subject;
+    @JsonProperty
+    private String snippet;
+
+    /**
+     * Summarise the email, taking a snippet of the start of its message with runs of whitespace collapsed
+     * @param email The email
+     * @return The summary
+     */
+    public static EmailSummary of(Email email) {
+        return new EmailSummary(email.getId(), email.getFolder(), email.getSender(), email.getSubject(), snippetOf(email.getMessage()));
+    }
+
+    /**
+     * Take a snippet of the start of the message, with runs of whitespace collapsed
+     * @param message The message body
+     * @return The snippet, or <code>null</code> if there is no message
+     */
+    public static String snippetOf(String message) {
+        if (message == null) {
+            return null;
+        }
+        StringBuilder snippet = new StringBuilder(Math.min(message.length(), SNIPPET_LENGTH));
+        boolean whitespace = false;
+        for (int i = 0; i < message.length() && snippet.length() < SNIPPET_LENGTH; i++) {
+            char c = message.charAt(i);
+            if (Character.isWhitespace(c)) {
+                whitespace = snippet.length() > 0;
+            } else {
+                if (whitespace) {
+                    snippet.append(' ');
+                    whitespace = false;
+                }
+                snippet.append(c);
+            }
+        }
+        return snippet.length() > SNIPPET_LENGTH ? snippet.substring(0, SNIPPET_LENGTH) : snippet.toString();
+    }
+}
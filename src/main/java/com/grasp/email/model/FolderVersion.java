@@ -0,0 +1,27 @@
+package com.grasp.email.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Value;
+
+/**
+ * The version of one of a user's folders, which changes whenever an email is filed under, changed in or moved
+ * out of the folder. Served as the <code>ETag</code> and <code>Last-Modified</code> of folder listings, so
+ * that clients polling an unchanged folder can be answered without reading it
+ */
+@Value
+public class FolderVersion {
+    /** Version of a folder in a mailbox that doesn't exist */
+    public static final FolderVersion EMPTY = new FolderVersion("0", 0);
+
+    /** Opaque tag, which differs whenever the contents of the folder may differ */
+    String tag;
+    /** Time of the last change to the folder in milliseconds since the epoch, or 0 if it has never changed */
+    long lastModified;
+
+    @JsonCreator
+    public FolderVersion(@JsonProperty("tag") String tag, @JsonProperty("lastModified") long lastModified) {
+        this.tag = tag;
+        this.lastModified = lastModified;
+    }
+}
@@ -0,0 +1,21 @@
+package com.grasp.email.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The storage a user's mailbox takes up, counted against their quota
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MailboxUsage {
+    /** The number of emails in the mailbox, in every folder */
+    @JsonProperty
+    private long emails;
+    /** The estimated size of the emails as they were stored, before any compression or deduplication */
+    @JsonProperty
+    private long bytes;
+}
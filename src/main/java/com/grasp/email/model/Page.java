@@ -0,0 +1,23 @@
+package com.grasp.email.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * A single page of results, newest first, with an opaque cursor to fetch the page that follows
+ * @param <T> Item class
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Page<T> {
+    @JsonProperty
+    private List<T> items;
+    /** Cursor for the next page, or <code>null</code> if this is the last page */
+    @JsonProperty
+    private String nextCursor;
+}
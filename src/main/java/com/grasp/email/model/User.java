@@ -1,15 +1,24 @@
 package com.grasp.email.model;
 
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
 import lombok.Data;
-
-import java.math.BigInteger;
+import lombok.NoArgsConstructor;
 
 @Data
+@NoArgsConstructor
+@AllArgsConstructor
 public class User {
-    private BigInteger id;
+    @JsonProperty
+    private Long id;
+    @JsonProperty
     private String forename;
+    @JsonProperty
     private String surname;
+    /** The local email address that mail is delivered to for this user */
+    @JsonProperty
+    private String address;
 
 
 }
@@ -0,0 +1,127 @@
+package com.grasp.email.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses message bodies above a size threshold with Deflate, primed with a preset dictionary of text
+ * common to email so that short bodies compress well too. {@link Deflater}s and {@link Inflater}s are pooled
+ * and reused, so compressing and decompressing usually allocate only the buffers they return. The pools are
+ * bounded rather than per thread, so that requests served on virtual threads share them, and any instance
+ * beyond the bound is ended to release its native memory rather than waiting for the garbage collector
+ */
+public class BodyCompressor {
+    /** Phrases common to email bodies. The most common come last, where Deflate can reach them most cheaply */
+    private static final byte[] DICTIONARY = ("Please find attached the document. Let me know if you have any questions. "
+            + "I hope this email finds you well. Could you please confirm that you have received this? "
+            + "Looking forward to hearing from you. Following up on our conversation yesterday about the meeting "
+            + "on Monday, Tuesday, Wednesday, Thursday, Friday next week. Please let me know your availability. "
+            + "Unsubscribe from this mailing list. This email and any attachments are confidential and intended "
+            + "solely for the use of the individual to whom they are addressed. If you have received this email in error "
+            + "please notify the sender immediately and delete it. Sent from my phone. "
+            + "-----Original Message-----\nFrom: \nSent: \nTo: \nCc: \nSubject: RE: FW: \n"
+            + "Best regards,\nKind regards,\nMany thanks,\nThanks,\nRegards,\nHi all,\nHello,\nDear \n\n"
+            + " the and to of you for that this with have will your are on in is be it we as at").getBytes(StandardCharsets.UTF_8);
+
+    /** Instances pooled of each kind, enough for every processor to be compressing at once */
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final int threshold;
+    private final int level;
+    private final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    /**
+     * @param threshold Bodies of at least this many characters are compressed
+     * @param level The Deflate compression level, from 1 for fastest to 9 for smallest
+     */
+    public BodyCompressor(int threshold, int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between 1 and 9");
+        }
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    /**
+     * @param body The body
+     * @return Whether the body is long enough to be offered for compression
+     */
+    boolean accepts(String body) {
+        return body != null && body.length() >= threshold;
+    }
+
+    /**
+     * Compress the body if it is long enough, and compressing it saves space
+     * @param body The body
+     * @return The compressed body, or <code>null</code> if it should be stored uncompressed
+     */
+    byte[] compress(String body) {
+        if (!accepts(body)) {
+            return null;
+        }
+        byte[] input = body.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level);
+        }
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(input);
+            deflater.finish();
+            // Only worth keeping if it saves at least an eighth, which also bounds the output buffer
+            byte[] output = new byte[input.length - input.length / 8];
+            int length = deflater.deflate(output);
+            if (!deflater.finished()) {
+                return null;
+            }
+            return Arrays.copyOf(output, length);
+        } finally {
+            deflater.reset();
+            if (!deflaters.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * @param compressed A body returned by {@link #compress}
+     * @return The original body
+     */
+    String decompress(byte[] compressed) {
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        inflater.setInput(compressed);
+        byte[] output = new byte[Math.max(64, compressed.length * 4)];
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (length == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                int inflated = inflater.inflate(output, length, output.length - length);
+                if (inflated == 0 && inflater.needsDictionary()) {
+                    inflater.setDictionary(DICTIONARY);
+                } else if (inflated == 0 && inflater.needsInput()) {
+                    throw new IllegalStateException("Truncated compressed body");
+                }
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed body", e);
+        } finally {
+            inflater.reset();
+            if (!inflaters.offer(inflater)) {
+                inflater.end();
+            }
+        }
+        return new String(output, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,173 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.Email;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Local disk store for mailboxes paged out of memory, holding each user's emails in a file of their own.
+ * Each file holds a count of emails followed by each email in {@link EmailCodec} form, framed by its length
+ * and a CRC32 of its contents.
+ * <p>
+ * The store only extends memory and is not durable: files are not forced to disk, and any left by a previous
+ * run are deleted when the store is opened. The users with a file are tracked in memory, so that looking up a
+ * user who has never been paged out doesn't touch the disk. Callers must not read and write the same user
+ * concurrently.
+ */
+class ColdMailboxStore {
+    private static final String SUFFIX = ".mailbox";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final Set<Long> userIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param directory The directory holding the files, created if it doesn't exist and emptied if it does
+     */
+    ColdMailboxStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SUFFIX) || name.endsWith(TEMPORARY_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param userId The user identifier
+     * @return Whether the user's mailbox is held on disk
+     */
+    boolean contains(long userId) {
+        return userIds.contains(userId);
+    }
+
+    /**
+     * @return The identifiers of the users whose mailboxes are held on disk
+     */
+    Set<Long> getUserIds() {
+        return userIds;
+    }
+
+    /**
+     * @return The number of mailboxes held on disk
+     */
+    int size() {
+        return userIds.size();
+    }
+
+    /**
+     * Write the user's emails, replacing any previously written. Writing no emails deletes the user's file
+     * @param userId The user identifier
+     * @param emails The emails, in the order they should be restored
+     */
+    void write(long userId, List<Email> emails) throws IOException {
+        if (emails.isEmpty()) {
+            delete(userId);
+            return;
+        }
+        Path file = fileOf(userId);
+        Path temporary = directory.resolve(file.getFileName() + TEMPORARY_SUFFIX);
+        try (OutputStream stream = Files.newOutputStream(temporary);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+            CRC32 crc = new CRC32();
+            out.writeInt(emails.size());
+            for (Email email : emails) {
+                byte[] record = EmailCodec.encode(email);
+                crc.reset();
+                crc.update(record);
+                out.writeInt(record.length);
+                out.writeInt((int) crc.getValue());
+                out.write(record);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        userIds.add(userId);
+    }
+
+    /**
+     * Read the user's emails and delete their file, as the emails are then held in memory
+     * @param userId The user identifier
+     * @return The emails in the order written, or <code>null</code> if the user's mailbox isn't held on disk
+     * @throws IllegalStateException if the file is corrupt
+     */
+    List<Email> take(long userId) throws IOException {
+        List<Email> emails = read(userId);
+        if (emails != null) {
+            delete(userId);
+        }
+        return emails;
+    }
+
+    /**
+     * Read the user's emails, leaving their file in place
+     * @param userId The user identifier
+     * @return The emails in the order written, or <code>null</code> if the user's mailbox isn't held on disk
+     * @throws IllegalStateException if the file is corrupt
+     */
+    List<Email> read(long userId) throws IOException {
+        if (!userIds.contains(userId)) {
+            return null;
+        }
+        Path file = fileOf(userId);
+        List<Email> emails;
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16))) {
+            int count = in.readInt();
+            emails = new ArrayList<>(count);
+            CRC32 crc = new CRC32();
+            for (int i = 0; i < count; i++) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                byte[] record = new byte[length];
+                in.readFully(record);
+                crc.reset();
+                crc.update(record);
+                if ((int) crc.getValue() != checksum) {
+                    throw new IllegalStateException("Corrupt record in " + file);
+                }
+                emails.add(EmailCodec.decode(ByteBuffer.wrap(record)));
+            }
+        } catch (NoSuchFileException e) {
+            userIds.remove(userId);
+            return null;
+        } catch (EOFException e) {
+            throw new IllegalStateException("Truncated mailbox file " + file, e);
+        }
+        return emails;
+    }
+
+    /**
+     * Delete the user's file, if they have one
+     * @param userId The user identifier
+     */
+    void delete(long userId) throws IOException {
+        userIds.remove(userId);
+        Files.deleteIfExists(fileOf(userId));
+    }
+
+    private Path fileOf(long userId) {
+        return directory.resolve(userId + SUFFIX);
+    }
+}
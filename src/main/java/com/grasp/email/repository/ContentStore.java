@@ -0,0 +1,114 @@
+package com.grasp.email.repository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed store of message content shared between mailbox entries. Each distinct message is held
+ * once however many mailboxes it is delivered to, and is freed as soon as the last entry referring to it is
+ * released. Reference counts are only changed inside the map's atomic compute operations. If the store has
+ * a {@link BodyCompressor}, each distinct message's body is offered to it once, when the message is first stored
+ */
+class ContentStore {
+    private final Map<MessageContent, MessageContent> contents = new ConcurrentHashMap<>();
+    private final BodyCompressor compressor;
+    private final AtomicLong estimatedBytes = new AtomicLong();
+    private final AtomicLong compressedBodyLength = new AtomicLong();
+    private final AtomicLong compressedBodyBytes = new AtomicLong();
+
+    ContentStore() {
+        this(null);
+    }
+
+    /**
+     * @param compressor Compresses stored bodies, or <code>null</code> to store them uncompressed
+     */
+    ContentStore(BodyCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    /**
+     * Take a reference to the stored content equal to the supplied content, storing it if it isn't already held.
+     * A new body is compressed before it is stored rather than inside the map's compute, and is digested
+     * beforehand so that it is matched against a compacted copy without decompressing it, so that no other
+     * content sharing its bin waits on the compressor. If another thread stores equal content meanwhile, its
+     * copy is shared and the compressed one dropped
+     * @param content The content, which mustn't be shared yet
+     * @return The shared instance of the content, which must later be passed to {@link #release}
+     */
+    MessageContent acquire(MessageContent content) {
+        if (compressor != null) {
+            // Lets an equal compacted copy be matched inside the compute without decompressing it
+            content.digestMessage(compressor);
+        }
+        MessageContent shared = contents.computeIfPresent(content, (k, v) -> {
+            v.references++;
+            return v;
+        });
+        if (shared != null) {
+            return shared;
+        }
+        boolean compacted = compressor != null && content.compact(compressor);
+        return contents.compute(content, (k, v) -> {
+            if (v != null) {
+                v.references++;
+                return v;
+            }
+            if (compacted) {
+                compressedBodyLength.addAndGet(k.getMessageLength());
+                compressedBodyBytes.addAndGet(k.getCompressedLength());
+            }
+            estimatedBytes.addAndGet(k.getEstimatedBytes());
+            k.references++;
+            return k;
+        });
+    }
+
+    /**
+     * Drop a reference to the shared content, freeing it if nothing else refers to it
+     * @param content The shared instance returned by {@link #acquire}
+     */
+    void release(MessageContent content) {
+        contents.computeIfPresent(content, (k, v) -> {
+            if (--v.references > 0) {
+                return v;
+            }
+            estimatedBytes.addAndGet(-v.getEstimatedBytes());
+            if (v.getCompressedLength() > 0) {
+                compressedBodyLength.addAndGet(-v.getMessageLength());
+                compressedBodyBytes.addAndGet(-v.getCompressedLength());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @return The number of distinct messages held
+     */
+    int size() {
+        return contents.size();
+    }
+
+    /**
+     * @return An estimate of the bytes held by the distinct messages, assuming compact strings
+     */
+    long getEstimatedBytes() {
+        return estimatedBytes.get();
+    }
+
+    /**
+     * @return Whether bodies are offered for compression
+     */
+    boolean isCompressing() {
+        return compressor != null;
+    }
+
+    /**
+     * @return The characters in compressed bodies per byte they are compressed to, or <code>1</code> if none are compressed
+     */
+    double getCompressionRatio() {
+        long bytes = compressedBodyBytes.get();
+        return bytes == 0 ? 1 : (double) compressedBodyLength.get() / bytes;
+    }
+}
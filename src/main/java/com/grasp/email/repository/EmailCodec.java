@@ -0,0 +1,158 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding of a stored {@link Email}. Identifiers are fixed width, strings are length-prefixed
+ * UTF-8 with a length of <code>-1</code> for <code>null</code>, and address lists are count-prefixed with a
+ * count of <code>-1</code> for <code>null</code>
+ */
+final class EmailCodec {
+    private static final int NULL = -1;
+
+    private EmailCodec() {
+    }
+
+    static byte[] encode(Email email) {
+        Writer writer = new Writer();
+        writer.writeLong(email.getId());
+        writer.writeLong(email.getUserId());
+        writer.writeString(email.getFolder());
+        writer.writeAddress(email.getSender());
+        writer.writeAddresses(email.getRecipients());
+        writer.writeAddresses(email.getCarbonCopies());
+        writer.writeAddresses(email.getBlindCarbonCopies());
+        writer.writeString(email.getSubject());
+        writer.writeString(email.getMessage());
+        writer.writeLong(email.getVersion() == null ? 0 : email.getVersion());
+        return writer.toByteArray();
+    }
+
+    /**
+     * Decode an email from the remaining bytes of the buffer
+     * @param buffer The encoded email
+     * @return The email
+     * @throws IllegalArgumentException if the buffer does not hold a complete encoded email
+     */
+    static Email decode(ByteBuffer buffer) {
+        try {
+            Email email = new Email();
+            email.setId(buffer.getLong());
+            email.setUserId(buffer.getLong());
+            email.setFolder(readString(buffer));
+            email.setSender(readAddress(buffer));
+            email.setRecipients(readAddresses(buffer));
+            email.setCarbonCopies(readAddresses(buffer));
+            email.setBlindCarbonCopies(readAddresses(buffer));
+            email.setSubject(readString(buffer));
+            email.setMessage(readString(buffer));
+            long version = buffer.getLong();
+            email.setVersion(version == 0 ? null : version);
+            return email;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated email record", e);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid string length " + length);
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static EmailAddress readAddress(ByteBuffer buffer) {
+        if (buffer.get() == 0) {
+            return null;
+        }
+        return new EmailAddress(readString(buffer), readString(buffer));
+    }
+
+    private static List<EmailAddress> readAddresses(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        if (count == NULL) {
+            return null;
+        }
+        if (count < 0 || count > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid address count " + count);
+        }
+        List<EmailAddress> addresses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            addresses.add(readAddress(buffer));
+        }
+        return addresses;
+    }
+
+    private static final class Writer {
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        void writeLong(long value) {
+            ensureCapacity(Long.BYTES);
+            ByteBuffer.wrap(bytes, size, Long.BYTES).putLong(value);
+            size += Long.BYTES;
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(Integer.BYTES);
+            ByteBuffer.wrap(bytes, size, Integer.BYTES).putInt(value);
+            size += Integer.BYTES;
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeInt(NULL);
+                return;
+            }
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(encoded.length);
+            ensureCapacity(encoded.length);
+            System.arraycopy(encoded, 0, bytes, size, encoded.length);
+            size += encoded.length;
+        }
+
+        void writeAddress(EmailAddress address) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) (address == null ? 0 : 1);
+            if (address != null) {
+                writeString(address.getAddress());
+                writeString(address.getSenderInfo());
+            }
+        }
+
+        void writeAddresses(List<EmailAddress> addresses) {
+            if (addresses == null) {
+                writeInt(NULL);
+                return;
+            }
+            writeInt(addresses.size());
+            for (EmailAddress address : addresses) {
+                writeAddress(address);
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        private void ensureCapacity(int additional) {
+            if (size + additional > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + additional));
+            }
+        }
+    }
+}
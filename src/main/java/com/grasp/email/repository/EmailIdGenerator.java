@@ -0,0 +1,104 @@
+package com.grasp.email.repository;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates unique email identifiers. Identifiers are handed out from a fixed set of stripes, each of which
+ * reserves a block of identifiers from the shared counter at a time, so threads only touch shared state once
+ * per block and rarely contend with each other. Threads are spread over the stripes by identifier, so a
+ * request served on a short-lived virtual thread uses a block that outlives it rather than reserving its own.
+ * Identifiers are unique but, across stripes, are not allocated in time order
+ */
+public class EmailIdGenerator {
+    static final int BLOCK_SIZE = 1024;
+
+    private final long first;
+    private final AtomicLong nextBlock;
+    private final AtomicLong reservations = new AtomicLong();
+    /** The next identifier and end of each stripe's block, each guarded by its stripe */
+    private final long[][] stripes = new long[stripeCount()][2];
+
+    public EmailIdGenerator() {
+        this(1L);
+    }
+
+    /**
+     * @param first The first identifier to allocate
+     */
+    public EmailIdGenerator(long first) {
+        this.first = first;
+        nextBlock = new AtomicLong(first);
+    }
+
+    /**
+     * @return The number of identifiers reserved from the shared counter, whether or not they have been handed out yet
+     */
+    public long getReservedCount() {
+        return nextBlock.get() - first;
+    }
+
+    /**
+     * @return The number of times a thread has reserved identifiers from the shared counter
+     */
+    public long getReservationCount() {
+        return reservations.get();
+    }
+
+    /**
+     * Ensure identifiers allocated from now on are greater than the identifier, such as one recovered from
+     * storage. Only affects blocks reserved after the call
+     * @param id The identifier
+     */
+    public void advancePast(long id) {
+        nextBlock.accumulateAndGet(id + 1, Math::max);
+    }
+
+    /**
+     * Allocate the next identifier from this thread's stripe, reserving a new block if it is exhausted
+     * @return A unique email identifier
+     */
+    public long next() {
+        long[] block = stripe();
+        synchronized (block) {
+            if (block[0] == block[1]) {
+                block[0] = nextBlock.getAndAdd(BLOCK_SIZE);
+                reservations.incrementAndGet();
+                block[1] = block[0] + BLOCK_SIZE;
+            }
+            return block[0]++;
+        }
+    }
+
+    /**
+     * Allocate a run of consecutive identifiers, from this thread's stripe if it has enough left, or
+     * otherwise reserved directly from the shared counter
+     * @param count The number of identifiers
+     * @return The first identifier of the run
+     */
+    public long next(int count) {
+        long[] block = stripe();
+        synchronized (block) {
+            if (block[1] - block[0] >= count) {
+                long first = block[0];
+                block[0] += count;
+                return first;
+            }
+        }
+        reservations.incrementAndGet();
+        return nextBlock.getAndAdd(count);
+    }
+
+    @SuppressWarnings("deprecation")
+    private long[] stripe() {
+        // Thread.threadId() replaces getId() from Java 19
+        return stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+    }
+
+    /**
+     * @return Four stripes per processor, rounded up to a power of two
+     */
+    private static int stripeCount() {
+        int stripes = Runtime.getRuntime().availableProcessors() * 4;
+        return Integer.highestOneBit(stripes - 1) << 1;
+    }
+}
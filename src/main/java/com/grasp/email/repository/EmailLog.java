@@ -0,0 +1,333 @@
+package com.grasp.email.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Segmented, append-only log of opaque records. Records are appended to a memory-mapped segment file, and a
+ * new segment is started whenever the current one is full. Each record is framed by its length and a CRC32
+ * of its contents, and a zero length marks the unused tail of a segment.
+ * <p>
+ * Appending and making records durable are separate steps, so that concurrent writers share a single
+ * <code>fsync</code>: whichever writer finds no sync in progress forces the segment on behalf of every record
+ * appended so far, while the others wait for it to finish.
+ * <p>
+ * A snapshot holds the state produced by every segment before the one it is named after, so recovery only
+ * needs to read the latest snapshot and the segments from its index onwards. Older segments and snapshots are
+ * deleted once a new snapshot is in place.
+ */
+class EmailLog implements Closeable {
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final Path directory;
+    private final int segmentSize;
+
+    /**
+     * Guards the active segment. A lock rather than a monitor, as segments are forced while it is held, which
+     * would pin the carrier of a virtual thread
+     */
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private long activeIndex;
+    private FileChannel activeChannel;
+    private MappedByteBuffer active;
+    private long appended;
+
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+    private boolean syncing;
+    private long durable;
+
+    /**
+     * @param directory The directory holding the segments and snapshots, created if it doesn't exist
+     * @param segmentSize The size of each segment file in bytes
+     */
+    EmailLog(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        for (Path temporary : list(TEMPORARY_SUFFIX)) {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @return The latest snapshot, or <code>null</code> if none has been taken
+     */
+    Path getSnapshot() throws IOException {
+        List<Path> snapshots = list(SNAPSHOT_SUFFIX);
+        return snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+    }
+
+    /**
+     * @return The segments not covered by the latest snapshot, in the order they were written
+     */
+    List<Path> getSegments() throws IOException {
+        Path snapshot = getSnapshot();
+        long first = snapshot == null ? 0 : indexOf(snapshot);
+        List<Path> segments = new ArrayList<>();
+        for (Path segment : list(SEGMENT_SUFFIX)) {
+            if (indexOf(segment) >= first) {
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Read every record from a segment or snapshot. Reading a segment stops at the first record that is
+     * incomplete or fails its checksum, as it can only have been torn by a crash before being made durable.
+     * A record claiming to be longer than the rest of the file is incomplete, and is never allocated
+     * @param file The segment or snapshot
+     * @return The records, in the order they were written
+     * @throws IllegalStateException if a snapshot is corrupt
+     */
+    static List<byte[]> read(Path file) throws IOException {
+        boolean snapshot = file.getFileName().toString().endsWith(SNAPSHOT_SUFFIX);
+        List<byte[]> records = new ArrayList<>();
+        CRC32 crc = new CRC32();
+        long remaining = Files.size(file);
+        try (InputStream in = Files.newInputStream(file);
+             DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16))) {
+            while (true) {
+                int length;
+                byte[] record;
+                try {
+                    length = data.readInt();
+                    if (length <= 0) {
+                        break;
+                    }
+                    int checksum = data.readInt();
+                    remaining -= 2 * Integer.BYTES;
+                    if (length > remaining) {
+                        if (snapshot) {
+                            throw new IllegalStateException("Truncated snapshot " + file);
+                        }
+                        break;
+                    }
+                    record = new byte[length];
+                    data.readFully(record);
+                    remaining -= length;
+                    crc.reset();
+                    crc.update(record);
+                    if ((int) crc.getValue() != checksum) {
+                        if (snapshot) {
+                            throw new IllegalStateException("Corrupt record in snapshot " + file);
+                        }
+                        break;
+                    }
+                } catch (EOFException e) {
+                    if (snapshot && data.available() > 0) {
+                        throw new IllegalStateException("Truncated snapshot " + file, e);
+                    }
+                    break;
+                }
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Start appending to a new segment following any that already exist. Called once recovery is complete
+     */
+    void openForAppend() throws IOException {
+        appendLock.lock();
+        try {
+            List<Path> segments = list(SEGMENT_SUFFIX);
+            Path snapshot = getSnapshot();
+            long next = segments.isEmpty() ? 0 : indexOf(segments.get(segments.size() - 1)) + 1;
+            if (snapshot != null) {
+                next = Math.max(next, indexOf(snapshot));
+            }
+            startSegment(next, segmentSize);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Append a record to the log. The record is not durable until {@link #awaitDurable} has returned for
+     * the returned position
+     * @param record The record
+     * @return The position of the record in the log
+     */
+    long append(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        appendLock.lock();
+        try {
+            if (active.remaining() < HEADER_BYTES + record.length) {
+                active.force();
+                activeChannel.close();
+                startSegment(activeIndex + 1, Math.max(segmentSize, HEADER_BYTES + record.length + Integer.BYTES));
+            }
+            active.putInt(record.length);
+            active.putInt((int) crc.getValue());
+            active.put(record);
+            return ++appended;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Wait until the record at the position, and every record before it, has been forced to disk. If no sync
+     * is in progress, the caller forces the log itself on behalf of every waiting writer
+     * @param position The position returned by {@link #append}
+     */
+    void awaitDurable(long position) {
+        syncLock.lock();
+        try {
+            while (durable < position) {
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                long target = 0;
+                syncLock.unlock();
+                try {
+                    target = force();
+                } finally {
+                    syncLock.lock();
+                    syncing = false;
+                    durable = Math.max(durable, target);
+                    synced.signalAll();
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private long force() {
+        MappedByteBuffer segment;
+        long target;
+        appendLock.lock();
+        try {
+            segment = active;
+            target = appended;
+        } finally {
+            appendLock.unlock();
+        }
+        // Records in earlier segments were forced when the segment was rolled
+        segment.force();
+        return target;
+    }
+
+    /**
+     * Write a snapshot of the current state and delete everything it supersedes. The log is first rolled to a
+     * new segment, so that every record before that segment is reflected in the state being written. Records
+     * appended while the snapshot is being written are replayed on top of it, which is safe as long as
+     * replaying a record is idempotent
+     * @param writer Passed a consumer which writes each record of the snapshot
+     */
+    void snapshot(Consumer<Consumer<byte[]>> writer) throws IOException {
+        long covered;
+        appendLock.lock();
+        try {
+            active.force();
+            activeChannel.close();
+            startSegment(activeIndex + 1, segmentSize);
+            covered = activeIndex;
+        } finally {
+            appendLock.unlock();
+        }
+
+        Path snapshot = directory.resolve(nameOf(covered, SNAPSHOT_SUFFIX));
+        Path temporary = directory.resolve(nameOf(covered, SNAPSHOT_SUFFIX) + TEMPORARY_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16))) {
+            CRC32 crc = new CRC32();
+            writer.accept(record -> {
+                crc.reset();
+                crc.update(record);
+                try {
+                    out.writeInt(record.length);
+                    out.writeInt((int) crc.getValue());
+                    out.write(record);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+
+        for (Path segment : list(SEGMENT_SUFFIX)) {
+            if (indexOf(segment) < covered) {
+                Files.deleteIfExists(segment);
+            }
+        }
+        for (Path previous : list(SNAPSHOT_SUFFIX)) {
+            if (indexOf(previous) < covered) {
+                Files.deleteIfExists(previous);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            if (active != null) {
+                active.force();
+                activeChannel.close();
+                active = null;
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void startSegment(long index, int size) throws IOException {
+        Path segment = directory.resolve(nameOf(index, SEGMENT_SUFFIX));
+        activeChannel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        active = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        activeIndex = index;
+    }
+
+    private List<Path> list(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(v -> v.getFileName().toString().endsWith(suffix))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static String nameOf(long index, String suffix) {
+        return String.format("%020d%s", index, suffix);
+    }
+
+    private static long indexOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.indexOf('.')));
+    }
+}
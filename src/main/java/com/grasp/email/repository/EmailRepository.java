@@ -1,10 +1,14 @@
 package com.grasp.email.repository;
 
+import com.grasp.email.model.Changes;
 import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailSummary;
+import com.grasp.email.model.FolderVersion;
+import com.grasp.email.model.MailboxUsage;
+import com.grasp.email.model.Page;
 import lombok.NonNull;
 import org.springframework.stereotype.Component;
 
-import java.math.BigInteger;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -17,9 +21,103 @@ import java.util.stream.Collectors;
 
 @Component
 public interface EmailRepository {
-    public List<Email> getInboxForUserId(BigInteger userId);
+    public List<Email> getInboxForUserId(long userId);
 
-    public Email getEmailForUserIdAndEmailId(BigInteger userId, BigInteger emailId);
+    public Page<Email> getInboxForUserId(long userId, int limit, String cursor);
+
+    public List<EmailSummary> getInboxSummariesForUserId(long userId);
+
+    public Page<EmailSummary> getInboxSummariesForUserId(long userId, int limit, String cursor);
+
+    /**
+     * Get a page of the emails in any of the user's folders, newest first
+     * @param userId The user identifier
+     * @param folder The folder name
+     * @param limit The maximum number of emails to return
+     * @param cursor The cursor returned with the previous page, or <code>null</code> for the first page
+     * @return The page of emails
+     * @throws IllegalArgumentException if the cursor is not one issued by this method
+     */
+    public Page<Email> getFolderForUserId(long userId, String folder, int limit, String cursor);
+
+    /**
+     * Search the user's emails for those containing every term of the query in their subject, message or
+     * addresses, best matches first
+     * @param userId The user identifier
+     * @param query The query
+     * @param folder The folder to search, or <code>null</code> to search every folder
+     * @param limit The maximum number of summaries to return
+     * @param cursor The cursor returned with the previous page, or <code>null</code> for the first page
+     * @return The page of matching email summaries
+     * @throws IllegalArgumentException if the cursor is not one issued by this method
+     */
+    public Page<EmailSummary> searchForUserId(long userId, String query, String folder, int limit, String cursor);
+
+    /**
+     * Get the current version of one of the user's folders. Read before the folder itself, a version that is
+     * unchanged on a later read guarantees the folder is too
+     * @param userId The user identifier
+     * @param folder The folder name
+     * @return The version, or {@link FolderVersion#EMPTY} if the user has no mailbox
+     */
+    public FolderVersion getFolderVersionForUserId(long userId, String folder);
+
+    /**
+     * Get the latest change to each of the user's emails changed since the token, oldest first. Only recent
+     * changes are kept, so a client whose token is too old, or from before the mailbox was last rebuilt, is
+     * told to resync instead
+     * @param userId The user identifier
+     * @param since The token returned by the previous call, or <code>null</code> if the client holds nothing
+     * @return The changes and the token to pass next time
+     * @throws IllegalArgumentException if the token is not one issued by this method
+     */
+    public Changes getChangesForUserId(long userId, String since);
+
+    /**
+     * Get the storage taken up by the user's mailbox, which is tracked as emails are stored rather than
+     * counted when asked
+     * @param userId The user identifier
+     * @return The number and total size of the user's emails, or zero of each if they have no mailbox
+     */
+    public MailboxUsage getUsageForUserId(long userId);
+
+    /**
+     * @param email The email
+     * @return The bytes the email adds to its user's usage once stored, as counted by {@link #getUsageForUserId}
+     */
+    public static long sizeOf(Email email) {
+        return MessageContent.sizeOf(email);
+    }
+
+    public Email getEmailForUserIdAndEmailId(long userId, long emailId);
 
     public Email saveEmail(Email email);
+
+    /**
+     * Store a batch of emails, which may belong to several users. Emails without identifiers are allocated
+     * consecutive identifiers, and each user's emails are written together
+     * @param emails The emails to store
+     * @return The stored emails, in the order given
+     */
+    public List<Email> saveAll(List<Email> emails);
+
+    /**
+     * Atomically replace a stored email, but only if it is still in the expected folder and, when the
+     * replacement carries a version, is still at that version
+     * @param email The replacement email
+     * @param expectedFolder The folder the stored email must be in
+     * @return The stored email, or <code>null</code> if there is no such email
+     * @throws IllegalStateException if the stored email has since been moved or modified
+     */
+    public Email replaceEmail(Email email, String expectedFolder);
+
+    /**
+     * Atomically move an email from one folder to another
+     * @param userId The user identifier
+     * @param emailId The email identifier
+     * @param fromFolder The folder the email must currently be in
+     * @param toFolder The folder to move the email to
+     * @return The moved email, or <code>null</code> if there is no such email in the folder
+     */
+    public Email moveEmail(long userId, long emailId, String fromFolder, String toFolder);
 }
@@ -0,0 +1,36 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.Email;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An {@link EmailRepository} holding the mailboxes of a subset of users, as one partition of a
+ * {@link ShardedEmailRepository}. Besides the usual operations, a shard can hand over whole mailboxes so that
+ * users can be moved between shards when shards are added
+ */
+public interface EmailShard extends EmailRepository {
+    /**
+     * @return The identifiers of every user with a mailbox in the shard
+     */
+    public Collection<Long> getUserIds();
+
+    /**
+     * @param userId The user identifier
+     * @return Every email in the user's mailbox, in the order they arrived, or an empty list if they have none
+     */
+    public List<Email> exportMailbox(long userId);
+
+    /**
+     * Store emails exported from another shard, keeping their identifiers and versions
+     * @param emails The emails, in the order they arrived
+     */
+    public void importMailbox(List<Email> emails);
+
+    /**
+     * Remove the user's mailbox, once it has been imported by another shard
+     * @param userId The user identifier
+     */
+    public void removeMailbox(long userId);
+}
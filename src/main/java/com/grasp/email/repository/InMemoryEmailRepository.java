@@ -1,52 +1,346 @@
 package com.grasp.email.repository;
 
+import com.grasp.email.model.Changes;
 import com.grasp.email.model.Email;
-import org.springframework.stereotype.Component;
+import com.grasp.email.model.EmailSummary;
+import com.grasp.email.model.FolderVersion;
+import com.grasp.email.model.MailboxUsage;
+import com.grasp.email.model.Page;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
 
-import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
-@Component
-public class InMemoryEmailRepository implements EmailRepository {
-    private static final Map<BigInteger, Map<BigInteger, Email>> userEmails = new ConcurrentHashMap<>();
-    private AtomicReference<BigInteger> nextEmailId = new AtomicReference<>(BigInteger.ONE);
+public class InMemoryEmailRepository implements EmailRepository, MeterBinder {
+    /** Estimated bytes per stored email for its entry and its slots in the mailbox indexes, excluding content */
+    private static final int ENTRY_BYTES = 160;
 
+    private final Map<Long, Mailbox> userEmails = new ConcurrentHashMap<>();
+    private final ContentStore contentStore;
+    private final EmailIdGenerator idGenerator;
+    private final LongAdder contention = new LongAdder();
 
-    private Collection<Email> getAllForUserId(BigInteger userId) {
-        return userEmails.getOrDefault(userId, Collections.emptyMap()).values();
+    public InMemoryEmailRepository() {
+        this(null);
+    }
+
+    /**
+     * @param compressor Compresses message bodies when they are first stored, or <code>null</code> to store
+     *                   them uncompressed
+     */
+    public InMemoryEmailRepository(BodyCompressor compressor) {
+        this(compressor, 1L);
+    }
+
+    /**
+     * @param compressor Compresses message bodies when they are first stored, or <code>null</code> to store
+     *                   them uncompressed
+     * @param firstId The first email identifier to allocate, so that shards allocate from separate ranges
+     */
+    public InMemoryEmailRepository(BodyCompressor compressor, long firstId) {
+        contentStore = new ContentStore(compressor);
+        idGenerator = new EmailIdGenerator(firstId);
+    }
+
+
+    @Override
+    public List<Email> getInboxForUserId(long userId) {
+        return getFolderForUserId(userId, Email.INBOX, v -> v.toEmail(userId));
+    }
+
+    @Override
+    public Page<Email> getInboxForUserId(long userId, int limit, String cursor) {
+        return getFolderPageForUserId(userId, Email.INBOX, limit, cursor, v -> v.toEmail(userId));
+    }
+
+    @Override
+    public List<EmailSummary> getInboxSummariesForUserId(long userId) {
+        return getFolderForUserId(userId, Email.INBOX, MailboxEntry::toSummary);
+    }
+
+    @Override
+    public Page<EmailSummary> getInboxSummariesForUserId(long userId, int limit, String cursor) {
+        return getFolderPageForUserId(userId, Email.INBOX, limit, cursor, MailboxEntry::toSummary);
+    }
+
+    @Override
+    public Page<Email> getFolderForUserId(long userId, String folder, int limit, String cursor) {
+        return getFolderPageForUserId(userId, folder, limit, cursor, v -> v.toEmail(userId));
+    }
+
+    private <T> List<T> getFolderForUserId(long userId, String folder, Function<MailboxEntry, T> mapper) {
+        Mailbox mailbox = getMailbox(userId);
+        return mailbox == null ? Collections.emptyList() : mailbox.getFolder(folder, mapper);
+    }
+
+    private <T> Page<T> getFolderPageForUserId(long userId, String folder, int limit, String cursor, Function<MailboxEntry, T> mapper) {
+        Mailbox mailbox = getMailbox(userId);
+        return mailbox == null ? new Page<>(Collections.emptyList(), null) : mailbox.getFolderPage(folder, limit, cursor, mapper);
     }
 
     @Override
-    public List<Email> getInboxForUserId(BigInteger userId) {
-        return getAllForUserId(userId)
-                .stream()
-                .filter(v -> Email.INBOX.equals(v.getFolder()))
-                .collect(Collectors.toList());
+    public Page<EmailSummary> searchForUserId(long userId, String query, String folder, int limit, String cursor) {
+        Mailbox mailbox = getMailbox(userId);
+        return mailbox == null ? new Page<>(Collections.emptyList(), null) : mailbox.search(query, folder, limit, cursor, MailboxEntry::toSummary);
     }
 
+    /**
+     * Register gauges for the users, emails per folder and estimated heap held by the repository, which are
+     * computed when read so that they cost nothing on the request path, and counters for identifier
+     * reservations and contended mailbox writes
+     */
     @Override
-    public Email getEmailForUserIdAndEmailId(BigInteger userId, BigInteger emailId) {
-        return getAllForUserId(userId).stream()
-                .filter(v -> emailId.equals(v.getId()))
-                .findFirst()
-                .orElse(null);
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("email.repository.users", this, InMemoryEmailRepository::getUserCount)
+                .description("Users with a mailbox")
+                .register(registry);
+        for (String folder : List.of(Email.INBOX, Email.DRAFTS, Email.OUTBOX, Email.SENT)) {
+            Gauge.builder("email.repository.emails", this, v -> v.countFolder(folder))
+                    .description("Emails stored per folder")
+                    .tag("folder", folder)
+                    .register(registry);
+        }
+        Gauge.builder("email.repository.messages", this, InMemoryEmailRepository::getDistinctMessageCount)
+                .description("Distinct messages stored, however many mailboxes hold them")
+                .register(registry);
+        Gauge.builder("email.repository.heap.estimate", this, InMemoryEmailRepository::estimateHeapBytes)
+                .description("Estimated heap held by stored emails, message content and search indexes")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        if (contentStore.isCompressing()) {
+            Gauge.builder("email.repository.compression.ratio", contentStore, ContentStore::getCompressionRatio)
+                    .description("Characters in compressed message bodies per byte stored")
+                    .register(registry);
+        }
+        FunctionCounter.builder("email.repository.ids.reserved", idGenerator, EmailIdGenerator::getReservedCount)
+                .description("Email identifiers reserved from the shared counter")
+                .register(registry);
+        FunctionCounter.builder("email.repository.ids.reservations", idGenerator, EmailIdGenerator::getReservationCount)
+                .description("Times a thread reserved a block of identifiers from the shared counter")
+                .register(registry);
+        FunctionCounter.builder("email.repository.save.contention", contention, LongAdder::sum)
+                .description("Writes that had to wait for another write to the same mailbox")
+                .register(registry);
+    }
+
+    private long countFolder(String folder) {
+        long count = 0;
+        for (Mailbox mailbox : residentMailboxes()) {
+            count += mailbox.getFolderSize(folder);
+        }
+        return count;
+    }
+
+    private long estimateHeapBytes() {
+        long bytes = contentStore.getEstimatedBytes();
+        for (Mailbox mailbox : residentMailboxes()) {
+            bytes += (long) mailbox.size() * ENTRY_BYTES + mailbox.estimateSearchIndexBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return The number of distinct messages held, however many mailboxes they are stored in
+     */
+    public int getDistinctMessageCount() {
+        return contentStore.size();
+    }
+
+    @Override
+    public FolderVersion getFolderVersionForUserId(long userId, String folder) {
+        Mailbox mailbox = getMailbox(userId);
+        return mailbox == null ? FolderVersion.EMPTY : mailbox.getFolderVersion(folder);
+    }
+
+    @Override
+    public Changes getChangesForUserId(long userId, String since) {
+        Mailbox mailbox = getMailbox(userId);
+        if (mailbox != null) {
+            return mailbox.getChanges(since);
+        }
+        // A user without a mailbox is in the same state as an empty folder
+        String token = FolderVersion.EMPTY.getTag();
+        return new Changes(Collections.emptyList(), token, !token.equals(since));
+    }
+
+    @Override
+    public MailboxUsage getUsageForUserId(long userId) {
+        Mailbox mailbox = getMailbox(userId);
+        return mailbox == null ? new MailboxUsage(0, 0) : mailbox.getUsage();
+    }
+
+    @Override
+    public Email getEmailForUserIdAndEmailId(long userId, long emailId) {
+        Mailbox mailbox = getMailbox(userId);
+        return mailbox == null ? null : mailbox.get(emailId);
     }
 
     @Override
     public Email saveEmail(Email email) {
         validate(email);
-        userEmails.computeIfAbsent(email.getUserId(), v -> new ConcurrentHashMap<>())
-                .put(email.getId(), email);
+        email.setVersion(writeMailbox(email.getUserId(), true, v -> v.save(email)));
         return email;
     }
 
-    private void validate(Email email) {
+    @Override
+    public List<Email> saveAll(List<Email> emails) {
+        validateAll(emails);
+        for (List<Email> userBatch : groupByUserId(emails).values()) {
+            saveUserBatch(userBatch);
+        }
+        return emails;
+    }
+
+    /**
+     * Store a batch of already validated emails belonging to a single user, under one acquisition of
+     * their mailbox lock
+     * @param emails The emails, all for the same user
+     */
+    protected void saveUserBatch(List<Email> emails) {
+        long[] versions = writeMailbox(emails.get(0).getUserId(), true, v -> v.saveAll(emails));
+        for (int i = 0; i < emails.size(); i++) {
+            emails.get(i).setVersion(versions[i]);
+        }
+    }
+
+    /**
+     * Split a batch by user, keeping each user's emails in the order given
+     */
+    protected static Map<Long, List<Email>> groupByUserId(List<Email> emails) {
+        Map<Long, List<Email>> batches = new LinkedHashMap<>();
+        for (Email email : emails) {
+            batches.computeIfAbsent(email.getUserId(), v -> new ArrayList<>()).add(email);
+        }
+        return batches;
+    }
+
+    @Override
+    public Email replaceEmail(Email email, String expectedFolder) {
+        validate(email);
+        return writeMailbox(email.getUserId(), false, v -> v.replace(email, expectedFolder));
+    }
+
+    @Override
+    public Email moveEmail(long userId, long emailId, String fromFolder, String toFolder) {
+        return writeMailbox(userId, false, v -> v.move(emailId, fromFolder, toFolder));
+    }
+
+    /**
+     * The mailbox transfers of {@link EmailShard}, which {@link InMemoryEmailShard} exposes. Subclasses keeping
+     * a durable record of the emails don't, as they would have to record mailboxes leaving
+     */
+    Collection<Long> getUserIds() {
+        return List.copyOf(userEmails.keySet());
+    }
+
+    List<Email> exportMailbox(long userId) {
+        Mailbox mailbox = getMailbox(userId);
+        if (mailbox == null) {
+            return Collections.emptyList();
+        }
+        List<Email> emails = new ArrayList<>();
+        mailbox.forEach(emails::add);
+        return emails;
+    }
+
+    void importMailbox(List<Email> emails) {
+        emails.forEach(this::restoreEmail);
+    }
+
+    void removeMailbox(long userId) {
+        Mailbox mailbox = userEmails.remove(userId);
+        if (mailbox != null) {
+            mailbox.retire();
+        }
+    }
+
+    /**
+     * Store the email at the version it carries, such as when recovering it from storage
+     * @param email The email
+     */
+    void restoreEmail(Email email) {
+        validate(email);
+        writeMailbox(email.getUserId(), true, v -> {
+            v.restore(email);
+            return email;
+        });
+    }
+
+    /**
+     * Apply a write to the user's mailbox
+     * @param userId The user identifier
+     * @param create Whether to create the mailbox if the user doesn't have one
+     * @param operation The write
+     * @return The result of the write, or <code>null</code> if the user has no mailbox and one wasn't created
+     */
+    <T> T writeMailbox(long userId, boolean create, Function<Mailbox, T> operation) {
+        Mailbox mailbox = create ? userEmails.computeIfAbsent(userId, this::newMailbox) : userEmails.get(userId);
+        return mailbox == null ? null : operation.apply(mailbox);
+    }
+
+    /**
+     * @param userId The user identifier
+     * @return The user's mailbox, or <code>null</code> if they don't have one
+     */
+    Mailbox getMailbox(long userId) {
+        return userEmails.get(userId);
+    }
+
+    /**
+     * @param userId The user identifier
+     * @return A new, empty mailbox for the user, sharing the repository's content store
+     */
+    Mailbox newMailbox(long userId) {
+        return new Mailbox(userId, contentStore, contention);
+    }
+
+    /**
+     * @return The mailboxes held in memory
+     */
+    Collection<Mailbox> residentMailboxes() {
+        return userEmails.values();
+    }
+
+    /**
+     * @return The number of users with a mailbox
+     */
+    long getUserCount() {
+        return userEmails.size();
+    }
+
+    /**
+     * Pass every email held in memory to the action, one mailbox at a time and in the order each mailbox received them
+     * @param action The action
+     */
+    void forEachEmail(Consumer<Email> action) {
+        residentMailboxes().forEach(v -> v.forEach(action));
+    }
+
+    /**
+     * Ensure newly allocated email identifiers are greater than the identifier
+     * @param id An identifier already in use, such as one recovered from storage
+     */
+    void advanceIdsPast(long id) {
+        idGenerator.advancePast(id);
+    }
+
+    /**
+     * Check the email has the required fields, allocating it an identifier if it doesn't have one
+     * @param email The email
+     */
+    protected void validate(Email email) {
         if (email == null) {
             throw new NullPointerException("No email supplied");
         }
@@ -58,7 +352,31 @@ public class InMemoryEmailRepository implements EmailRepository {
         }
 
         if (email.getId() == null) {
-            email.setId(nextEmailId.getAndAccumulate(BigInteger.ONE, BigInteger::add));
+            email.setId(idGenerator.next());
+        }
+    }
+
+    /**
+     * Check every email in the batch has the required fields, allocating the emails without identifiers
+     * one run of consecutive identifiers
+     * @param emails The emails
+     */
+    protected void validateAll(List<Email> emails) {
+        int unidentified = 0;
+        for (Email email : emails) {
+            if (email == null) {
+                throw new NullPointerException("No email supplied");
+            }
+            if (email.getId() == null) {
+                unidentified++;
+            }
+        }
+        long nextId = unidentified == 0 ? 0 : idGenerator.next(unidentified);
+        for (Email email : emails) {
+            if (email.getId() == null) {
+                email.setId(nextId++);
+            }
+            validate(email);
         }
     }
 }
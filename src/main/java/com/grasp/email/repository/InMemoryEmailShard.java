@@ -0,0 +1,49 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.Email;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link InMemoryEmailRepository} serving as a shard, whose mailboxes can be moved to other shards
+ */
+public class InMemoryEmailShard extends InMemoryEmailRepository implements EmailShard {
+
+    public InMemoryEmailShard() {
+        super();
+    }
+
+    /**
+     * @param compressor Compresses message bodies when they are first stored, or <code>null</code> to store
+     *                   them uncompressed
+     * @param firstId The first email identifier to allocate, so that shards allocate from separate ranges
+     */
+    public InMemoryEmailShard(BodyCompressor compressor, long firstId) {
+        super(compressor, firstId);
+    }
+
+    @Override
+    public Collection<Long> getUserIds() {
+        return super.getUserIds();
+    }
+
+    @Override
+    public List<Email> exportMailbox(long userId) {
+        return super.exportMailbox(userId);
+    }
+
+    /**
+     * Store the emails at the versions they carry. Their identifiers come from another shard's range, so
+     * they don't advance this shard's identifiers
+     */
+    @Override
+    public void importMailbox(List<Email> emails) {
+        super.importMailbox(emails);
+    }
+
+    @Override
+    public void removeMailbox(long userId) {
+        super.removeMailbox(userId);
+    }
+}
@@ -0,0 +1,71 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.User;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+public class InMemoryUserRepository implements UserRepository, MeterBinder {
+    private final Map<String, User> usersByAddress = new ConcurrentHashMap<>();
+    private final AtomicLong nextUserId = new AtomicLong(1L);
+
+    /**
+     * Resolve an email address to the local user it is delivered to. Addresses are matched case-insensitively
+     * @param address The email address
+     * @return The user, or <code>null</code> if the address is not local
+     */
+    @Override
+    public User getUserForAddress(String address) {
+        return address == null ? null : usersByAddress.get(address.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Save the user, allocating them an identifier unless they carry one. An address can only belong to one user,
+     * so saving a different user under an address already registered is refused rather than redirecting its mail
+     * @param user The user
+     * @return The user, post save
+     * @throws IllegalStateException if the address belongs to another user
+     */
+    @Override
+    public User saveUser(User user) {
+        validate(user);
+        User existing = usersByAddress.putIfAbsent(user.getAddress().toLowerCase(Locale.ROOT), user);
+        if (existing != null && !existing.getId().equals(user.getId())) {
+            throw new IllegalStateException("Address " + user.getAddress() + " is already registered");
+        }
+        if (existing != null) {
+            usersByAddress.put(user.getAddress().toLowerCase(Locale.ROOT), user);
+        }
+        return user;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("email.users", usersByAddress, Map::size)
+                .description("Registered users")
+                .register(registry);
+    }
+
+    private void validate(User user) {
+        if (user == null) {
+            throw new NullPointerException("No user supplied");
+        }
+        if (user.getAddress() == null) {
+            throw new IllegalArgumentException("No address supplied with user");
+        }
+
+        if (user.getId() == null) {
+            user.setId(nextUserId.getAndIncrement());
+        } else {
+            // Identifiers given explicitly, as when importing users, are never allocated again
+            nextUserId.accumulateAndGet(user.getId() + 1, Math::max);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.Email;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Durable {@link EmailRepository}, which serves reads from the in-memory indexes of {@link InMemoryEmailRepository}
+ * and writes every saved email to an {@link EmailLog} before returning. Concurrent saves share a single
+ * <code>fsync</code> through the log's group commit.
+ * <p>
+ * On startup the indexes are rebuilt from the latest snapshot and the segments written since. Segments are
+ * decoded in parallel and then applied by several threads, each owning a partition of the users, so that each
+ * mailbox still receives its emails in log order. Snapshots are taken periodically to bound recovery time.
+ * <p>
+ * Given a directory for cold mailboxes, memory is capped as in {@link TieredEmailRepository}: inactive mailboxes
+ * are paged out to disk and snapshots read them from there. The log remains the durable copy of every email, so
+ * the cold mailboxes are discarded on startup and rebuilt by recovery.
+ */
+@Slf4j
+public class LogEmailRepository extends TieredEmailRepository implements Closeable {
+    private static final int LOCK_STRIPES = 64;
+
+    private final EmailLog emailLog;
+    /** Keep each user's log records in the order their writes were applied, without pinning virtual threads that wait */
+    private final Lock[] stripes = new Lock[LOCK_STRIPES];
+    private final AtomicBoolean modified = new AtomicBoolean();
+    private final ScheduledExecutorService snapshotScheduler;
+
+    /**
+     * Open the log in the directory, recovering every email previously saved to it
+     * @param directory The directory holding the log
+     * @param segmentSize The size of each log segment in bytes
+     * @param snapshotInterval How often to snapshot the log if it has been written to
+     * @param replayThreads The number of threads used to recover the log
+     */
+    public LogEmailRepository(Path directory, int segmentSize, Duration snapshotInterval, int replayThreads) throws IOException {
+        this(directory, segmentSize, snapshotInterval, replayThreads, null);
+    }
+
+    /**
+     * Open the log in the directory, recovering every email previously saved to it. Bodies are held compressed
+     * in memory, but written to the log uncompressed
+     * @param directory The directory holding the log
+     * @param segmentSize The size of each log segment in bytes
+     * @param snapshotInterval How often to snapshot the log if it has been written to
+     * @param replayThreads The number of threads used to recover the log
+     * @param compressor Compresses message bodies held in memory, or <code>null</code> to hold them uncompressed
+     */
+    public LogEmailRepository(Path directory, int segmentSize, Duration snapshotInterval, int replayThreads,
+                              BodyCompressor compressor) throws IOException {
+        this(directory, segmentSize, snapshotInterval, replayThreads, compressor, null, 0, 1L);
+    }
+
+    /**
+     * Open the log in the directory, recovering every email previously saved to it, and page mailboxes out of
+     * memory once more than the cap are held there
+     * @param directory The directory holding the log
+     * @param segmentSize The size of each log segment in bytes
+     * @param snapshotInterval How often to snapshot the log if it has been written to
+     * @param replayThreads The number of threads used to recover the log
+     * @param compressor Compresses message bodies held in memory, or <code>null</code> to hold them uncompressed
+     * @param coldDirectory The directory holding mailboxes paged out of memory, or <code>null</code> to hold every
+     *                      mailbox in memory
+     * @param maxResidentEmails The number of emails to hold in memory before mailboxes are paged out
+     * @param firstId The first email identifier to allocate, so that shards allocate from separate ranges
+     */
+    public LogEmailRepository(Path directory, int segmentSize, Duration snapshotInterval, int replayThreads,
+                              BodyCompressor compressor, Path coldDirectory, long maxResidentEmails, long firstId) throws IOException {
+        super(coldDirectory, maxResidentEmails, compressor, firstId);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        emailLog = new EmailLog(directory, segmentSize);
+        recover(replayThreads);
+        emailLog.openForAppend();
+
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "email-log-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = snapshotInterval.toMillis();
+        snapshotScheduler.scheduleWithFixedDelay(this::snapshotIfModified, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Store the email and append it to the log, returning once it is durable. Writes for the same user are
+     * appended in the order they are applied, so that recovery reproduces the same mailbox
+     */
+    @Override
+    public Email saveEmail(Email email) {
+        validate(email);
+        return write(email.getUserId(), () -> {
+            super.saveEmail(email);
+            return email;
+        });
+    }
+
+    /**
+     * Store the batch and append it to the log, returning once every email in it is durable. Each user's
+     * emails are applied and appended together, and the whole batch shares one wait for durability
+     */
+    @Override
+    public List<Email> saveAll(List<Email> emails) {
+        validateAll(emails);
+        long position = -1;
+        for (List<Email> userBatch : groupByUserId(emails).values()) {
+            Lock stripe = stripes[(int) Math.floorMod(userBatch.get(0).getUserId(), (long) LOCK_STRIPES)];
+            stripe.lock();
+            try {
+                saveUserBatch(userBatch);
+                for (Email email : userBatch) {
+                    position = emailLog.append(EmailCodec.encode(email));
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+        if (position >= 0) {
+            modified.set(true);
+            emailLog.awaitDurable(position);
+        }
+        return emails;
+    }
+
+    @Override
+    public Email replaceEmail(Email email, String expectedFolder) {
+        validate(email);
+        return write(email.getUserId(), () -> super.replaceEmail(email, expectedFolder));
+    }
+
+    /**
+     * Move the email, appending the moved email to the log. Moves are logged as full saves, so that every
+     * record can be replayed on its own
+     */
+    @Override
+    public Email moveEmail(long userId, long emailId, String fromFolder, String toFolder) {
+        return write(userId, () -> super.moveEmail(userId, emailId, fromFolder, toFolder));
+    }
+
+    private Email write(long userId, Supplier<Email> operation) {
+        Email stored;
+        long position;
+        Lock stripe = stripes[(int) Math.floorMod(userId, (long) LOCK_STRIPES)];
+        stripe.lock();
+        try {
+            stored = operation.get();
+            if (stored == null) {
+                return null;
+            }
+            position = emailLog.append(EmailCodec.encode(stored));
+        } finally {
+            stripe.unlock();
+        }
+        modified.set(true);
+        emailLog.awaitDurable(position);
+        return stored;
+    }
+
+    /**
+     * Write a snapshot of every stored email, allowing the segments it covers to be deleted
+     */
+    public void snapshot() throws IOException {
+        modified.set(false);
+        emailLog.snapshot(writer -> forEachEmail(v -> writer.accept(EmailCodec.encode(v))));
+    }
+
+    private void snapshotIfModified() {
+        if (!modified.get()) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            snapshot();
+            log.info("Snapshot of email log took {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException | RuntimeException e) {
+            modified.set(true);
+            log.error("Failed to snapshot email log", e);
+        }
+    }
+
+    private void recover(int replayThreads) throws IOException {
+        long start = System.nanoTime();
+        List<List<Email>> batches = new ArrayList<>();
+        Path snapshot = emailLog.getSnapshot();
+        if (snapshot != null) {
+            batches.add(decode(snapshot));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(replayThreads);
+        try {
+            List<Future<List<Email>>> decoded = new ArrayList<>();
+            for (Path segment : emailLog.getSegments()) {
+                decoded.add(executor.submit(() -> decode(segment)));
+            }
+            for (Future<List<Email>> segment : decoded) {
+                batches.add(segment.get());
+            }
+
+            List<Future<Long>> applied = new ArrayList<>();
+            for (int i = 0; i < replayThreads; i++) {
+                final int partition = i;
+                applied.add(executor.submit(() -> apply(batches, partition, replayThreads)));
+            }
+            long maxId = 0;
+            long count = 0;
+            for (Future<Long> partition : applied) {
+                maxId = Math.max(maxId, partition.get());
+            }
+            for (List<Email> batch : batches) {
+                count += batch.size();
+            }
+            advanceIdsPast(maxId);
+            log.info("Recovered {} email log records in {} ms", count, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted recovering email log", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to recover email log", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static List<Email> decode(Path file) throws IOException {
+        List<byte[]> records = EmailLog.read(file);
+        List<Email> emails = new ArrayList<>(records.size());
+        for (byte[] record : records) {
+            emails.add(EmailCodec.decode(ByteBuffer.wrap(record)));
+        }
+        return emails;
+    }
+
+    /**
+     * Apply, in log order, every recovered email belonging to a user in the partition
+     * @return The greatest email identifier applied
+     */
+    private long apply(List<List<Email>> batches, int partition, int partitions) {
+        long maxId = 0;
+        for (List<Email> batch : batches) {
+            for (Email email : batch) {
+                if (Math.floorMod(email.getUserId(), (long) partitions) == partition) {
+                    restoreEmail(email);
+                    maxId = Math.max(maxId, email.getId());
+                }
+            }
+        }
+        return maxId;
+    }
+
+    @Override
+    public void close() throws IOException {
+        snapshotScheduler.shutdownNow();
+        emailLog.close();
+    }
+}
@@ -0,0 +1,646 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.Changes;
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailChange;
+import com.grasp.email.model.FolderVersion;
+import com.grasp.email.model.MailboxUsage;
+import com.grasp.email.model.Page;
+import it.unimi.dsi.fastutil.ints.IntHeapPriorityQueue;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectRBTreeMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectSortedMap;
+import it.unimi.dsi.fastutil.longs.LongComparators;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * All emails held for a single user, indexed by email identifier and by folder so that reading
+ * a folder only costs as much as the contents of that folder. Folder indexes are ordered newest
+ * first by the sequence in which emails arrived in the mailbox, so reading a page only costs as
+ * much as the page. Indexes are keyed by primitive <code>long</code>s and guarded by a per-user lock.
+ * Entries only reference message content, which is shared between mailboxes through a {@link ContentStore}.
+ * The content of every entry is also held in a {@link SearchIndex}, updated whenever the content changes.
+ * Each folder carries a version, taken from a counter of the mailbox's writes, which identifies the state
+ * of the folder together with an epoch unique to the mailbox instance, so that versions are never reused
+ * when a mailbox is rebuilt, such as after a restart or being paged back into memory.
+ * <p>
+ * The most recent writes are also kept in a journal, a ring buffer of primitive arrays indexed by write
+ * number, so that clients can fetch only the emails changed since they last synchronised. The journal
+ * starts small and grows up to {@link #JOURNAL_CAPACITY} entries, so idle mailboxes stay cheap
+ */
+class Mailbox {
+    /** The number of most recent writes kept in the journal */
+    static final int JOURNAL_CAPACITY = 1024;
+    private static final int INITIAL_JOURNAL_CAPACITY = 16;
+    private static final AtomicLong EPOCHS = new AtomicLong(ThreadLocalRandom.current().nextLong() >>> 1);
+
+    private final long userId;
+    private final ContentStore contentStore;
+    private final LongAdder contention;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Long2ObjectMap<MailboxEntry> emails = new Long2ObjectOpenHashMap<>();
+    private final Map<String, Long2ObjectSortedMap<MailboxEntry>> folders = new HashMap<>();
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final long epoch = EPOCHS.incrementAndGet();
+    private final Object2LongMap<String> folderVersions = new Object2LongOpenHashMap<>();
+    private final Object2LongMap<String> folderModified = new Object2LongOpenHashMap<>();
+    private long[] journalIds = new long[INITIAL_JOURNAL_CAPACITY];
+    private long[] journalVersions = new long[INITIAL_JOURNAL_CAPACITY];
+    private String[] journalFolders = new String[INITIAL_JOURNAL_CAPACITY];
+    private long sequence;
+    private long writes;
+    /** The sum of the sizes of every stored email's content */
+    private long bytes;
+    private boolean retired;
+
+    /**
+     * @param userId The user identifier
+     * @param contentStore Store of the message content shared between mailboxes
+     * @param contention Counts writes that had to wait for the mailbox lock
+     */
+    Mailbox(long userId, ContentStore contentStore, LongAdder contention) {
+        this.userId = userId;
+        this.contentStore = contentStore;
+        this.contention = contention;
+    }
+
+    /**
+     * Get the email with the identifier
+     * @param id The email identifier
+     * @return The email, or <code>null</code> if it doesn't exist
+     */
+    Email get(long id) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            MailboxEntry entry = emails.get(id);
+            return entry == null ? null : entry.toEmail(userId);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Get the emails currently filed under the folder, newest first
+     * @param folder The folder name
+     * @param mapper Maps each entry to the returned item
+     * @return The emails in the folder, or an empty list if there are none
+     * @param <T> Item class
+     */
+    <T> List<T> getFolder(String folder, Function<MailboxEntry, T> mapper) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            Long2ObjectSortedMap<MailboxEntry> index = folders.get(folder);
+            if (index == null) {
+                return Collections.emptyList();
+            }
+            List<T> items = new ArrayList<>(index.size());
+            for (MailboxEntry entry : index.values()) {
+                items.add(mapper.apply(entry));
+            }
+            return items;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Get a page of the emails currently filed under the folder, newest first
+     * @param folder The folder name
+     * @param limit The maximum number of emails to return
+     * @param cursor The cursor returned with the previous page, or <code>null</code> for the first page
+     * @param mapper Maps each entry to the returned item
+     * @return The page of emails
+     * @param <T> Item class
+     * @throws IllegalArgumentException if the cursor is not one issued by {@link #getFolderPage}
+     */
+    <T> Page<T> getFolderPage(String folder, int limit, String cursor, Function<MailboxEntry, T> mapper) {
+        long after = cursor == null ? Long.MAX_VALUE : decodeCursor(cursor);
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            Long2ObjectSortedMap<MailboxEntry> index = folders.get(folder);
+            if (index == null) {
+                return new Page<>(Collections.emptyList(), null);
+            }
+            if (cursor != null) {
+                // Ordered newest first, so the emails following the cursor have lower sequences
+                index = index.tailMap(after - 1);
+            }
+
+            List<T> items = new ArrayList<>(Math.min(limit, 64));
+            long lastSequence = 0;
+            for (MailboxEntry entry : index.values()) {
+                if (items.size() == limit) {
+                    return new Page<>(items, encodeCursor(lastSequence));
+                }
+                items.add(mapper.apply(entry));
+                lastSequence = entry.getSequence();
+            }
+            return new Page<>(items, null);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Search the mailbox for emails containing every term of the query, highest scoring first and newest
+     * first among equal scores
+     * @param query The query
+     * @param folder The folder to search, or <code>null</code> to search every folder
+     * @param limit The maximum number of emails to return
+     * @param cursor The cursor returned with the previous page, or <code>null</code> for the first page
+     * @param mapper Maps each entry to the returned item
+     * @return The page of matching emails
+     * @param <T> Item class
+     * @throws IllegalArgumentException if the cursor is not one issued by {@link #search}, or is beyond the matches
+     */
+    <T> Page<T> search(String query, String folder, int limit, String cursor, Function<MailboxEntry, T> mapper) {
+        long offset = cursor == null ? 0 : decodeCursor(cursor);
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            SearchIndex.Matches matches = searchIndex.search(query);
+            if (offset > matches.count()) {
+                throw new IllegalArgumentException("Invalid cursor " + cursor);
+            }
+            long[] sequences = matches.sequences();
+            double[] scores = matches.scores();
+            // Every indexed email is in some folder, so matches only need checking against a folder searched
+            Long2ObjectSortedMap<MailboxEntry> folderIndex = folder == null ? null : folders.get(folder);
+            if (folder != null && folderIndex == null) {
+                return new Page<>(Collections.emptyList(), null);
+            }
+
+            // Keep only the best scoring matches needed for this page, worst at the head of the queue
+            int wanted = (int) Math.min(offset + limit + 1, matches.count());
+            IntHeapPriorityQueue best = new IntHeapPriorityQueue(Math.max(wanted, 1),
+                    (a, b) -> compareMatches(sequences, scores, a, b));
+            for (int i = 0; i < matches.count(); i++) {
+                if (folderIndex != null && !folderIndex.containsKey(sequences[i])) {
+                    continue;
+                }
+                if (best.size() < wanted) {
+                    best.enqueue(i);
+                } else if (compareMatches(sequences, scores, i, best.firstInt()) > 0) {
+                    best.dequeueInt();
+                    best.enqueue(i);
+                }
+            }
+
+            int[] ranked = new int[best.size()];
+            for (int i = ranked.length - 1; i >= 0; i--) {
+                ranked[i] = best.dequeueInt();
+            }
+            // Only the entries on the page are looked up
+            List<T> items = new ArrayList<>((int) Math.max(0, Math.min(limit, ranked.length - offset)));
+            for (int i = (int) offset; i < ranked.length && i < offset + limit; i++) {
+                MailboxEntry entry = find(sequences[ranked[i]], folder);
+                if (entry != null) {
+                    items.add(mapper.apply(entry));
+                }
+            }
+            String nextCursor = ranked.length > offset + limit ? encodeCursor(offset + limit) : null;
+            return new Page<>(items, nextCursor);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Pass every email in the mailbox to the action, in the order they arrived. The action is called
+     * without holding the mailbox lock
+     * @param action The action
+     */
+    void forEach(Consumer<Email> action) {
+        MailboxEntry[] entries;
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            entries = emails.values().toArray(new MailboxEntry[0]);
+        } finally {
+            readLock.unlock();
+        }
+        Arrays.sort(entries, Comparator.comparingLong(MailboxEntry::getSequence));
+        for (MailboxEntry entry : entries) {
+            action.accept(entry.toEmail(userId));
+        }
+    }
+
+    /**
+     * Store a copy of the email, moving it between folder indexes if it was previously filed elsewhere.
+     * The content is deduplicated against every other stored message, and the snippet used for listings
+     * is computed once per distinct message, so that listings never have to read the message body
+     * @param email The email to store
+     * @return The version stored
+     */
+    long save(Email email) {
+        return write(email, null, false).getVersion();
+    }
+
+    /**
+     * Store copies of a batch of emails under a single acquisition of the lock, as {@link #save} would
+     * @param batch The emails to store
+     * @return The versions stored, in the order given
+     */
+    long[] saveAll(List<Email> batch) {
+        MessageContent[] contents = new MessageContent[batch.size()];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = contentStore.acquire(MessageContent.of(batch.get(i)));
+        }
+        long[] versions = new long[contents.length];
+        int stored = 0;
+        List<MessageContent> replaced = new ArrayList<>();
+        Lock writeLock = lockForWrite();
+        try {
+            checkNotRetired();
+            for (int i = 0; i < contents.length; i++) {
+                Email email = batch.get(i);
+                MailboxEntry previous = emails.get(email.getId().longValue());
+                long version = previous == null ? 1 : previous.getVersion() + 1;
+                put(previous, email.getId(), email.getFolder(), contents[i], version, email.getMessage());
+                versions[stored++] = version;
+                if (previous != null) {
+                    replaced.add(previous.getContent());
+                }
+            }
+        } finally {
+            writeLock.unlock();
+            replaced.forEach(contentStore::release);
+            // Release the content of any emails not written
+            for (int i = stored; i < contents.length; i++) {
+                contentStore.release(contents[i]);
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * Store a copy of the email at the version it carries, such as when it is recovered from storage or
+     * paged back into memory
+     * @param email The email to store
+     */
+    void restore(Email email) {
+        write(email, null, true);
+    }
+
+    /**
+     * Atomically replace a stored email, but only if it is still in the expected folder and, if the email
+     * carries a version, is still at that version
+     * @param email The replacement email
+     * @param expectedFolder The folder the stored email must be in
+     * @return The stored email, or <code>null</code> if there is no email with the identifier
+     * @throws IllegalStateException if the stored email has since been moved or modified
+     */
+    Email replace(Email email, String expectedFolder) {
+        MailboxEntry entry = write(email, expectedFolder, false);
+        return entry == null ? null : entry.toEmail(userId);
+    }
+
+    /**
+     * Atomically move an email between folders, keeping its content and position in the mailbox
+     * @param id The email identifier
+     * @param fromFolder The folder the email must currently be in
+     * @param toFolder The folder to move the email to
+     * @return The moved email, or <code>null</code> if there is no email with the identifier in the folder
+     */
+    Email move(long id, String fromFolder, String toFolder) {
+        Lock writeLock = lockForWrite();
+        try {
+            checkNotRetired();
+            MailboxEntry previous = emails.get(id);
+            if (previous == null || !previous.getFolder().equals(fromFolder)) {
+                return null;
+            }
+            return put(previous, id, toFolder, previous.getContent(), previous.getVersion() + 1, null).toEmail(userId);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private MailboxEntry write(Email email, String expectedFolder, boolean restore) {
+        long id = email.getId();
+        String folder = email.getFolder();
+        MessageContent content = contentStore.acquire(MessageContent.of(email));
+        MailboxEntry previous = null;
+        MailboxEntry entry = null;
+        Lock writeLock = lockForWrite();
+        try {
+            checkNotRetired();
+            previous = emails.get(id);
+            if (expectedFolder != null) {
+                if (previous == null) {
+                    return null;
+                }
+                if (!previous.getFolder().equals(expectedFolder)
+                        || (email.getVersion() != null && email.getVersion() != previous.getVersion())) {
+                    previous = null;
+                    throw new IllegalStateException("Email " + id + " has been modified");
+                }
+            }
+            long version = restore && email.getVersion() != null ? email.getVersion() : previous == null ? 1 : previous.getVersion() + 1;
+            entry = put(previous, id, folder, content, version, email.getMessage());
+        } finally {
+            writeLock.unlock();
+            // Release whichever content is no longer referenced: the replaced content, or the new content if nothing was written
+            if (entry == null) {
+                contentStore.release(content);
+            } else if (previous != null) {
+                contentStore.release(previous.getContent());
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Stop the mailbox accepting writes, such as when it is paged out of memory, and release its content.
+     * Any later write fails, as it would be lost, but reads still see the emails as they were
+     * @return Every email in the mailbox, in the order they arrived
+     */
+    List<Email> retire() {
+        Lock writeLock = lockForWrite();
+        try {
+            retired = true;
+            MailboxEntry[] entries = emails.values().toArray(new MailboxEntry[0]);
+            Arrays.sort(entries, Comparator.comparingLong(MailboxEntry::getSequence));
+            List<Email> retiredEmails = new ArrayList<>(entries.length);
+            for (MailboxEntry entry : entries) {
+                retiredEmails.add(entry.toEmail(userId));
+                contentStore.release(entry.getContent());
+            }
+            return retiredEmails;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void checkNotRetired() {
+        if (retired) {
+            throw new IllegalStateException("Mailbox of user " + userId + " has been retired");
+        }
+    }
+
+    /**
+     * @param folder The folder name
+     * @return The current version of the folder
+     */
+    FolderVersion getFolderVersion(String folder) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return new FolderVersion(encodeVersion(folderVersions.getLong(folder)), folderModified.getLong(folder));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Get the latest change to each email written since the token, oldest first
+     * @param since The token returned by the previous call, or <code>null</code> if the client holds nothing.
+     *              The token of an empty folder, returned before the user had a mailbox, stands for no writes
+     * @return The changes, or a resync if the token is <code>null</code>, from another instance of the
+     *         mailbox, or older than the journal
+     * @throws IllegalArgumentException if the token is not one issued by this method
+     */
+    Changes getChanges(String since) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            String token = encodeVersion(writes);
+            long after = since == null ? -1 : FolderVersion.EMPTY.getTag().equals(since) ? 0 : decodeVersion(since);
+            long oldest = writes - Math.min(writes, journalIds.length);
+            if (after < oldest || after > writes) {
+                return new Changes(Collections.emptyList(), token, true);
+            }
+            // Walk back from the newest write, so that only the latest change to each email is kept
+            List<EmailChange> changes = new ArrayList<>((int) Math.min(writes - after, 64));
+            LongSet changed = new LongOpenHashSet();
+            int mask = journalIds.length - 1;
+            for (long write = writes; write > after; write--) {
+                int slot = (int) (write & mask);
+                if (changed.add(journalIds[slot])) {
+                    changes.add(new EmailChange(journalIds[slot], journalFolders[slot], journalVersions[slot]));
+                }
+            }
+            Collections.reverse(changes);
+            return new Changes(changes, token, false);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @param folder The folder name
+     * @return The number of emails filed under the folder
+     */
+    int getFolderSize(String folder) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            Long2ObjectSortedMap<MailboxEntry> index = folders.get(folder);
+            return index == null ? 0 : index.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of emails in the mailbox
+     */
+    int size() {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return emails.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return The number and total size of the emails in the mailbox, as charged against the user's quota
+     */
+    MailboxUsage getUsage() {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return new MailboxUsage(emails.size(), bytes);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return An estimate of the bytes held by the mailbox's search index
+     */
+    long estimateSearchIndexBytes() {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return searchIndex.estimateBytes();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Take the write lock, counting the write as contended if the lock is already held
+     */
+    private Lock lockForWrite() {
+        Lock writeLock = lock.writeLock();
+        if (!writeLock.tryLock()) {
+            contention.increment();
+            writeLock.lock();
+        }
+        return writeLock;
+    }
+
+    /**
+     * Index the entry, removing the entry it replaces, and advance the version of each folder affected. The
+     * message is only used to update the search index when the content changes, so that compressed content
+     * needn't be decompressed. Must be called holding the write lock
+     */
+    private MailboxEntry put(MailboxEntry previous, long id, String folder, MessageContent content, long version, String message) {
+        long entrySequence;
+        if (previous == null) {
+            entrySequence = ++sequence;
+        } else {
+            entrySequence = previous.getSequence();
+            folders.get(previous.getFolder()).remove(entrySequence);
+        }
+        MailboxEntry entry = new MailboxEntry(entrySequence, id, folder, version, content);
+        emails.put(id, entry);
+        bytes += content.getSize() - (previous == null ? 0 : previous.getContent().getSize());
+        folders.computeIfAbsent(folder, v -> new Long2ObjectRBTreeMap<>(LongComparators.OPPOSITE_COMPARATOR))
+                .put(entrySequence, entry);
+        if (previous == null || previous.getContent() != content) {
+            searchIndex.add(entrySequence, content, message);
+        }
+        long folderVersion = ++writes;
+        journal(folderVersion, entry);
+        long modified = System.currentTimeMillis();
+        folderVersions.put(folder, folderVersion);
+        folderModified.put(folder, modified);
+        if (previous != null && !previous.getFolder().equals(folder)) {
+            folderVersions.put(previous.getFolder(), folderVersion);
+            folderModified.put(previous.getFolder(), modified);
+        }
+        return entry;
+    }
+
+    /**
+     * Record the write in the journal, growing it if it isn't yet at capacity. Must be called holding the
+     * write lock
+     */
+    private void journal(long write, MailboxEntry entry) {
+        if (write > journalIds.length && journalIds.length < JOURNAL_CAPACITY) {
+            int capacity = journalIds.length * 2;
+            long[] ids = new long[capacity];
+            long[] versions = new long[capacity];
+            String[] journalled = new String[capacity];
+            // Every slot is in use, so each of the last writes moves to its slot in the larger journal
+            for (long previous = write - journalIds.length; previous < write; previous++) {
+                int from = (int) (previous & (journalIds.length - 1));
+                int to = (int) (previous & (capacity - 1));
+                ids[to] = journalIds[from];
+                versions[to] = journalVersions[from];
+                journalled[to] = journalFolders[from];
+            }
+            journalIds = ids;
+            journalVersions = versions;
+            journalFolders = journalled;
+        }
+        int slot = (int) (write & (journalIds.length - 1));
+        journalIds[slot] = entry.getId();
+        journalVersions[slot] = entry.getVersion();
+        journalFolders[slot] = entry.getFolder();
+    }
+
+    /**
+     * Find the entry with the sequence, if it is filed under the folder. Must be called holding the lock
+     */
+    private MailboxEntry find(long entrySequence, String folder) {
+        if (folder != null) {
+            Long2ObjectSortedMap<MailboxEntry> index = folders.get(folder);
+            return index == null ? null : index.get(entrySequence);
+        }
+        for (Long2ObjectSortedMap<MailboxEntry> index : folders.values()) {
+            MailboxEntry entry = index.get(entrySequence);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static int compareMatches(long[] sequences, double[] scores, int a, int b) {
+        int compare = Double.compare(scores[a], scores[b]);
+        return compare != 0 ? compare : Long.compare(sequences[a], sequences[b]);
+    }
+
+    private static String encodeCursor(long sequence) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Long.toString(sequence, Character.MAX_RADIX).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Encode a count of the mailbox's writes with the mailbox's epoch, so that it is never mistaken for a
+     * count from another instance of the mailbox
+     */
+    private String encodeVersion(long version) {
+        return Long.toString(epoch, Character.MAX_RADIX) + '.' + Long.toString(version, Character.MAX_RADIX);
+    }
+
+    /**
+     * @return The count of writes encoded in the version, or <code>-1</code> if it is from another instance
+     *         of the mailbox
+     */
+    private long decodeVersion(String version) {
+        int separator = version.indexOf('.');
+        try {
+            long versionEpoch = Long.parseLong(version.substring(0, Math.max(separator, 0)), Character.MAX_RADIX);
+            long count = Long.parseLong(version.substring(separator + 1), Character.MAX_RADIX);
+            if (count < 0) {
+                throw new IllegalArgumentException("Invalid token " + version);
+            }
+            return versionEpoch == epoch ? count : -1;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid token " + version, e);
+        }
+    }
+
+    private static long decodeCursor(String cursor) {
+        long sequence;
+        try {
+            sequence = Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII), Character.MAX_RADIX);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor " + cursor, e);
+        }
+        if (sequence < 1) {
+            throw new IllegalArgumentException("Invalid cursor " + cursor);
+        }
+        return sequence;
+    }
+}
@@ -0,0 +1,28 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailSummary;
+import lombok.Value;
+
+/**
+ * A reference from a mailbox to a stored message: its identifier, the folder it is indexed under, its
+ * position in the mailbox and its version, pointing at the shared content of the message. Entries are
+ * immutable, so a reader holding one always sees a consistent email
+ */
+@Value
+class MailboxEntry {
+    long sequence;
+    long id;
+    String folder;
+    long version;
+    MessageContent content;
+
+    Email toEmail(long userId) {
+        return new Email(id, userId, folder, content.getSender(), content.getRecipients(), content.getCarbonCopies(),
+                content.getBlindCarbonCopies(), content.getSubject(), content.getMessage(), version);
+    }
+
+    EmailSummary toSummary() {
+        return new EmailSummary(id, folder, content.getSender(), content.getSubject(), content.getSnippet());
+    }
+}
@@ -0,0 +1,256 @@
+package com.grasp.email.repository;
+
+import com.github.benmanes.caffeine.cache.Interner;
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+import com.grasp.email.model.EmailSummary;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The immutable headers and body of an email, shared by every mailbox entry holding the same message.
+ * Instances are compared by value so that they can be deduplicated by a {@link ContentStore}, and carry
+ * the snippet used for listings so that it is computed once per distinct message. The body may be compacted
+ * by a {@link BodyCompressor} when the content is first stored, after which it is decompressed each time it
+ * is read; listings only read the snippet. A body that may be compacted is digested first, so that equal
+ * content arriving later is matched against the compacted copy by digest rather than by decompressing it.
+ * <p>
+ * Addresses are interned in a weak pool shared by every repository, so each distinct address is held once
+ * however many messages it appears in, and freed once no message refers to it. Address lists are held as bare
+ * arrays of the interned addresses rather than lists, and only wrapped as lists when read
+ */
+@Getter
+final class MessageContent {
+    private static final int OBJECT_BYTES = 48;
+    private static final int REFERENCE_BYTES = 8;
+    private static final EmailAddress[] NO_ADDRESSES = new EmailAddress[0];
+    private static final Interner<EmailAddress> ADDRESSES = Interner.newWeakInterner();
+
+    private final EmailAddress sender;
+    @Getter(AccessLevel.NONE)
+    private final EmailAddress[] recipients;
+    @Getter(AccessLevel.NONE)
+    private final EmailAddress[] carbonCopies;
+    @Getter(AccessLevel.NONE)
+    private final EmailAddress[] blindCarbonCopies;
+    private final String subject;
+    @Getter(AccessLevel.NONE)
+    private String message;
+    @Getter(AccessLevel.NONE)
+    private byte[] compressedMessage;
+    @Getter(AccessLevel.NONE)
+    private BodyCompressor compressor;
+    /**
+     * SHA-256 of a body that may be compacted, taken beforehand so that a compacted copy can be compared with
+     * a plain one without decompressing it
+     */
+    @Getter(AccessLevel.NONE)
+    private byte[] messageDigest;
+    private final int messageLength;
+    private final String snippet;
+    private final int hash;
+    /** The estimated size of the content as received, before compression, which mailbox quotas are charged */
+    private final int size;
+    private int estimatedBytes;
+    /** Mailbox entries pointing at this content, only read or written within the owning {@link ContentStore} */
+    int references;
+
+    private MessageContent(EmailAddress sender, EmailAddress[] recipients, EmailAddress[] carbonCopies,
+                           EmailAddress[] blindCarbonCopies, String subject, String message, int size) {
+        this.sender = sender;
+        this.recipients = recipients;
+        this.carbonCopies = carbonCopies;
+        this.blindCarbonCopies = blindCarbonCopies;
+        this.subject = subject;
+        this.message = message;
+        this.messageLength = message == null ? 0 : message.length();
+        this.snippet = EmailSummary.snippetOf(message);
+        this.hash = Objects.hash(sender, Arrays.hashCode(recipients), Arrays.hashCode(carbonCopies),
+                Arrays.hashCode(blindCarbonCopies), subject, message);
+        // Interned addresses are shared, so only the references to them are held by this content
+        int bodyBytes = OBJECT_BYTES + estimateBytes(subject) + estimateBytes(message) + estimateBytes(snippet);
+        this.estimatedBytes = bodyBytes + arrayBytes(recipients) + arrayBytes(carbonCopies) + arrayBytes(blindCarbonCopies);
+        this.size = size;
+    }
+
+    List<EmailAddress> getRecipients() {
+        return listOf(recipients);
+    }
+
+    List<EmailAddress> getCarbonCopies() {
+        return listOf(carbonCopies);
+    }
+
+    List<EmailAddress> getBlindCarbonCopies() {
+        return listOf(blindCarbonCopies);
+    }
+
+    /**
+     * @return The body, decompressed if it was compacted
+     */
+    String getMessage() {
+        return compressedMessage == null ? message : compressor.decompress(compressedMessage);
+    }
+
+    /**
+     * @return The size of the compacted body in bytes, or <code>0</code> if the body is not compacted
+     */
+    int getCompressedLength() {
+        return compressedMessage == null ? 0 : compressedMessage.length;
+    }
+
+    /**
+     * Take a digest of the body, if the compressor might compact it, so that it can be compared with a
+     * compacted copy without decompressing either. Must only be called before the content is shared
+     * @param compressor The compressor that may compact the body
+     */
+    void digestMessage(BodyCompressor compressor) {
+        if (message == null || messageDigest != null || !compressor.accepts(message)) {
+            return;
+        }
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256").digest(message.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Replace the body with its compressed form, if the compressor chooses to compress it. Must only be
+     * called before the content is shared, as when the {@link ContentStore} is about to store it, and after
+     * {@link #digestMessage}
+     * @param compressor The compressor
+     * @return Whether the body was compacted
+     */
+    boolean compact(BodyCompressor compressor) {
+        byte[] compressed = compressor.compress(message);
+        if (compressed == null) {
+            // Only compacted bodies are compared by digest
+            messageDigest = null;
+            return false;
+        }
+        this.compressor = compressor;
+        this.compressedMessage = compressed;
+        this.estimatedBytes += 16 + compressed.length - estimateBytes(message) + (messageDigest == null ? 0 : 16 + messageDigest.length);
+        this.message = null;
+        return true;
+    }
+
+    private static int estimateBytes(String value) {
+        return value == null ? 0 : 40 + value.length();
+    }
+
+    private static int estimateBytes(EmailAddress address) {
+        return address == null ? 0 : 24 + estimateBytes(address.getAddress()) + estimateBytes(address.getSenderInfo());
+    }
+
+    /**
+     * The size of the addresses as received, each in its own list and instances
+     */
+    private static int estimateBytes(List<EmailAddress> addresses) {
+        if (addresses == null) {
+            return 0;
+        }
+        int bytes = 40 + addresses.size() * REFERENCE_BYTES;
+        for (EmailAddress address : addresses) {
+            bytes += estimateBytes(address);
+        }
+        return bytes;
+    }
+
+    private static int arrayBytes(EmailAddress[] addresses) {
+        return addresses == null || addresses.length == 0 ? 0 : 16 + addresses.length * REFERENCE_BYTES;
+    }
+
+    /**
+     * Take an immutable copy of the content of the email, with its addresses interned. The address lists are
+     * copied, so that later changes to the email do not leak into the stored content
+     * @param email The email
+     * @return The content
+     */
+    static MessageContent of(Email email) {
+        return new MessageContent(intern(email.getSender()), intern(email.getRecipients()), intern(email.getCarbonCopies()),
+                intern(email.getBlindCarbonCopies()), email.getSubject(), email.getMessage(), sizeOf(email));
+    }
+
+    /**
+     * @param email The email
+     * @return The estimated size of the email's content as received, which its mailbox is charged once it is stored
+     */
+    static int sizeOf(Email email) {
+        String message = email.getMessage();
+        return OBJECT_BYTES + estimateBytes(email.getSubject()) + estimateBytes(message) + estimateBytes(EmailSummary.snippetOf(message))
+                + estimateBytes(email.getSender()) + estimateBytes(email.getRecipients()) + estimateBytes(email.getCarbonCopies())
+                + estimateBytes(email.getBlindCarbonCopies());
+    }
+
+    private static EmailAddress intern(EmailAddress address) {
+        return address == null ? null : ADDRESSES.intern(address);
+    }
+
+    private static EmailAddress[] intern(List<EmailAddress> addresses) {
+        if (addresses == null) {
+            return null;
+        }
+        if (addresses.isEmpty()) {
+            return NO_ADDRESSES;
+        }
+        EmailAddress[] interned = new EmailAddress[addresses.size()];
+        for (int i = 0; i < interned.length; i++) {
+            interned[i] = intern(addresses.get(i));
+        }
+        return interned;
+    }
+
+    private static List<EmailAddress> listOf(EmailAddress[] addresses) {
+        return addresses == null ? null : Collections.unmodifiableList(Arrays.asList(addresses));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MessageContent)) {
+            return false;
+        }
+        MessageContent that = (MessageContent) o;
+        return hash == that.hash
+                && Objects.equals(subject, that.subject)
+                && Objects.equals(sender, that.sender)
+                && Arrays.equals(recipients, that.recipients)
+                && Arrays.equals(carbonCopies, that.carbonCopies)
+                && Arrays.equals(blindCarbonCopies, that.blindCarbonCopies)
+                && messageEquals(that);
+    }
+
+    private boolean messageEquals(MessageContent that) {
+        if (compressedMessage != null && that.compressedMessage != null) {
+            // Compression is deterministic, so equal bodies compress to equal bytes
+            return Arrays.equals(compressedMessage, that.compressedMessage);
+        }
+        if (compressedMessage == null && that.compressedMessage == null) {
+            return Objects.equals(message, that.message);
+        }
+        if (messageLength != that.messageLength) {
+            return false;
+        }
+        if (messageDigest != null && that.messageDigest != null) {
+            return MessageDigest.isEqual(messageDigest, that.messageDigest);
+        }
+        return Objects.equals(getMessage(), that.getMessage());
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,216 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.Changes;
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailSummary;
+import com.grasp.email.model.FolderVersion;
+import com.grasp.email.model.MailboxUsage;
+import com.grasp.email.model.Page;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every operation of another {@link EmailRepository}, recording each into a percentile histogram
+ * tagged with the operation. Timers are registered up front, so timing a call allocates nothing. Gauges
+ * and counters of the underlying repository are registered too, if it publishes any. A repository serving
+ * as a shard is wrapped in a {@link MeteredEmailShard} instead, so that it can still be rebalanced
+ */
+public class MeteredEmailRepository implements EmailRepository, Closeable {
+    private final EmailRepository delegate;
+    private final Timer getInbox;
+    private final Timer getInboxPage;
+    private final Timer getInboxSummaries;
+    private final Timer getInboxSummariesPage;
+    private final Timer getFolderPage;
+    private final Timer search;
+    private final Timer getFolderVersion;
+    private final Timer getChanges;
+    private final Timer getUsage;
+    private final Timer get;
+    private final Timer save;
+    private final Timer saveAll;
+    private final Timer replace;
+    private final Timer move;
+
+    public MeteredEmailRepository(EmailRepository delegate, MeterRegistry registry) {
+        this.delegate = delegate;
+        getInbox = timer(registry, "getInbox");
+        getInboxPage = timer(registry, "getInboxPage");
+        getInboxSummaries = timer(registry, "getInboxSummaries");
+        getInboxSummariesPage = timer(registry, "getInboxSummariesPage");
+        getFolderPage = timer(registry, "getFolderPage");
+        search = timer(registry, "search");
+        getFolderVersion = timer(registry, "getFolderVersion");
+        getChanges = timer(registry, "getChanges");
+        getUsage = timer(registry, "getUsage");
+        get = timer(registry, "get");
+        save = timer(registry, "save");
+        saveAll = timer(registry, "saveAll");
+        replace = timer(registry, "replace");
+        move = timer(registry, "move");
+        if (delegate instanceof MeterBinder binder) {
+            binder.bindTo(registry);
+        }
+    }
+
+    private static Timer timer(MeterRegistry registry, String operation) {
+        return Timer.builder("email.repository.operation")
+                .description("Time taken by email repository operations")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    @Override
+    public List<Email> getInboxForUserId(long userId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getInboxForUserId(userId);
+        } finally {
+            getInbox.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Page<Email> getInboxForUserId(long userId, int limit, String cursor) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getInboxForUserId(userId, limit, cursor);
+        } finally {
+            getInboxPage.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public List<EmailSummary> getInboxSummariesForUserId(long userId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getInboxSummariesForUserId(userId);
+        } finally {
+            getInboxSummaries.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Page<EmailSummary> getInboxSummariesForUserId(long userId, int limit, String cursor) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getInboxSummariesForUserId(userId, limit, cursor);
+        } finally {
+            getInboxSummariesPage.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Page<Email> getFolderForUserId(long userId, String folder, int limit, String cursor) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getFolderForUserId(userId, folder, limit, cursor);
+        } finally {
+            getFolderPage.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Page<EmailSummary> searchForUserId(long userId, String query, String folder, int limit, String cursor) {
+        long start = System.nanoTime();
+        try {
+            return delegate.searchForUserId(userId, query, folder, limit, cursor);
+        } finally {
+            search.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public FolderVersion getFolderVersionForUserId(long userId, String folder) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getFolderVersionForUserId(userId, folder);
+        } finally {
+            getFolderVersion.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Changes getChangesForUserId(long userId, String since) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getChangesForUserId(userId, since);
+        } finally {
+            getChanges.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public MailboxUsage getUsageForUserId(long userId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getUsageForUserId(userId);
+        } finally {
+            getUsage.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Email getEmailForUserIdAndEmailId(long userId, long emailId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getEmailForUserIdAndEmailId(userId, emailId);
+        } finally {
+            get.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Email saveEmail(Email email) {
+        long start = System.nanoTime();
+        try {
+            return delegate.saveEmail(email);
+        } finally {
+            save.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public List<Email> saveAll(List<Email> emails) {
+        long start = System.nanoTime();
+        try {
+            return delegate.saveAll(emails);
+        } finally {
+            saveAll.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Email replaceEmail(Email email, String expectedFolder) {
+        long start = System.nanoTime();
+        try {
+            return delegate.replaceEmail(email, expectedFolder);
+        } finally {
+            replace.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Email moveEmail(long userId, long emailId, String fromFolder, String toFolder) {
+        long start = System.nanoTime();
+        try {
+            return delegate.moveEmail(userId, emailId, fromFolder, toFolder);
+        } finally {
+            move.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (delegate instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+}
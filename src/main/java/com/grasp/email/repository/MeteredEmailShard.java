@@ -0,0 +1,40 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.Email;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link MeteredEmailRepository} for a repository that can serve as a shard. Mailbox transfers are passed
+ * straight to the shard untimed, as they are only made while rebalancing
+ */
+public class MeteredEmailShard extends MeteredEmailRepository implements EmailShard {
+    private final EmailShard shard;
+
+    public MeteredEmailShard(EmailShard shard, MeterRegistry registry) {
+        super(shard, registry);
+        this.shard = shard;
+    }
+
+    @Override
+    public Collection<Long> getUserIds() {
+        return shard.getUserIds();
+    }
+
+    @Override
+    public List<Email> exportMailbox(long userId) {
+        return shard.exportMailbox(userId);
+    }
+
+    @Override
+    public void importMailbox(List<Email> emails) {
+        shard.importMailbox(emails);
+    }
+
+    @Override
+    public void removeMailbox(long userId) {
+        shard.removeMailbox(userId);
+    }
+}
@@ -0,0 +1,224 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.Changes;
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailSummary;
+import com.grasp.email.model.FolderVersion;
+import com.grasp.email.model.MailboxUsage;
+import com.grasp.email.model.Page;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * {@link EmailShard} served by another process over the <code>/internal/shard</code> endpoints of its
+ * <code>ShardController</code>, so that a {@link ShardedEmailRepository} can spread mailboxes across
+ * processes and machines. Errors are passed back as the exceptions the shard raised: rejected requests as
+ * {@link IllegalArgumentException} and conflicting writes as {@link IllegalStateException}. Emails saved
+ * are updated with the identifiers and versions the shard gave them, as they would be by a local shard.
+ * <p>
+ * Requests and responses are encoded as Smile, Jackson's binary JSON, rather than JSON, as batches and mailboxes
+ * moved between shards carry large recipient lists. Smile refers back to field names already written rather
+ * than repeating them, so such lists encode to around 40% less than JSON and parse faster
+ */
+public class RemoteEmailShard implements EmailShard {
+    private static final ParameterizedTypeReference<List<Email>> EMAILS = new ParameterizedTypeReference<>() {};
+    private static final ParameterizedTypeReference<List<EmailSummary>> SUMMARIES = new ParameterizedTypeReference<>() {};
+    private static final ParameterizedTypeReference<Page<Email>> EMAIL_PAGE = new ParameterizedTypeReference<>() {};
+    private static final ParameterizedTypeReference<Page<EmailSummary>> SUMMARY_PAGE = new ParameterizedTypeReference<>() {};
+    private static final ParameterizedTypeReference<List<Long>> USER_IDS = new ParameterizedTypeReference<>() {};
+    private static final MediaType SMILE = new MediaType("application", "x-jackson-smile");
+
+    private final RestTemplate rest;
+    private final String root;
+
+    /**
+     * @param builder Builder for the client, carrying the application's message converters
+     * @param url The root URL of the process serving the shard
+     * @param username The user the shard's endpoints are secured with
+     * @param password Their password
+     * @param timeout The connect and read timeout
+     */
+    public RemoteEmailShard(RestTemplateBuilder builder, String url, String username, String password, Duration timeout) {
+        rest = builder.basicAuthentication(username, password)
+                .setConnectTimeout(timeout)
+                .setReadTimeout(timeout)
+                .build();
+        root = url + "/internal/shard";
+    }
+
+    @Override
+    public List<Email> getInboxForUserId(long userId) {
+        return exchange(HttpMethod.GET, null, EMAILS, uri("/users/{userId}/inbox", Map.of("userId", userId)));
+    }
+
+    @Override
+    public Page<Email> getInboxForUserId(long userId, int limit, String cursor) {
+        return exchange(HttpMethod.GET, null, EMAIL_PAGE, uri("/users/{userId}/inbox/page", Map.of("userId", userId), "limit", limit, "cursor", cursor));
+    }
+
+    @Override
+    public List<EmailSummary> getInboxSummariesForUserId(long userId) {
+        return exchange(HttpMethod.GET, null, SUMMARIES, uri("/users/{userId}/inbox/summaries", Map.of("userId", userId)));
+    }
+
+    @Override
+    public Page<EmailSummary> getInboxSummariesForUserId(long userId, int limit, String cursor) {
+        return exchange(HttpMethod.GET, null, SUMMARY_PAGE, uri("/users/{userId}/inbox/summaries/page", Map.of("userId", userId), "limit", limit, "cursor", cursor));
+    }
+
+    @Override
+    public Page<Email> getFolderForUserId(long userId, String folder, int limit, String cursor) {
+        return exchange(HttpMethod.GET, null, EMAIL_PAGE, uri("/users/{userId}/folders/{folder}", Map.of("userId", userId, "folder", folder), "limit", limit, "cursor", cursor));
+    }
+
+    @Override
+    public Page<EmailSummary> searchForUserId(long userId, String query, String folder, int limit, String cursor) {
+        return exchange(HttpMethod.GET, null, SUMMARY_PAGE, uri("/users/{userId}/search", Map.of("userId", userId), "query", query, "folder", folder, "limit", limit, "cursor", cursor));
+    }
+
+    @Override
+    public FolderVersion getFolderVersionForUserId(long userId, String folder) {
+        return exchange(HttpMethod.GET, null, FolderVersion.class, uri("/users/{userId}/folders/{folder}/version", Map.of("userId", userId, "folder", folder)));
+    }
+
+    @Override
+    public Changes getChangesForUserId(long userId, String since) {
+        return exchange(HttpMethod.GET, null, Changes.class, uri("/users/{userId}/changes", Map.of("userId", userId), "since", since));
+    }
+
+    @Override
+    public MailboxUsage getUsageForUserId(long userId) {
+        return exchange(HttpMethod.GET, null, MailboxUsage.class, uri("/users/{userId}/usage", Map.of("userId", userId)));
+    }
+
+    @Override
+    public Email getEmailForUserIdAndEmailId(long userId, long emailId) {
+        return exchange(HttpMethod.GET, null, Email.class, uri("/users/{userId}/emails/{emailId}", Map.of("userId", userId, "emailId", emailId)));
+    }
+
+    @Override
+    public Email saveEmail(Email email) {
+        Email saved = exchange(HttpMethod.POST, email, Email.class, uri("/emails", Map.of()));
+        return copyStored(saved, email);
+    }
+
+    @Override
+    public List<Email> saveAll(List<Email> emails) {
+        List<Email> saved = exchange(HttpMethod.POST, emails, EMAILS, uri("/emails/batch", Map.of()));
+        for (int i = 0; i < emails.size(); i++) {
+            copyStored(saved.get(i), emails.get(i));
+        }
+        return emails;
+    }
+
+    @Override
+    public Email replaceEmail(Email email, String expectedFolder) {
+        URI uri = uri("/emails", Map.of(), "expectedFolder", expectedFolder);
+        Email replaced = exchange(HttpMethod.PUT, email, Email.class, uri);
+        return replaced == null ? null : copyStored(replaced, email);
+    }
+
+    @Override
+    public Email moveEmail(long userId, long emailId, String fromFolder, String toFolder) {
+        URI uri = uri("/users/{userId}/emails/{emailId}/move", Map.of("userId", userId, "emailId", emailId), "from", fromFolder, "to", toFolder);
+        return exchange(HttpMethod.POST, null, Email.class, uri);
+    }
+
+    @Override
+    public Collection<Long> getUserIds() {
+        return exchange(HttpMethod.GET, null, USER_IDS, uri("/users", Map.of()));
+    }
+
+    @Override
+    public List<Email> exportMailbox(long userId) {
+        return exchange(HttpMethod.GET, null, EMAILS, uri("/users/{userId}/mailbox", Map.of("userId", userId)));
+    }
+
+    @Override
+    public void importMailbox(List<Email> emails) {
+        exchange(HttpMethod.POST, emails, Void.class, uri("/mailboxes", Map.of()));
+    }
+
+    @Override
+    public void removeMailbox(long userId) {
+        exchange(HttpMethod.DELETE, null, Void.class, uri("/users/{userId}/mailbox", Map.of("userId", userId)));
+    }
+
+    /**
+     * @param path The path below the shard endpoints, with placeholders for the path variables
+     * @param pathVariables The path variables
+     * @param query Names and values of query parameters in turn, leaving out those whose values are <code>null</code>
+     * @return The endpoint's URI, with every variable encoded
+     */
+    private URI uri(String path, Map<String, ?> pathVariables, Object... query) {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(root).path(path);
+        Map<String, Object> variables = new HashMap<>(pathVariables);
+        for (int i = 0; i < query.length; i += 2) {
+            if (query[i + 1] != null) {
+                String name = (String) query[i];
+                builder.queryParam(name, "{" + name + "}");
+                variables.put(name, query[i + 1]);
+            }
+        }
+        return builder.encode().buildAndExpand(variables).toUri();
+    }
+
+    private <T> T exchange(HttpMethod method, Object body, ParameterizedTypeReference<T> type, URI uri) {
+        return call(() -> rest.exchange(uri, method, entity(body), type).getBody());
+    }
+
+    private <T> T exchange(HttpMethod method, Object body, Class<T> type, URI uri) {
+        return call(() -> rest.exchange(uri, method, entity(body), type).getBody());
+    }
+
+    /**
+     * The request, asking for a Smile response and encoding any body as Smile
+     */
+    private static HttpEntity<Object> entity(Object body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(List.of(SMILE));
+        if (body != null) {
+            headers.setContentType(SMILE);
+        }
+        return new HttpEntity<>(body, headers);
+    }
+
+    /**
+     * Make the request, raising the exception the shard raised if it was rejected
+     */
+    private static <T> T call(Supplier<T> request) {
+        try {
+            return request.get();
+        } catch (HttpStatusCodeException e) {
+            if (e.getStatusCode() == HttpStatus.BAD_REQUEST) {
+                throw new IllegalArgumentException(e.getResponseBodyAsString(), e);
+            }
+            if (e.getStatusCode() == HttpStatus.CONFLICT) {
+                throw new IllegalStateException(e.getResponseBodyAsString(), e);
+            }
+            throw e;
+        }
+    }
+
+    private static Email copyStored(Email stored, Email email) {
+        email.setId(stored.getId());
+        email.setVersion(stored.getVersion());
+        return email;
+    }
+}
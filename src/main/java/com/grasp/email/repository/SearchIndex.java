@@ -0,0 +1,302 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.EmailAddress;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Inverted index over the subject, body and addresses of the emails in a single mailbox. Documents are
+ * identified by their mailbox sequence. Each term maps to a posting list held as a primitive
+ * <code>long[]</code>, sorted by sequence, with each posting packing the sequence and the weight of the term
+ * in that document. Terms are numbered, and each document keeps the numbers of its terms so that it can be
+ * removed when the email is updated. A term is dropped from the dictionary once no document holds it, and its
+ * number reused.
+ * <p>
+ * Not thread-safe: the owning {@link Mailbox} guards it with its lock
+ */
+class SearchIndex {
+    private static final int WEIGHT_BITS = 8;
+    private static final int MAX_WEIGHT = (1 << WEIGHT_BITS) - 1;
+    private static final int SUBJECT_WEIGHT = 4;
+    private static final int ADDRESS_WEIGHT = 2;
+    private static final int BODY_WEIGHT = 1;
+    private static final long[] NO_POSTINGS = new long[0];
+
+    private final Object2IntMap<String> termIds = new Object2IntOpenHashMap<>();
+    private String[] terms = new String[64];
+    private long[][] postings = new long[64][];
+    private int[] postingCounts = new int[64];
+    /** Numbers allocated to terms so far, including those freed */
+    private int termLimit;
+    private final IntArrayList freeTermIds = new IntArrayList();
+    private final Long2ObjectMap<int[]> documentTerms = new Long2ObjectOpenHashMap<>();
+
+    SearchIndex() {
+        termIds.defaultReturnValue(-1);
+    }
+
+    /**
+     * Index the content under the sequence, replacing anything previously indexed under it
+     * @param sequence The mailbox sequence of the email
+     * @param content The content of the email
+     * @param message The body of the email, passed separately as the content may hold it compressed
+     */
+    void add(long sequence, MessageContent content, String message) {
+        remove(sequence);
+        Object2IntOpenHashMap<String> weights = new Object2IntOpenHashMap<>();
+        addText(weights, content.getSubject(), SUBJECT_WEIGHT);
+        addText(weights, message, BODY_WEIGHT);
+        addAddress(weights, content.getSender());
+        addAddresses(weights, content.getRecipients());
+        addAddresses(weights, content.getCarbonCopies());
+        addAddresses(weights, content.getBlindCarbonCopies());
+
+        int[] documentTermIds = new int[weights.size()];
+        int i = 0;
+        for (Object2IntMap.Entry<String> entry : weights.object2IntEntrySet()) {
+            int termId = termIdOf(entry.getKey());
+            insertPosting(termId, (sequence << WEIGHT_BITS) | Math.min(entry.getIntValue(), MAX_WEIGHT));
+            documentTermIds[i++] = termId;
+        }
+        documentTerms.put(sequence, documentTermIds);
+    }
+
+    /**
+     * Remove the email indexed under the sequence, if any
+     * @param sequence The mailbox sequence of the email
+     */
+    void remove(long sequence) {
+        int[] documentTermIds = documentTerms.remove(sequence);
+        if (documentTermIds == null) {
+            return;
+        }
+        for (int termId : documentTermIds) {
+            int index = find(termId, sequence);
+            if (index >= 0) {
+                long[] list = postings[termId];
+                System.arraycopy(list, index + 1, list, index, postingCounts[termId] - index - 1);
+                postingCounts[termId]--;
+            }
+            if (postingCounts[termId] == 0) {
+                termIds.removeInt(terms[termId]);
+                terms[termId] = null;
+                postings[termId] = NO_POSTINGS;
+                freeTermIds.add(termId);
+            }
+        }
+    }
+
+    /**
+     * Find every email containing all of the query's terms, scored by the weight of each term in the email
+     * and how rare the term is in the mailbox
+     * @param query The query
+     * @return The matching sequences and their scores, unordered. Empty if any term is absent
+     */
+    Matches search(String query) {
+        IntArrayList queryTerms = new IntArrayList();
+        for (String term : tokenizeQuery(query)) {
+            int termId = termIds.getInt(term);
+            if (termId < 0 || postingCounts[termId] == 0) {
+                return new Matches(new long[0], new double[0], 0);
+            }
+            if (!queryTerms.contains(termId)) {
+                queryTerms.add(termId);
+            }
+        }
+        if (queryTerms.isEmpty()) {
+            return new Matches(new long[0], new double[0], 0);
+        }
+
+        // Walk the shortest posting list, probing the others for each candidate
+        int[] terms = queryTerms.toIntArray();
+        Integer[] order = new Integer[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            order[i] = terms[i];
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(postingCounts[a], postingCounts[b]));
+        double documents = documentTerms.size();
+        double[] idf = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            idf[i] = Math.log(1 + documents / postingCounts[order[i]]);
+        }
+
+        int shortest = order[0];
+        long[] sequences = new long[postingCounts[shortest]];
+        double[] scores = new double[postingCounts[shortest]];
+        int matches = 0;
+        int[] cursors = new int[order.length];
+        for (int p = 0; p < postingCounts[shortest]; p++) {
+            long posting = postings[shortest][p];
+            long sequence = posting >>> WEIGHT_BITS;
+            double score = idf[0] * (posting & MAX_WEIGHT);
+            boolean all = true;
+            for (int t = 1; t < order.length && all; t++) {
+                int termId = order[t];
+                int index = search(postings[termId], cursors[t], postingCounts[termId], sequence);
+                if (index < 0) {
+                    cursors[t] = -index - 1;
+                    all = false;
+                } else {
+                    cursors[t] = index + 1;
+                    score += idf[t] * (postings[termId][index] & MAX_WEIGHT);
+                }
+            }
+            if (all) {
+                sequences[matches] = sequence;
+                scores[matches] = score;
+                matches++;
+            }
+        }
+        return new Matches(sequences, scores, matches);
+    }
+
+    /**
+     * @return The number of distinct terms indexed
+     */
+    int getTermCount() {
+        return termIds.size();
+    }
+
+    /**
+     * @return An estimate of the bytes held by the term dictionary, posting lists and document term lists
+     */
+    long estimateBytes() {
+        long bytes = (long) postings.length * (Long.BYTES + Integer.BYTES);
+        for (int termId = 0; termId < termLimit; termId++) {
+            bytes += 16 + (long) postings[termId].length * Long.BYTES;
+        }
+        // Term strings and their hash table slots
+        bytes += (long) termIds.size() * 64;
+        bytes += (long) documentTerms.size() * 40;
+        for (int[] terms : documentTerms.values()) {
+            bytes += (long) terms.length * Integer.BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * Sequences matching a query and their scores, in the first <code>count</code> elements of each array
+     */
+    record Matches(long[] sequences, double[] scores, int count) {
+    }
+
+    private int termIdOf(String term) {
+        int termId = termIds.getInt(term);
+        if (termId < 0) {
+            if (freeTermIds.isEmpty()) {
+                termId = termLimit++;
+                if (termId == postings.length) {
+                    terms = Arrays.copyOf(terms, termId * 2);
+                    postings = Arrays.copyOf(postings, termId * 2);
+                    postingCounts = Arrays.copyOf(postingCounts, termId * 2);
+                }
+            } else {
+                termId = freeTermIds.popInt();
+            }
+            termIds.put(term, termId);
+            terms[termId] = term;
+            postings[termId] = NO_POSTINGS;
+        }
+        return termId;
+    }
+
+    private void insertPosting(int termId, long posting) {
+        long[] list = postings[termId];
+        int count = postingCounts[termId];
+        if (count == list.length) {
+            list = Arrays.copyOf(list, Math.max(4, count + (count >> 1)));
+            postings[termId] = list;
+        }
+        // Sequences are allocated in increasing order, so new emails append; re-indexed emails are inserted
+        int index = count;
+        long sequence = posting >>> WEIGHT_BITS;
+        if (count > 0 && (list[count - 1] >>> WEIGHT_BITS) > sequence) {
+            index = -search(list, 0, count, sequence) - 1;
+            System.arraycopy(list, index, list, index + 1, count - index);
+        }
+        list[index] = posting;
+        postingCounts[termId] = count + 1;
+    }
+
+    private int find(int termId, long sequence) {
+        return search(postings[termId], 0, postingCounts[termId], sequence);
+    }
+
+    /**
+     * Binary search of a posting list for a sequence
+     * @return The index of the posting, or <code>-(insertion point) - 1</code> if it isn't present
+     */
+    private static int search(long[] list, int from, int to, long sequence) {
+        int low = from;
+        int high = to - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midSequence = list[mid] >>> WEIGHT_BITS;
+            if (midSequence < sequence) {
+                low = mid + 1;
+            } else if (midSequence > sequence) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static void addText(Object2IntOpenHashMap<String> weights, String text, int weight) {
+        if (text == null) {
+            return;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letterOrDigit = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letterOrDigit && start < 0) {
+                start = i;
+            } else if (!letterOrDigit && start >= 0) {
+                weights.addTo(text.substring(start, i).toLowerCase(Locale.ROOT), weight);
+                start = -1;
+            }
+        }
+    }
+
+    private static void addAddress(Object2IntOpenHashMap<String> weights, EmailAddress address) {
+        if (address == null) {
+            return;
+        }
+        if (address.getAddress() != null) {
+            weights.addTo(address.getAddress().toLowerCase(Locale.ROOT), ADDRESS_WEIGHT);
+            addText(weights, address.getAddress(), ADDRESS_WEIGHT);
+        }
+        addText(weights, address.getSenderInfo(), ADDRESS_WEIGHT);
+    }
+
+    private static void addAddresses(Object2IntOpenHashMap<String> weights, List<EmailAddress> addresses) {
+        if (addresses != null) {
+            addresses.forEach(v -> addAddress(weights, v));
+        }
+    }
+
+    /**
+     * Split a query into terms the same way as indexed text. Words containing <code>@</code> are also kept
+     * whole, so that an address matches the whole address as well as its parts
+     */
+    static List<String> tokenizeQuery(String query) {
+        Object2IntOpenHashMap<String> terms = new Object2IntOpenHashMap<>();
+        for (String word : query.trim().split("\\s+")) {
+            if (word.indexOf('@') > 0) {
+                terms.addTo(word.toLowerCase(Locale.ROOT), 1);
+            } else {
+                addText(terms, word, 1);
+            }
+        }
+        return List.copyOf(terms.keySet());
+    }
+}
@@ -0,0 +1,81 @@
+package com.grasp.email.repository;
+
+import java.util.Arrays;
+
+/**
+ * Consistent hash ring mapping user identifiers to shard indexes. Each shard owns a number of points on the
+ * ring, and a user belongs to the shard owning the first point at or after the hash of their identifier,
+ * wrapping round at the end. Adding a shard only moves the users whose hashes fall just before its new
+ * points, roughly one in every <code>n + 1</code>, all of them onto the new shard.
+ * <p>
+ * Rings are immutable, so a lookup is a binary search of a sorted array without locking.
+ */
+class ShardRing {
+    static final int POINTS_PER_SHARD = 128;
+
+    private final int shardCount;
+    private final long[] points;
+    private final int[] owners;
+
+    /**
+     * @param shardCount The number of shards, indexed from 0
+     */
+    ShardRing(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("A ring needs at least one shard");
+        }
+        this.shardCount = shardCount;
+        int count = shardCount * POINTS_PER_SHARD;
+        long[] keys = new long[count];
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int i = 0; i < POINTS_PER_SHARD; i++) {
+                keys[shard * POINTS_PER_SHARD + i] = mix(((long) shard << 32) | i);
+            }
+        }
+        // Sort the points along with their owners, breaking the rare tie by shard index so that every ring
+        // built with the same shards agrees
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> keys[a] != keys[b] ? Long.compare(keys[a], keys[b]) : Integer.compare(a, b));
+        points = new long[count];
+        owners = new int[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = keys[order[i]];
+            owners[i] = order[i] / POINTS_PER_SHARD;
+        }
+    }
+
+    /**
+     * @return The number of shards on the ring
+     */
+    int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @param userId The user identifier
+     * @return The index of the shard holding the user's mailbox
+     */
+    int shardOf(long userId) {
+        int index = Arrays.binarySearch(points, mix(userId));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * Spread the bits of the key across the whole hash, as user identifiers are mostly small and sequential.
+     * The finaliser of MurmurHash3
+     */
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
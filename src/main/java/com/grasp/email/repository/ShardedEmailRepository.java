@@ -0,0 +1,379 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.Changes;
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailSummary;
+import com.grasp.email.model.FolderVersion;
+import com.grasp.email.model.MailboxUsage;
+import com.grasp.email.model.Page;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * {@link EmailRepository} partitioning mailboxes across several {@link EmailShard}s by user, so that storage
+ * can grow past one node's heap and cores. Users are assigned to shards by a {@link ShardRing}, and each shard
+ * allocates email identifiers from its own range, starting at {@link #firstIdOf(int)}, so identifiers stay
+ * unique without the shards coordinating. Shards may be local repositories or {@link RemoteEmailShard}s in
+ * other processes.
+ * <p>
+ * Each operation on a user's mailbox is forwarded to the shard holding it. A batch spanning several shards,
+ * such as delivery to recipients on different shards, is split into one batch per shard, which are sent
+ * concurrently. Batches aren't atomic across shards, just as they aren't across users.
+ * <p>
+ * Shards can be added while serving with {@link #addShard(EmailShard)}, which moves the mailboxes the new
+ * ring assigns to the new shard. Users are split into lock stripes: operations hold their stripe's read
+ * lock, and the move holds each stripe's write lock in turn while moving the stripe's users, so requests
+ * only wait for the users sharing their stripe. Moved mailboxes keep their emails, identifiers and versions,
+ * but their folder tags and change tokens start afresh, so clients revalidate and resynchronise them once.
+ */
+@Slf4j
+public class ShardedEmailRepository implements EmailRepository, MeterBinder, Closeable {
+    private static final int STRIPES = 64;
+    /** Bits of the identifier range reserved for each shard */
+    private static final int ID_RANGE_BITS = 48;
+
+    private final ReadWriteLock[] stripes = new ReadWriteLock[STRIPES];
+    /** Stripes whose users have been moved onto {@link #nextRing}, guarded by the stripe's lock */
+    private final boolean[] moved = new boolean[STRIPES];
+    private final LongAdder movedUsers = new LongAdder();
+    /**
+     * Users of each stripe to consider moving while shards are added: those found on the shards when the move
+     * began, and those written to since, until their stripe is moved
+     */
+    private final List<Set<Long>> pendingUsers = new ArrayList<>(STRIPES);
+    private final ExecutorService batchExecutor;
+    private volatile List<EmailShard> shards;
+    private volatile ShardRing ring;
+    /** The ring being moved to while shards are added, or <code>null</code> */
+    private volatile ShardRing nextRing;
+
+    /**
+     * @param shards The shards, in the order of their identifier ranges
+     */
+    public ShardedEmailRepository(List<? extends EmailShard> shards) {
+        this.shards = List.copyOf(shards);
+        ring = new ShardRing(shards.size());
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+            pendingUsers.add(ConcurrentHashMap.newKeySet());
+        }
+        AtomicInteger threads = new AtomicInteger();
+        batchExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "shard-batch-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param index The index of the shard
+     * @return The first email identifier the shard should allocate, giving each shard 2^48 identifiers
+     */
+    public static long firstIdOf(int index) {
+        return ((long) index << ID_RANGE_BITS) + 1;
+    }
+
+    /**
+     * Register a gauge for the number of shards and a counter of the mailboxes moved between them. Shards
+     * register their own metrics in the processes serving them
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("email.repository.shards", this, v -> v.getShardCount())
+                .description("Shards mailboxes are partitioned across")
+                .register(registry);
+        FunctionCounter.builder("email.repository.shards.moved", movedUsers, LongAdder::sum)
+                .description("Mailboxes moved between shards when shards were added")
+                .register(registry);
+    }
+
+    /**
+     * @return The number of shards
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * @param userId The user identifier
+     * @return The index of the shard holding the user's mailbox
+     */
+    public int shardOf(long userId) {
+        Lock lock = stripeOf(userId).readLock();
+        lock.lock();
+        try {
+            return ringOf(userId).shardOf(userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Email> getInboxForUserId(long userId) {
+        return onShard(userId, v -> v.getInboxForUserId(userId));
+    }
+
+    @Override
+    public Page<Email> getInboxForUserId(long userId, int limit, String cursor) {
+        return onShard(userId, v -> v.getInboxForUserId(userId, limit, cursor));
+    }
+
+    @Override
+    public List<EmailSummary> getInboxSummariesForUserId(long userId) {
+        return onShard(userId, v -> v.getInboxSummariesForUserId(userId));
+    }
+
+    @Override
+    public Page<EmailSummary> getInboxSummariesForUserId(long userId, int limit, String cursor) {
+        return onShard(userId, v -> v.getInboxSummariesForUserId(userId, limit, cursor));
+    }
+
+    @Override
+    public Page<Email> getFolderForUserId(long userId, String folder, int limit, String cursor) {
+        return onShard(userId, v -> v.getFolderForUserId(userId, folder, limit, cursor));
+    }
+
+    @Override
+    public Page<EmailSummary> searchForUserId(long userId, String query, String folder, int limit, String cursor) {
+        return onShard(userId, v -> v.searchForUserId(userId, query, folder, limit, cursor));
+    }
+
+    @Override
+    public FolderVersion getFolderVersionForUserId(long userId, String folder) {
+        return onShard(userId, v -> v.getFolderVersionForUserId(userId, folder));
+    }
+
+    @Override
+    public Changes getChangesForUserId(long userId, String since) {
+        return onShard(userId, v -> v.getChangesForUserId(userId, since));
+    }
+
+    @Override
+    public MailboxUsage getUsageForUserId(long userId) {
+        return onShard(userId, v -> v.getUsageForUserId(userId));
+    }
+
+    @Override
+    public Email getEmailForUserIdAndEmailId(long userId, long emailId) {
+        return onShard(userId, v -> v.getEmailForUserIdAndEmailId(userId, emailId));
+    }
+
+    @Override
+    public Email saveEmail(Email email) {
+        long userId = userIdOf(email);
+        return onShard(userId, v -> {
+            recordPending(userId);
+            return v.saveEmail(email);
+        });
+    }
+
+    /**
+     * Split the batch by shard and save each part on its shard, concurrently when there are several. Holds
+     * the lock stripes of every user in the batch, so no mailbox in it can move part way through
+     */
+    @Override
+    public List<Email> saveAll(List<Email> emails) {
+        boolean[] locked = new boolean[STRIPES];
+        for (Email email : emails) {
+            locked[stripeIndexOf(userIdOf(email))] = true;
+        }
+        // Stripes are locked in index order, and moves hold one stripe at a time, so batches can't deadlock
+        List<Lock> locks = new ArrayList<>();
+        for (int i = 0; i < STRIPES; i++) {
+            if (locked[i]) {
+                locks.add(stripes[i].readLock());
+            }
+        }
+        locks.forEach(Lock::lock);
+        try {
+            Map<EmailShard, List<Email>> batches = new LinkedHashMap<>();
+            for (Email email : emails) {
+                recordPending(email.getUserId());
+                batches.computeIfAbsent(shardOf(email.getUserId(), shards), v -> new ArrayList<>()).add(email);
+            }
+            if (batches.size() <= 1) {
+                batches.forEach(EmailShard::saveAll);
+                return emails;
+            }
+            List<CompletableFuture<List<Email>>> saves = new ArrayList<>(batches.size());
+            batches.forEach((shard, batch) -> saves.add(CompletableFuture.supplyAsync(() -> shard.saveAll(batch), batchExecutor)));
+            try {
+                CompletableFuture.allOf(saves.toArray(CompletableFuture[]::new)).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+            return emails;
+        } finally {
+            locks.forEach(Lock::unlock);
+        }
+    }
+
+    @Override
+    public Email replaceEmail(Email email, String expectedFolder) {
+        return onShard(userIdOf(email), v -> v.replaceEmail(email, expectedFolder));
+    }
+
+    @Override
+    public Email moveEmail(long userId, long emailId, String fromFolder, String toFolder) {
+        return onShard(userId, v -> v.moveEmail(userId, emailId, fromFolder, toFolder));
+    }
+
+    /**
+     * Add a shard, moving onto it the mailboxes the enlarged ring assigns to it while continuing to serve
+     * requests. The new shard should allocate identifiers from the range of the index it is added at. Only one
+     * shard is added at a time
+     * <p>
+     * Each shard's users are listed once and bucketed by stripe. Users written to while the move is under way
+     * are added to their stripe's bucket until it has been moved, so the stripe being locked needn't be
+     * rescanned for them
+     * @param shard The new shard, which should be empty
+     */
+    public synchronized void addShard(EmailShard shard) {
+        List<EmailShard> sources = shards;
+        List<EmailShard> grown = new ArrayList<>(sources);
+        grown.add(shard);
+        ShardRing current = ring;
+        ShardRing next = new ShardRing(grown.size());
+        shards = List.copyOf(grown);
+        nextRing = next;
+        // Wait for writes begun before the move, which won't have added their users to the buckets
+        for (ReadWriteLock stripe : stripes) {
+            stripe.writeLock().lock();
+            stripe.writeLock().unlock();
+        }
+        for (EmailShard source : sources) {
+            for (long userId : source.getUserIds()) {
+                pendingUsers.get(stripeIndexOf(userId)).add(userId);
+            }
+        }
+        long start = movedUsers.sum();
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            Lock lock = stripes[stripe].writeLock();
+            lock.lock();
+            try {
+                Set<Long> users = pendingUsers.get(stripe);
+                for (long userId : users) {
+                    int from = current.shardOf(userId);
+                    int to = next.shardOf(userId);
+                    if (to != from) {
+                        move(userId, sources.get(from), grown.get(to));
+                    }
+                }
+                users.clear();
+                moved[stripe] = true;
+            } finally {
+                lock.unlock();
+            }
+        }
+        ring = next;
+        nextRing = null;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            Lock lock = stripes[stripe].writeLock();
+            lock.lock();
+            moved[stripe] = false;
+            lock.unlock();
+        }
+        log.info("Added shard {}, moving {} mailboxes", grown.size() - 1, movedUsers.sum() - start);
+    }
+
+    private void move(long userId, EmailShard source, EmailShard target) {
+        List<Email> emails = source.exportMailbox(userId);
+        if (!emails.isEmpty()) {
+            target.importMailbox(emails);
+        }
+        source.removeMailbox(userId);
+        movedUsers.increment();
+    }
+
+    @Override
+    public void close() throws IOException {
+        batchExecutor.shutdown();
+        for (EmailShard shard : shards) {
+            if (shard instanceof Closeable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    /**
+     * Called holding the user's stripe lock before writing to their mailbox, so that a user first written to
+     * while shards are added is considered for moving with the rest of their stripe
+     */
+    private void recordPending(long userId) {
+        int stripe = stripeIndexOf(userId);
+        if (nextRing != null && !moved[stripe]) {
+            pendingUsers.get(stripe).add(userId);
+        }
+    }
+
+    private <T> T onShard(long userId, Function<EmailShard, T> operation) {
+        Lock lock = stripeOf(userId).readLock();
+        lock.lock();
+        try {
+            return operation.apply(shardOf(userId, shards));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called holding the user's stripe lock, with the shards read beforehand so that they include any being added
+     */
+    private EmailShard shardOf(long userId, List<EmailShard> shards) {
+        return shards.get(ringOf(userId).shardOf(userId));
+    }
+
+    /**
+     * Called holding the user's stripe lock
+     */
+    private ShardRing ringOf(long userId) {
+        ShardRing next = nextRing;
+        return next != null && moved[stripeIndexOf(userId)] ? next : ring;
+    }
+
+    private ReadWriteLock stripeOf(long userId) {
+        return stripes[stripeIndexOf(userId)];
+    }
+
+    private static int stripeIndexOf(long userId) {
+        return (int) (userId & (STRIPES - 1));
+    }
+
+    /**
+     * Check the email names its user, which is needed to find its shard before the shard can validate it
+     */
+    private static long userIdOf(Email email) {
+        if (email == null) {
+            throw new NullPointerException("No email supplied");
+        }
+        if (email.getUserId() == null) {
+            throw new IllegalArgumentException("No user supplied with email");
+        }
+        return email.getUserId();
+    }
+}
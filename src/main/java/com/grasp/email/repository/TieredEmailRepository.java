@@ -0,0 +1,310 @@
+package com.grasp.email.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.grasp.email.model.Email;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * {@link EmailRepository} which caps the emails held in memory, paging the mailboxes of users who haven't been
+ * active recently out to a {@link ColdMailboxStore} on local disk and back in when they are next read or
+ * written.
+ * <p>
+ * Resident mailboxes are held in a Caffeine cache, weighed by the number of emails they hold, so that its
+ * W-TinyLFU policy keeps frequently used mailboxes in memory while one-off reads of inactive users don't
+ * displace them. A mailbox is written to disk as part of its eviction, and paged in as part of a cache load,
+ * both of which Caffeine runs atomically for the user: concurrent requests for a mailbox being paged in
+ * share a single read of its file, and a mailbox can't be read back before it has been fully written.
+ * Writes are applied under the same per-user atomicity, so none can be made to a mailbox being paged out.
+ * A mailbox holding more emails than the cap is paged in for each request and out again afterwards.
+ * <p>
+ * The disk tier only extends memory: it isn't durable and is emptied on startup. {@link LogEmailRepository}
+ * builds on this class to page mailboxes out over its durable log, which holds every email and so repopulates
+ * the tiers on startup. Without a directory nothing is paged out and mailboxes are held as in
+ * {@link InMemoryEmailRepository}. The per-folder email gauges count resident mailboxes only.
+ */
+@Slf4j
+public class TieredEmailRepository extends InMemoryEmailRepository {
+    /** The disk tier and resident mailboxes, both <code>null</code> when mailboxes aren't paged out */
+    private final ColdMailboxStore coldStore;
+    private final Cache<Long, Mailbox> mailboxes;
+    /** Mailboxes that couldn't be written to disk when evicted, held until they are next loaded */
+    private final Map<Long, List<Email>> unwritten = new ConcurrentHashMap<>();
+
+    /**
+     * @param directory The directory holding mailboxes paged out of memory
+     * @param maxResidentEmails The number of emails to hold in memory before mailboxes are paged out
+     */
+    public TieredEmailRepository(Path directory, long maxResidentEmails) throws IOException {
+        this(directory, maxResidentEmails, null);
+    }
+
+    /**
+     * @param directory The directory holding mailboxes paged out of memory
+     * @param maxResidentEmails The number of emails to hold in memory before mailboxes are paged out
+     * @param compressor Compresses message bodies held in memory, or <code>null</code> to hold them uncompressed
+     */
+    public TieredEmailRepository(Path directory, long maxResidentEmails, BodyCompressor compressor) throws IOException {
+        this(directory, maxResidentEmails, compressor, 1L);
+    }
+
+    /**
+     * @param directory The directory holding mailboxes paged out of memory, or <code>null</code> to hold every
+     *                  mailbox in memory
+     * @param maxResidentEmails The number of emails to hold in memory before mailboxes are paged out
+     * @param compressor Compresses message bodies held in memory, or <code>null</code> to hold them uncompressed
+     * @param firstId The first email identifier to allocate, so that shards allocate from separate ranges
+     */
+    public TieredEmailRepository(Path directory, long maxResidentEmails, BodyCompressor compressor, long firstId) throws IOException {
+        super(compressor, firstId);
+        if (directory == null) {
+            coldStore = null;
+            mailboxes = null;
+            return;
+        }
+        coldStore = new ColdMailboxStore(directory);
+        // Evict on the calling thread, so that writers are held back while memory is over the cap
+        mailboxes = Caffeine.newBuilder()
+                .maximumWeight(maxResidentEmails)
+                .weigher((Long userId, Mailbox mailbox) -> mailbox.size() + 1)
+                .evictionListener((Long userId, Mailbox mailbox, RemovalCause cause) -> pageOut(userId, mailbox))
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Register the cache's hit, miss, load and eviction metrics, and gauges for the emails held in memory
+     * and the mailboxes held on disk, alongside the repository's own
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        super.bindTo(registry);
+        if (mailboxes == null) {
+            return;
+        }
+        CaffeineCacheMetrics.monitor(registry, mailboxes, "mailboxes");
+        Gauge.builder("email.repository.emails.resident", this, TieredEmailRepository::getResidentWeight)
+                .description("Emails held in memory, plus one per resident mailbox")
+                .register(registry);
+        Gauge.builder("email.repository.mailboxes.cold", coldStore, ColdMailboxStore::size)
+                .description("Mailboxes paged out to disk")
+                .register(registry);
+    }
+
+    @Override
+    Mailbox getMailbox(long userId) {
+        if (mailboxes == null) {
+            return super.getMailbox(userId);
+        }
+        Mailbox mailbox = mailboxes.getIfPresent(userId);
+        // A mailbox is written to disk before it is removed from the cache, so users in neither have no mailbox
+        if (mailbox != null || (!coldStore.contains(userId) && !unwritten.containsKey(userId))) {
+            return mailbox;
+        }
+        return mailboxes.get(userId, this::pageIn);
+    }
+
+    /**
+     * Apply the write while holding the cache's lock for the user, so that the mailbox can't be paged out
+     * part way through, paging it in first if needed. The cache re-weighs the mailbox afterwards, paging out
+     * others if the write has taken it over its cap
+     */
+    @Override
+    <T> T writeMailbox(long userId, boolean create, Function<Mailbox, T> operation) {
+        if (mailboxes == null) {
+            return super.writeMailbox(userId, create, operation);
+        }
+        Object[] result = new Object[1];
+        RuntimeException[] failure = new RuntimeException[1];
+        mailboxes.asMap().compute(userId, (k, mailbox) -> {
+            if (mailbox == null) {
+                mailbox = pageIn(k);
+            }
+            if (mailbox == null && create) {
+                mailbox = newMailbox(k);
+            }
+            if (mailbox != null) {
+                // Keep the mailbox even if the write fails, as it may have just been paged in
+                try {
+                    result[0] = operation.apply(mailbox);
+                } catch (RuntimeException e) {
+                    failure[0] = e;
+                }
+            }
+            return mailbox;
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        @SuppressWarnings("unchecked")
+        T written = (T) result[0];
+        return written;
+    }
+
+    @Override
+    Collection<Long> getUserIds() {
+        if (mailboxes == null) {
+            return super.getUserIds();
+        }
+        Set<Long> userIds = new HashSet<>(mailboxes.asMap().keySet());
+        userIds.addAll(coldStore.getUserIds());
+        userIds.addAll(unwritten.keySet());
+        return userIds;
+    }
+
+    /**
+     * Remove the mailbox whether it is resident or paged out
+     */
+    @Override
+    void removeMailbox(long userId) {
+        if (mailboxes == null) {
+            super.removeMailbox(userId);
+            return;
+        }
+        Mailbox mailbox = mailboxes.asMap().remove(userId);
+        if (mailbox != null) {
+            mailbox.retire();
+        }
+        unwritten.remove(userId);
+        try {
+            coldStore.delete(userId);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to remove mailbox of user " + userId, e);
+        }
+    }
+
+    @Override
+    Collection<Mailbox> residentMailboxes() {
+        return mailboxes == null ? super.residentMailboxes() : mailboxes.asMap().values();
+    }
+
+    @Override
+    long getUserCount() {
+        return mailboxes == null ? super.getUserCount() : mailboxes.estimatedSize() + coldStore.size() + unwritten.size();
+    }
+
+    /**
+     * Pass every email to the action, reading paged out mailboxes from disk without paging them in. Each
+     * mailbox is read while holding the cache's lock for the user, so that it can't be paged in or out part
+     * way through
+     */
+    @Override
+    void forEachEmail(Consumer<Email> action) {
+        if (mailboxes == null) {
+            super.forEachEmail(action);
+            return;
+        }
+        for (Long userId : getUserIds()) {
+            mailboxes.asMap().compute(userId, (k, mailbox) -> {
+                if (mailbox != null) {
+                    mailbox.forEach(action);
+                    return mailbox;
+                }
+                List<Email> emails = unwritten.get(k);
+                if (emails == null) {
+                    try {
+                        emails = coldStore.read(k);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to read mailbox of user " + k, e);
+                    }
+                }
+                if (emails != null) {
+                    emails.forEach(action);
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * @return The emails held in memory, plus one for each resident mailbox
+     */
+    long getResidentWeight() {
+        if (mailboxes == null) {
+            return 0;
+        }
+        return mailboxes.policy().eviction().orElseThrow().weightedSize().orElse(0);
+    }
+
+    /**
+     * @return The number of mailboxes paged out to disk
+     */
+    int getColdMailboxCount() {
+        return coldStore == null ? 0 : coldStore.size();
+    }
+
+    /**
+     * Page every resident mailbox out to disk
+     */
+    void pageOutAll() {
+        if (mailboxes == null) {
+            return;
+        }
+        for (Long userId : mailboxes.asMap().keySet()) {
+            mailboxes.asMap().computeIfPresent(userId, (k, v) -> {
+                pageOut(k, v);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Run any pending evictions
+     */
+    void cleanUp() {
+        if (mailboxes != null) {
+            mailboxes.cleanUp();
+        }
+    }
+
+    /**
+     * Called by the cache, atomically for the user, when evicting their mailbox
+     */
+    private void pageOut(long userId, Mailbox mailbox) {
+        List<Email> emails = mailbox.retire();
+        try {
+            coldStore.write(userId, emails);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to page out mailbox of user {}, holding it in memory", userId, e);
+            unwritten.put(userId, emails);
+        }
+    }
+
+    /**
+     * Called by the cache, atomically for the user, when their mailbox isn't resident
+     * @return The user's mailbox read back from disk, or <code>null</code> if it isn't held there
+     */
+    private Mailbox pageIn(long userId) {
+        List<Email> emails = unwritten.remove(userId);
+        if (emails == null) {
+            try {
+                emails = coldStore.take(userId);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to page in mailbox of user " + userId, e);
+            }
+        }
+        if (emails == null) {
+            return null;
+        }
+        Mailbox mailbox = newMailbox(userId);
+        emails.forEach(mailbox::restore);
+        return mailbox;
+    }
+}
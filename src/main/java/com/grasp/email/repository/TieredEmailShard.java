@@ -0,0 +1,46 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.Email;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link TieredEmailRepository} serving as a shard, whose mailboxes can be moved to other shards whether they
+ * are resident or paged out
+ */
+public class TieredEmailShard extends TieredEmailRepository implements EmailShard {
+
+    /**
+     * @param directory The directory holding mailboxes paged out of memory, or <code>null</code> to hold every
+     *                  mailbox in memory
+     * @param maxResidentEmails The number of emails to hold in memory before mailboxes are paged out
+     * @param compressor Compresses message bodies held in memory, or <code>null</code> to hold them uncompressed
+     * @param firstId The first email identifier to allocate, so that shards allocate from separate ranges
+     */
+    public TieredEmailShard(Path directory, long maxResidentEmails, BodyCompressor compressor, long firstId) throws IOException {
+        super(directory, maxResidentEmails, compressor, firstId);
+    }
+
+    @Override
+    public Collection<Long> getUserIds() {
+        return super.getUserIds();
+    }
+
+    @Override
+    public List<Email> exportMailbox(long userId) {
+        return super.exportMailbox(userId);
+    }
+
+    @Override
+    public void importMailbox(List<Email> emails) {
+        super.importMailbox(emails);
+    }
+
+    @Override
+    public void removeMailbox(long userId) {
+        super.removeMailbox(userId);
+    }
+}
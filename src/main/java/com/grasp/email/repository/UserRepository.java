@@ -0,0 +1,11 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.User;
+import org.springframework.stereotype.Component;
+
+@Component
+public interface UserRepository {
+    public User getUserForAddress(String address);
+
+    public User saveUser(User user);
+}
@@ -0,0 +1,44 @@
+package com.grasp.email.security;
+
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+
+import java.util.function.Supplier;
+
+/**
+ * Grants access to a user's endpoints only to that user, as identified by the <code>userId</code> path
+ * variable, or to administrators. Decided from the caller's verified token and the matched path alone,
+ * without loading the user
+ */
+public class MailboxOwnerAuthorizationManager implements AuthorizationManager<RequestAuthorizationContext> {
+    private static final String ADMIN = "ROLE_ADMIN";
+
+    @Override
+    public AuthorizationDecision check(Supplier<Authentication> authentication, RequestAuthorizationContext context) {
+        Authentication caller = authentication.get();
+        if (caller == null || !caller.isAuthenticated() || caller instanceof AnonymousAuthenticationToken) {
+            return new AuthorizationDecision(false);
+        }
+        if (isAdmin(caller)) {
+            return new AuthorizationDecision(true);
+        }
+        String userId = context.getVariables().get("userId");
+        return new AuthorizationDecision(caller instanceof TokenAuthentication token && userId != null && userId.equals(Long.toString(token.getUserId())));
+    }
+
+    private static boolean isAdmin(Authentication caller) {
+        if (caller instanceof TokenAuthentication token) {
+            return token.isAdmin();
+        }
+        for (GrantedAuthority authority : caller.getAuthorities()) {
+            if (ADMIN.equals(authority.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,63 @@
+package com.grasp.email.security;
+
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The caller identified by a verified access token: the user it was issued to, whether they are an
+ * administrator, and when the token expires. Immutable once verified, so one instance is shared by every
+ * request presenting the same token
+ */
+public class TokenAuthentication extends AbstractAuthenticationToken {
+    private static final List<GrantedAuthority> USER = AuthorityUtils.createAuthorityList("ROLE_USER");
+    private static final List<GrantedAuthority> ADMIN = AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN");
+
+    private final long userId;
+    private final boolean admin;
+    private final Instant expiresAt;
+
+    public TokenAuthentication(long userId, boolean admin, Instant expiresAt) {
+        super(admin ? ADMIN : USER);
+        this.userId = userId;
+        this.admin = admin;
+        this.expiresAt = expiresAt;
+        super.setAuthenticated(true);
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public boolean isAdmin() {
+        return admin;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * @return The user identifier
+     */
+    @Override
+    public Object getPrincipal() {
+        return userId;
+    }
+
+    /**
+     * @return Nothing, as the token itself isn't kept once verified
+     */
+    @Override
+    public Object getCredentials() {
+        return null;
+    }
+
+    @Override
+    public void setAuthenticated(boolean authenticated) {
+        throw new UnsupportedOperationException("Token authentications can't be changed once verified");
+    }
+}
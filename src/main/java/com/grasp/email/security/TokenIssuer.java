@@ -0,0 +1,31 @@
+package com.grasp.email.security;
+
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Issues a token from the command line, for operators and for services that hold the secret but not this
+ * code. The secret is read from the <code>EMAIL_SECURITY_TOKEN_SECRET</code> environment variable, as it is
+ * configured for the service, rather than from the arguments, which other users of the machine can see.
+ * <p>
+ * Arguments: the user identifier, <code>user</code> or <code>admin</code>, and optionally the token's lifetime
+ * as an ISO-8601 duration, by default <code>PT1H</code>
+ */
+public final class TokenIssuer {
+    static final String SECRET_VARIABLE = "EMAIL_SECURITY_TOKEN_SECRET";
+
+    private TokenIssuer() {
+    }
+
+    public static void main(String[] args) {
+        String secret = System.getenv(SECRET_VARIABLE);
+        if (args.length < 2 || args.length > 3 || !(args[1].equals("user") || args[1].equals("admin"))
+                || secret == null || secret.isBlank()) {
+            System.err.println("Usage: " + SECRET_VARIABLE + "=<secret> TokenIssuer <userId> user|admin [lifetime]");
+            System.exit(2);
+        }
+        Duration lifetime = args.length == 3 ? Duration.parse(args[2]) : Duration.ofHours(1);
+        TokenService tokens = new TokenService(Base64.getDecoder().decode(secret), 0);
+        System.out.println(tokens.issue(Long.parseLong(args[0]), args[1].equals("admin"), lifetime));
+    }
+}
@@ -0,0 +1,172 @@
+package com.grasp.email.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues and verifies stateless access tokens signed with HMAC-SHA256. A token is
+ * <code>payload.signature</code>, both base64url encoded, where the payload is
+ * <code>userId.expiry.role</code> with the expiry in seconds since the epoch and the role <code>user</code>
+ * or <code>admin</code>. Any service holding the secret can issue tokens, so none are stored.
+ * <p>
+ * Verified tokens are held in a bounded Caffeine cache until they expire, so a client making many requests
+ * with one token has its signature checked once rather than on every request. Tokens failing verification
+ * aren't cached, so garbage can't displace the tokens of active clients.
+ */
+public class TokenService implements MeterBinder {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final Clock clock;
+    private final Cache<String, TokenAuthentication> verified;
+    /**
+     * Macs aren't thread safe and are costly to create, so they are pooled for reuse. The pool is shared
+     * rather than per thread, so that requests served on virtual threads reuse them too
+     */
+    private final Queue<Mac> macs = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param secret The key tokens are signed with, of at least 32 bytes
+     * @param cacheSize The number of verified tokens to hold, or 0 to verify every token presented
+     */
+    public TokenService(byte[] secret, long cacheSize) {
+        this(secret, cacheSize, Clock.systemUTC());
+    }
+
+    /**
+     * @param secret The key tokens are signed with, of at least 32 bytes
+     * @param cacheSize The number of verified tokens to hold, or 0 to verify every token presented
+     * @param clock The clock tokens expire by
+     */
+    public TokenService(byte[] secret, long cacheSize, Clock clock) {
+        if (secret.length < 32) {
+            throw new IllegalArgumentException("Token secret must be at least 32 bytes");
+        }
+        key = new SecretKeySpec(secret, ALGORITHM);
+        this.clock = clock;
+        // Fail on startup rather than on the first request if the key is unusable
+        macs.add(newMac());
+        verified = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfter(new Expiry<String, TokenAuthentication>() {
+                    @Override
+                    public long expireAfterCreate(String token, TokenAuthentication authentication, long currentTime) {
+                        // Saturates rather than overflowing for distant expiries
+                        return TimeUnit.SECONDS.toNanos(Math.max(authentication.getExpiresAt().getEpochSecond() - clock.instant().getEpochSecond(), 0));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String token, TokenAuthentication authentication, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String token, TokenAuthentication authentication, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Register the hit, miss and eviction metrics of the verified token cache
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, verified, "tokens");
+    }
+
+    /**
+     * @param userId The user the token identifies
+     * @param admin Whether the token grants access to every user's mailbox
+     * @param lifetime How long the token is valid for
+     * @return A signed token
+     */
+    public String issue(long userId, boolean admin, Duration lifetime) {
+        long expiry = clock.instant().plus(lifetime).getEpochSecond();
+        String payload = ENCODER.encodeToString((userId + "." + expiry + "." + (admin ? "admin" : "user")).getBytes(StandardCharsets.US_ASCII));
+        return payload + "." + ENCODER.encodeToString(sign(payload));
+    }
+
+    /**
+     * @param token The token presented
+     * @return The caller the token identifies, or <code>null</code> if the token is malformed, forged or expired
+     */
+    public TokenAuthentication verify(String token) {
+        TokenAuthentication authentication = verified.getIfPresent(token);
+        if (authentication == null) {
+            authentication = parse(token);
+            if (authentication == null || !authentication.getExpiresAt().isAfter(clock.instant())) {
+                return null;
+            }
+            verified.put(token, authentication);
+            return authentication;
+        }
+        // The cache expires entries by its own ticker, so the expiry is checked against the clock too
+        return authentication.getExpiresAt().isAfter(clock.instant()) ? authentication : null;
+    }
+
+    private TokenAuthentication parse(String token) {
+        int separator = token.indexOf('.');
+        if (separator < 0) {
+            return null;
+        }
+        String payload = token.substring(0, separator);
+        try {
+            if (!MessageDigest.isEqual(sign(payload), DECODER.decode(token.substring(separator + 1)))) {
+                return null;
+            }
+            String[] fields = new String(DECODER.decode(payload), StandardCharsets.US_ASCII).split("\\.");
+            if (fields.length != 3 || !("user".equals(fields[2]) || "admin".equals(fields[2]))) {
+                return null;
+            }
+            return new TokenAuthentication(Long.parseLong(fields[0]), "admin".equals(fields[2]), Instant.ofEpochSecond(Long.parseLong(fields[1])));
+        } catch (IllegalArgumentException e) {
+            // Includes NumberFormatException
+            return null;
+        }
+    }
+
+    private byte[] sign(String payload) {
+        Mac mac = macs.poll();
+        if (mac == null) {
+            mac = newMac();
+        }
+        try {
+            return mac.doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+        } finally {
+            // At most one per concurrent signature is ever created, so the pool needs no bound
+            macs.offer(mac);
+        }
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to create " + ALGORITHM + " signer", e);
+        }
+    }
+}
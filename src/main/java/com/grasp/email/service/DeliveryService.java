@@ -0,0 +1,207 @@
+package com.grasp.email.service;
+
+import com.grasp.email.exception.ServiceUnavailableException;
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+import com.grasp.email.model.User;
+import com.grasp.email.repository.EmailRepository;
+import com.grasp.email.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Delivers sent mail into the inboxes of local recipients. Recipients are split into batches which
+ * are written by a bounded pool of workers, so sending never holds the request thread for longer
+ * than it takes to queue the batches
+ */
+@Slf4j
+@Service
+public class DeliveryService {
+    private final EmailRepository emailRepository;
+    private final UserRepository userRepository;
+    private final int batchSize;
+    private final int queueCapacity;
+    /** Room in the queue, reserved by each email for all of its batches at once and returned as each is delivered */
+    private final Semaphore slots;
+    private final ThreadPoolExecutor executor;
+    private final Timer latency;
+    private final Counter delivered;
+    private final Counter undeliverable;
+
+    @Autowired
+    public DeliveryService(EmailRepository emailRepository,
+                           UserRepository userRepository,
+                           MeterRegistry registry,
+                           @Value("${email.delivery.threads:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}") int threads,
+                           @Value("${email.delivery.queue-capacity:10000}") int queueCapacity,
+                           @Value("${email.delivery.batch-size:500}") int batchSize) {
+        this.emailRepository = emailRepository;
+        this.userRepository = userRepository;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.slots = new Semaphore(queueCapacity);
+
+        AtomicInteger workers = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "delivery-" + workers.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("email.delivery.queue.depth", this, DeliveryService::getQueueDepth)
+                .description("Recipient batches waiting to be delivered")
+                .register(registry);
+        this.latency = Timer.builder("email.delivery.latency")
+                .description("Time from queueing a recipient batch to it landing in the recipients' inboxes")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.delivered = Counter.builder("email.delivery.delivered")
+                .description("Inbox copies delivered to local recipients")
+                .register(registry);
+        this.undeliverable = Counter.builder("email.delivery.undeliverable")
+                .description("Recipient addresses that are not local users")
+                .register(registry);
+    }
+
+    /**
+     * Queue the email for delivery to the inboxes of its local recipients, including carbon copies and blind
+     * carbon copies. Blind carbon copies are removed from every delivered copy
+     * @param email The sent email
+     * @throws ServiceUnavailableException if the delivery queue is full
+     */
+    public void deliver(Email email) {
+        List<String> addresses = new ArrayList<>(collectAddresses(email));
+        if (addresses.isEmpty()) {
+            return;
+        }
+
+        Email template = new Email(null, null, Email.INBOX, email.getSender(),
+                copyOf(email.getRecipients()), copyOf(email.getCarbonCopies()), null,
+                email.getSubject(), email.getMessage(), null);
+        List<Runnable> batches = new ArrayList<>(addresses.size() / batchSize + 1);
+        for (int from = 0; from < addresses.size(); from += batchSize) {
+            List<String> batch = addresses.subList(from, Math.min(from + batchSize, addresses.size()));
+            long queued = System.nanoTime();
+            batches.add(() -> {
+                try {
+                    deliverBatch(template, batch, queued);
+                } finally {
+                    slots.release();
+                }
+            });
+        }
+
+        // Reserved atomically for every batch, so an email is either queued whole or not at all. Batches hold
+        // their slot until delivered, so the queue never holds more than its capacity and can't reject them
+        if (!slots.tryAcquire(batches.size())) {
+            throw new ServiceUnavailableException();
+        }
+        int executed = 0;
+        try {
+            for (Runnable batch : batches) {
+                executor.execute(batch);
+                executed++;
+            }
+        } catch (RejectedExecutionException e) {
+            // Only once shut down, which rejects the first batch as well as the rest
+            slots.release(batches.size() - executed);
+            log.warn("Delivery stopped, dropped {} batches of email {} for user {}", batches.size() - executed, email.getId(), email.getUserId());
+            throw new ServiceUnavailableException();
+        }
+    }
+
+    /**
+     * @return The number of recipient batches waiting to be delivered
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return The number of recipient batches that can wait to be delivered
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    private void deliverBatch(Email template, List<String> addresses, long queued) {
+        List<Email> copies = new ArrayList<>(addresses.size());
+        for (String address : addresses) {
+            User user = userRepository.getUserForAddress(address);
+            if (user == null) {
+                undeliverable.increment();
+                continue;
+            }
+            copies.add(new Email(null, user.getId(), Email.INBOX, template.getSender(),
+                    template.getRecipients(), template.getCarbonCopies(), null,
+                    template.getSubject(), template.getMessage(), null));
+        }
+        if (!copies.isEmpty()) {
+            try {
+                emailRepository.saveAll(copies);
+                delivered.increment(copies.size());
+            } catch (RuntimeException e) {
+                log.error("Failed to deliver email to {} users", copies.size(), e);
+            }
+        }
+        latency.record(System.nanoTime() - queued, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Distinct recipient addresses across the recipient, carbon copy and blind carbon copy lists
+     */
+    private static Set<String> collectAddresses(Email email) {
+        Set<String> addresses = new LinkedHashSet<>();
+        addAddresses(addresses, email.getRecipients());
+        addAddresses(addresses, email.getCarbonCopies());
+        addAddresses(addresses, email.getBlindCarbonCopies());
+        return addresses;
+    }
+
+    private static void addAddresses(Set<String> addresses, Collection<EmailAddress> emailAddresses) {
+        if (emailAddresses == null) {
+            return;
+        }
+        for (EmailAddress emailAddress : emailAddresses) {
+            if (emailAddress != null && emailAddress.getAddress() != null) {
+                addresses.add(emailAddress.getAddress().toLowerCase(Locale.ROOT));
+            }
+        }
+    }
+
+    private static List<EmailAddress> copyOf(List<EmailAddress> addresses) {
+        return addresses == null ? null : Collections.unmodifiableList(new ArrayList<>(addresses));
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("{} delivery batches were still queued at shutdown", executor.getQueue().size());
+        }
+    }
+}
@@ -1,44 +1,217 @@
 package com.grasp.email.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.grasp.email.exception.BadRequestException;
+import com.grasp.email.exception.ConflictException;
+import com.grasp.email.exception.ResourceNotFoundException;
+import com.grasp.email.exception.ServiceUnavailableException;
+import com.grasp.email.model.BatchItemResult;
+import com.grasp.email.model.Changes;
 import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+import com.grasp.email.model.EmailSummary;
+import com.grasp.email.model.FolderVersion;
+import com.grasp.email.model.Page;
 import com.grasp.email.repository.EmailRepository;
 import lombok.NonNull;
-import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
-import java.math.BigInteger;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
-@Slf4j
 @Service
 public class EmailService {
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int MAX_BATCH_SIZE = 1000;
+    static final int EXPORT_PAGE_SIZE = 500;
+
     @Autowired
     private EmailRepository repository;
 
+    @Autowired
+    private DeliveryService deliveryService;
+
+    @Autowired
+    private SendAuditor sendAuditor;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private WriteAdmission admission;
+
+    /**
+     * Get the current version of the user's inbox, which changes whenever the inbox does
+     * @param userId The user identifier
+     * @return The inbox version
+     */
+    public FolderVersion getInboxVersion(long userId) {
+        return repository.getFolderVersionForUserId(userId, Email.INBOX);
+    }
+
     /**
      * Retrieve all emails for the user's inbox from the mail repository
      * @param userId The user identifier
      * @return A list of all emails
      */
-    public List<Email> getInbox(@NonNull BigInteger userId) {
+    public List<Email> getInbox(long userId) {
         return repository.getInboxForUserId(userId);
     }
 
-    public Email get(@NonNull BigInteger userId, @NonNull BigInteger emailId) {
+    /**
+     * Retrieve a page of emails from the user's inbox, newest first
+     * @param userId The user identifier
+     * @param limit The maximum number of emails to return
+     * @param cursor The cursor returned with the previous page, or <code>null</code> for the first page
+     * @return The page of emails
+     */
+    public Page<Email> getInbox(long userId, int limit, String cursor) {
+        validatePageSize(limit);
+        try {
+            return repository.getInboxForUserId(userId, limit, cursor);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException();
+        }
+    }
+
+    /**
+     * Retrieve summaries of all emails in the user's inbox, without their message bodies
+     * @param userId The user identifier
+     * @return A list of all email summaries
+     */
+    public List<EmailSummary> getInboxSummaries(long userId) {
+        return repository.getInboxSummariesForUserId(userId);
+    }
+
+    /**
+     * Retrieve a page of summaries from the user's inbox, newest first, without their message bodies
+     * @param userId The user identifier
+     * @param limit The maximum number of summaries to return
+     * @param cursor The cursor returned with the previous page, or <code>null</code> for the first page
+     * @return The page of email summaries
+     */
+    public Page<EmailSummary> getInboxSummaries(long userId, int limit, String cursor) {
+        validatePageSize(limit);
+        try {
+            return repository.getInboxSummariesForUserId(userId, limit, cursor);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException();
+        }
+    }
+
+    /**
+     * Retrieve the latest change to each of the user's emails changed since the client last synchronised
+     * @param userId The user identifier
+     * @param since The token returned with the previous changes, or <code>null</code> if the client holds nothing
+     * @return The changes, or a resync if the token is too old for the changes to be known
+     */
+    public Changes getChanges(long userId, String since) {
+        try {
+            return repository.getChangesForUserId(userId, since);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException();
+        }
+    }
+
+    /**
+     * Search the user's emails by subject, message and addresses, best matches first
+     * @param userId The user identifier
+     * @param query The query. Every term must match
+     * @param folder The folder to search, or <code>null</code> to search every folder
+     * @param limit The maximum number of summaries to return
+     * @param cursor The cursor returned with the previous page, or <code>null</code> for the first page
+     * @return The page of matching email summaries
+     */
+    public Page<EmailSummary> search(long userId, String query, String folder, int limit, String cursor) {
+        validatePageSize(limit);
+        if (query == null || query.isBlank()) {
+            throw new BadRequestException();
+        }
+        try {
+            return repository.searchForUserId(userId, query, folder, limit, cursor);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException();
+        }
+    }
+
+    /**
+     * Write every email in the folder to the stream as newline-delimited JSON, newest first. Emails are read
+     * from the repository a page at a time and each page is flushed as soon as it is written, so memory use
+     * doesn't grow with the folder and the mailbox is never locked while writing
+     * @param userId The user identifier
+     * @param folder The folder name
+     * @param out The stream to write to, which is not closed
+     */
+    public void exportFolder(long userId, String folder, OutputStream out) throws IOException {
+        ObjectWriter writer = objectMapper.writerFor(Email.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        String cursor = null;
+        do {
+            Page<Email> page = repository.getFolderForUserId(userId, folder, EXPORT_PAGE_SIZE, cursor);
+            for (Email email : page.getItems()) {
+                writer.writeValue(generator, email);
+                generator.writeRaw('\n');
+            }
+            generator.flush();
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+    }
+
+    private void validatePageSize(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new BadRequestException();
+        }
+    }
+
+    public Email get(long userId, long emailId) {
         return repository.getEmailForUserIdAndEmailId(userId, emailId);
     }
 
-    public Email createDraft(@NonNull BigInteger userId, @NonNull Email email) {
+    public Email createDraft(long userId, @NonNull Email email) {
+        admission.admitDrafts(userId, List.of(email));
         email.setUserId(userId);
         email.setFolder(Email.DRAFTS);
         return repository.saveEmail(email);
     }
 
-    public void updateDraft(@NonNull BigInteger userId, @NonNull Email email) {
+    /**
+     * Save a batch of emails in the drafts folder, allocating each a unique identifier. The batch is written
+     * with one pass over the user's mailbox
+     * @param userId The user identifier
+     * @param emails The draft emails
+     * @return The result for each email, in the order given
+     */
+    public List<BatchItemResult> createDrafts(long userId, List<Email> emails) {
+        validateBatchSize(emails);
+        admission.admitDrafts(userId, emails);
+        BatchItemResult[] results = new BatchItemResult[emails.size()];
+        List<Email> accepted = acceptBatch(userId, emails, results);
+        accepted.forEach(v -> v.setFolder(Email.DRAFTS));
+        repository.saveAll(accepted);
+        fillResults(emails, results, HttpStatus.CREATED);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Replace a draft email. The update is rejected if the draft has since been sent, or if the email carries
+     * a version and the draft has been modified since that version
+     * @param userId The user identifier
+     * @param email The updated draft email
+     */
+    public void updateDraft(long userId, @NonNull Email email) {
         if (email.getId() == null) {
             throw new NullPointerException("Email identifier cannot be null");
         }
@@ -46,16 +219,175 @@ public class EmailService {
             throw new RuntimeException("Email folder must be " + Email.DRAFTS);
         }
 
-        repository.saveEmail(email);
+        admission.admitDrafts(userId, List.of(email));
+        email.setUserId(userId);
+        Email updated;
+        try {
+            updated = repository.replaceEmail(email, Email.DRAFTS);
+        } catch (IllegalStateException e) {
+            throw new ConflictException();
+        }
+        if (updated == null) {
+            throw new ResourceNotFoundException();
+        }
     }
 
-    public Email send(BigInteger userId, Email email) {
+    /**
+     * Send the email, queueing it for delivery to the inboxes of its local recipients before moving it to the
+     * sent folder. Delivery happens asynchronously, so this returns before recipients receive the email.
+     * Recipients listed more than once are collapsed to their first listing, in the order recipients, carbon
+     * copies, blind carbon copies. An email with an identifier sends that draft, and is rejected if the draft
+     * has since been sent or, when the email carries a version, modified
+     * @param userId The user identifier
+     * @param email The email
+     * @return The sent email
+     */
+    public Email send(long userId, Email email) {
+        admission.admitSends(userId, List.of(email));
         email.setUserId(userId);
         email.setFolder(Email.OUTBOX);
-        repository.saveEmail(email);
-        log.info("Sending email {}", email);
-        email.setFolder(Email.SENT);
-        repository.saveEmail(email);
-        return email;
+        collapseRecipients(email);
+        if (email.getId() == null) {
+            repository.saveEmail(email);
+        } else {
+            try {
+                if (repository.replaceEmail(email, Email.DRAFTS) == null) {
+                    throw new ResourceNotFoundException();
+                }
+            } catch (IllegalStateException e) {
+                throw new ConflictException();
+            }
+        }
+        deliveryService.deliver(email);
+        sendAuditor.sent(email);
+        Email sent = repository.moveEmail(userId, email.getId(), Email.OUTBOX, Email.SENT);
+        if (sent == null) {
+            throw new ConflictException();
+        }
+        return sent;
+    }
+
+    /**
+     * Send a batch of emails as {@link #send} would, saving the new emails to the outbox in one pass and moving
+     * each draft there, queueing each email for delivery, and then moving each queued email from the outbox to the sent folder. Emails
+     * that can't be queued for delivery are left in the outbox, and an email moved or deleted from the outbox
+     * while the batch was delivered is reported as a conflict rather than written back
+     * @param userId The user identifier
+     * @param emails The emails
+     * @return The result for each email, in the order given
+     */
+    public List<BatchItemResult> sendAll(long userId, List<Email> emails) {
+        validateBatchSize(emails);
+        admission.admitSends(userId, emails);
+        BatchItemResult[] results = new BatchItemResult[emails.size()];
+        boolean[] created = new boolean[emails.size()];
+        for (int i = 0; i < created.length; i++) {
+            created[i] = emails.get(i) != null && emails.get(i).getId() == null;
+        }
+        List<Email> accepted = acceptBatch(userId, emails, results);
+        List<Email> unsaved = new ArrayList<>(accepted.size());
+        for (int i = 0; i < results.length; i++) {
+            Email email = emails.get(i);
+            if (results[i] != null) {
+                continue;
+            }
+            email.setFolder(Email.OUTBOX);
+            collapseRecipients(email);
+            if (email.getId() == null) {
+                unsaved.add(email);
+                continue;
+            }
+            try {
+                if (repository.replaceEmail(email, Email.DRAFTS) == null) {
+                    results[i] = BatchItemResult.rejected(HttpStatus.NOT_FOUND.value(), "No such draft");
+                }
+            } catch (IllegalStateException e) {
+                results[i] = BatchItemResult.rejected(HttpStatus.CONFLICT.value(), "Draft was sent or modified");
+            }
+        }
+        if (!unsaved.isEmpty()) {
+            repository.saveAll(unsaved);
+        }
+
+        for (int i = 0; i < results.length; i++) {
+            Email email = emails.get(i);
+            if (results[i] != null) {
+                continue;
+            }
+            try {
+                deliveryService.deliver(email);
+                sendAuditor.sent(email);
+            } catch (ServiceUnavailableException e) {
+                results[i] = BatchItemResult.rejected(HttpStatus.SERVICE_UNAVAILABLE.value(), "Delivery queue is full");
+            }
+        }
+
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != null) {
+                continue;
+            }
+            Email sent = repository.moveEmail(userId, emails.get(i).getId(), Email.OUTBOX, Email.SENT);
+            results[i] = sent == null
+                    ? BatchItemResult.rejected(HttpStatus.CONFLICT.value(), "Email left the outbox before it was sent")
+                    : BatchItemResult.stored((created[i] ? HttpStatus.CREATED : HttpStatus.OK).value(), sent);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Remove repeated addresses from the email's recipient lists, comparing addresses without regard to case
+     * and keeping each where it is first listed, so recipients are neither stored nor delivered to twice. An
+     * address in both the recipients and blind carbon copies is kept as a recipient, so stays visible
+     */
+    private static void collapseRecipients(Email email) {
+        Set<String> seen = new HashSet<>();
+        email.setRecipients(distinct(email.getRecipients(), seen));
+        email.setCarbonCopies(distinct(email.getCarbonCopies(), seen));
+        email.setBlindCarbonCopies(distinct(email.getBlindCarbonCopies(), seen));
+    }
+
+    private static List<EmailAddress> distinct(List<EmailAddress> addresses, Set<String> seen) {
+        if (addresses == null) {
+            return null;
+        }
+        List<EmailAddress> distinct = new ArrayList<>(addresses.size());
+        for (EmailAddress address : addresses) {
+            if (address == null || address.getAddress() == null || seen.add(address.getAddress().toLowerCase(Locale.ROOT))) {
+                distinct.add(address);
+            }
+        }
+        return distinct.size() == addresses.size() ? addresses : distinct;
+    }
+
+    private static void validateBatchSize(List<Email> emails) {
+        if (emails == null || emails.isEmpty() || emails.size() > MAX_BATCH_SIZE) {
+            throw new BadRequestException();
+        }
+    }
+
+    /**
+     * Assign the user to each email in the batch, rejecting any missing emails
+     * @return The accepted emails
+     */
+    private static List<Email> acceptBatch(long userId, List<Email> emails, BatchItemResult[] results) {
+        List<Email> accepted = new ArrayList<>(emails.size());
+        for (int i = 0; i < results.length; i++) {
+            Email email = emails.get(i);
+            if (email == null) {
+                results[i] = BatchItemResult.rejected(HttpStatus.BAD_REQUEST.value(), "No email supplied");
+                continue;
+            }
+            email.setUserId(userId);
+            accepted.add(email);
+        }
+        return accepted;
+    }
+
+    private static void fillResults(List<Email> emails, BatchItemResult[] results, HttpStatus status) {
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                results[i] = BatchItemResult.stored(status.value(), emails.get(i));
+            }
+        }
     }
 }
@@ -0,0 +1,81 @@
+package com.grasp.email.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-user token bucket rate limiter, allowing each user <code>rate</code> permits a second on average and
+ * bursts of up to <code>burst</code> permits. Implemented as the generic cell rate algorithm, which is
+ * equivalent to a token bucket but keeps a single number per user: the time at which their bucket will be
+ * full again. Acquiring permits advances that time with a compare and set, so callers never lock or wait on
+ * each other, even for the same user.
+ * <p>
+ * Buckets are held in a bounded Caffeine cache and expire once idle for long enough to have refilled, so an
+ * expired bucket is indistinguishable from a new one
+ */
+public class RateLimiter {
+    private final long intervalNanos;
+    private final int burst;
+    private final long burstNanos;
+    private final LongSupplier nanoTime;
+    /** The time each user's bucket will be full again, in {@link #nanoTime} */
+    private final Cache<Long, AtomicLong> buckets;
+
+    /**
+     * @param rate The permits each user is allowed a second, on average
+     * @param burst The permits a user with a full bucket may take at once
+     * @param maxUsers The number of users whose buckets are held
+     */
+    public RateLimiter(double rate, int burst, long maxUsers) {
+        this(rate, burst, maxUsers, System::nanoTime);
+    }
+
+    /**
+     * @param rate The permits each user is allowed a second, on average
+     * @param burst The permits a user with a full bucket may take at once
+     * @param maxUsers The number of users whose buckets are held
+     * @param nanoTime The source of the time buckets refill by
+     */
+    public RateLimiter(double rate, int burst, long maxUsers, LongSupplier nanoTime) {
+        if (rate <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+        this.burst = burst;
+        this.burstNanos = intervalNanos * burst;
+        this.nanoTime = nanoTime;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterAccess(Duration.ofNanos(Math.max(burstNanos, TimeUnit.SECONDS.toNanos(1))))
+                .build();
+    }
+
+    /**
+     * Take permits from the user's bucket, if it holds enough. Requests for more than the burst are charged the
+     * whole burst, so they're admitted once the bucket is full rather than never
+     * @param userId The user identifier
+     * @param permits The number of permits wanted
+     * @return 0 if the permits were taken, otherwise the nanoseconds until the bucket will hold enough
+     */
+    public long tryAcquire(long userId, int permits) {
+        long cost = intervalNanos * Math.min(Math.max(permits, 1), burst);
+        AtomicLong full = buckets.get(userId, v -> new AtomicLong(Long.MIN_VALUE));
+        while (true) {
+            long now = nanoTime.getAsLong();
+            long current = full.get();
+            long next = (current == Long.MIN_VALUE || current - now < 0 ? now : current) + cost;
+            long wait = next - burstNanos - now;
+            if (wait > 0) {
+                return wait;
+            }
+            if (full.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.grasp.email.service;
+
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes a bounded audit event for sent emails to the <code>email.audit</code> logger, recording the email
+ * and user identifiers, how many recipients of each kind it had and its size, but never its addresses or
+ * content. Events are sampled at <code>email.audit.sample-rate</code>, and the logger is routed through an
+ * asynchronous appender that drops events rather than block when it falls behind
+ */
+@Component
+public class SendAuditor {
+    static final String LOGGER_NAME = "email.audit";
+    private static final Logger audit = LoggerFactory.getLogger(LOGGER_NAME);
+
+    private final double sampleRate;
+
+    public SendAuditor(@Value("${email.audit.sample-rate:1.0}") double sampleRate) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("Audit sample rate must be between 0 and 1");
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Audit the sent email, if it is sampled
+     * @param email The sent email
+     */
+    public void sent(Email email) {
+        if (!audit.isInfoEnabled() || (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return;
+        }
+        audit.info("sent id={} user={} to={} cc={} bcc={} bytes={}", email.getId(), email.getUserId(),
+                count(email.getRecipients()), count(email.getCarbonCopies()), count(email.getBlindCarbonCopies()),
+                utf8Length(email.getSubject()) + utf8Length(email.getMessage()));
+    }
+
+    private static int count(List<EmailAddress> addresses) {
+        return addresses == null ? 0 : addresses.size();
+    }
+
+    /**
+     * The UTF-8 encoded length of the text, counted without encoding it
+     */
+    private static long utf8Length(String text) {
+        if (text == null) {
+            return 0;
+        }
+        long length = text.length();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x800) {
+                // Three bytes, or four for a surrogate pair which is already counted as two chars
+                length += Character.isSurrogate(c) ? 1 : 2;
+            } else if (c >= 0x80) {
+                length++;
+            }
+        }
+        return length;
+    }
+}
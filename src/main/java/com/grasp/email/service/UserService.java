@@ -0,0 +1,34 @@
+package com.grasp.email.service;
+
+import com.grasp.email.exception.BadRequestException;
+import com.grasp.email.exception.ConflictException;
+import com.grasp.email.model.User;
+import com.grasp.email.repository.UserRepository;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+@Service
+public class UserService {
+    @Autowired
+    private UserRepository repository;
+
+    /**
+     * Register a local user, so that mail sent to their address is delivered to their inbox. The user is always
+     * allocated a new identifier, ignoring any supplied, so one user can't claim another's mailbox
+     * @param user The user
+     * @return The user, post save
+     * @throws ConflictException if the address is already registered
+     */
+    public User register(@NonNull User user) {
+        if (user.getAddress() == null) {
+            throw new BadRequestException();
+        }
+        user.setId(null);
+        try {
+            return repository.saveUser(user);
+        } catch (IllegalStateException e) {
+            throw new ConflictException();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.grasp.email.service;
+
+import com.grasp.email.exception.QuotaExceededException;
+import com.grasp.email.exception.TooManyRequestsException;
+import com.grasp.email.model.Email;
+import com.grasp.email.model.MailboxUsage;
+import com.grasp.email.repository.EmailRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Decides whether a user's sends and draft writes are admitted, protecting the latency of every other user
+ * from one flooding the service. Writes are checked against, in turn:
+ * <ul>
+ *     <li>Global backpressure: while the delivery queue is above its high-water mark, or the old generation of
+ *     the heap is still above its threshold after garbage collection, every write is refused with 429 Too Many
+ *     Requests, so the service sheds load before the queue overflows or the heap runs out</li>
+ *     <li>The user's rate limit, separate for sends and drafts, refused with 429 and the time until the user's
+ *     bucket refills</li>
+ *     <li>The user's mailbox quota of emails and bytes, refused with 507 Insufficient Storage. Usage is tracked
+ *     by the repository as emails are stored, so checking it is cheap. Writes are charged what they add: a new
+ *     email counts against the email quota, while one replacing a stored email only charges the byte quota the
+ *     difference in size, so drafts can still be edited or sent, or shrunk, in a full mailbox. The check is soft: concurrent writes may
+ *     each be admitted and together overshoot the quota by up to a batch each. Usage counts every folder,
+ *     including mail delivered by other senders, so the quota is off by default: when enabled, it must be sized
+ *     above the largest mailboxes expected, or users whose inboxes fill up can no longer send</li>
+ * </ul>
+ * Setting a rate, quota or threshold to 0 disables its check. Delivered copies aren't checked, as refusing
+ * them would lose mail; senders are bound by their send rate instead
+ */
+@Slf4j
+@Component
+public class WriteAdmission {
+    private final EmailRepository repository;
+    private final DeliveryService deliveryService;
+    private final RateLimiter sendLimiter;
+    private final RateLimiter draftLimiter;
+    private final long maxEmails;
+    private final long maxBytes;
+    private final double deliveryHighWater;
+    private final Duration retryAfter;
+    private final MemoryPoolMXBean oldGeneration;
+    private final Counter rateLimited;
+    private final Counter overQuota;
+    private final Counter backpressure;
+
+    @Autowired
+    public WriteAdmission(EmailRepository repository,
+                          DeliveryService deliveryService,
+                          MeterRegistry registry,
+                          @Value("${email.limits.send.rate:10}") double sendRate,
+                          @Value("${email.limits.send.burst:1000}") int sendBurst,
+                          @Value("${email.limits.draft.rate:50}") double draftRate,
+                          @Value("${email.limits.draft.burst:1000}") int draftBurst,
+                          @Value("${email.limits.max-users:1000000}") long maxUsers,
+                          @Value("${email.limits.quota.emails:0}") long maxEmails,
+                          @Value("${email.limits.quota.bytes:0}") long maxBytes,
+                          @Value("${email.limits.backpressure.delivery-high-water:0.8}") double deliveryHighWater,
+                          @Value("${email.limits.backpressure.heap-threshold:0.9}") double heapThreshold,
+                          @Value("${email.limits.backpressure.retry-after:1s}") Duration retryAfter) {
+        this.repository = repository;
+        this.deliveryService = deliveryService;
+        this.sendLimiter = sendRate > 0 ? new RateLimiter(sendRate, sendBurst, maxUsers) : null;
+        this.draftLimiter = draftRate > 0 ? new RateLimiter(draftRate, draftBurst, maxUsers) : null;
+        this.maxEmails = maxEmails;
+        this.maxBytes = maxBytes;
+        this.deliveryHighWater = deliveryHighWater;
+        this.retryAfter = retryAfter;
+        this.oldGeneration = heapThreshold > 0 ? watchOldGeneration(heapThreshold) : null;
+
+        this.rateLimited = rejected(registry, "rate");
+        this.overQuota = rejected(registry, "quota");
+        this.backpressure = rejected(registry, "backpressure");
+    }
+
+    /**
+     * Admit emails the user is sending. Emails with identifiers send stored drafts
+     * @param userId The user identifier
+     * @param emails The emails
+     * @throws TooManyRequestsException if the service is saturated or the user is over their send rate
+     * @throws QuotaExceededException if the emails would take the user's mailbox over its quota
+     */
+    public void admitSends(long userId, List<Email> emails) {
+        admit(userId, emails, sendLimiter);
+    }
+
+    /**
+     * Admit drafts the user is writing. Drafts with identifiers replace stored ones
+     * @param userId The user identifier
+     * @param emails The drafts
+     * @throws TooManyRequestsException if the service is saturated or the user is over their draft rate
+     * @throws QuotaExceededException if the drafts would take the user's mailbox over its quota
+     */
+    public void admitDrafts(long userId, List<Email> emails) {
+        admit(userId, emails, draftLimiter);
+    }
+
+    private void admit(long userId, List<Email> emails, RateLimiter limiter) {
+        if (isSaturated()) {
+            backpressure.increment();
+            throw new TooManyRequestsException(retryAfter);
+        }
+        if (limiter != null) {
+            long wait = limiter.tryAcquire(userId, emails.size());
+            if (wait > 0) {
+                rateLimited.increment();
+                throw new TooManyRequestsException(Duration.ofNanos(wait));
+            }
+        }
+        if (maxEmails > 0 || maxBytes > 0) {
+            long added = 0;
+            for (Email email : emails) {
+                if (email != null && email.getId() == null) {
+                    added++;
+                }
+            }
+            long bytes = maxBytes > 0 ? addedBytes(userId, emails) : 0;
+            MailboxUsage usage = repository.getUsageForUserId(userId);
+            if ((maxEmails > 0 && added > 0 && usage.getEmails() + added > maxEmails)
+                    || (maxBytes > 0 && bytes > 0 && usage.getBytes() + bytes > maxBytes)) {
+                overQuota.increment();
+                throw new QuotaExceededException();
+            }
+        }
+    }
+
+    /**
+     * @return The bytes the emails add to the user's mailbox, less those of the stored emails they replace
+     */
+    private long addedBytes(long userId, List<Email> emails) {
+        long bytes = 0;
+        for (Email email : emails) {
+            if (email == null) {
+                continue;
+            }
+            bytes += EmailRepository.sizeOf(email);
+            Email replaced = email.getId() == null ? null : repository.getEmailForUserIdAndEmailId(userId, email.getId());
+            if (replaced != null) {
+                bytes -= EmailRepository.sizeOf(replaced);
+            }
+        }
+        return bytes;
+    }
+
+    private boolean isSaturated() {
+        if (deliveryHighWater > 0 && deliveryService.getQueueDepth() >= deliveryHighWater * deliveryService.getQueueCapacity()) {
+            return true;
+        }
+        return oldGeneration != null && oldGeneration.isCollectionUsageThresholdExceeded();
+    }
+
+    /**
+     * Set the collection usage threshold of the heap pool holding long-lived objects, which is the largest
+     * supporting one. Its usage after collection is what's left live, unlike its current usage, which includes
+     * garbage not yet collected
+     */
+    private static MemoryPoolMXBean watchOldGeneration(double threshold) {
+        MemoryPoolMXBean pool = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(v -> v.getType() == MemoryType.HEAP && v.isCollectionUsageThresholdSupported() && v.getUsage().getMax() > 0)
+                .max(Comparator.comparingLong(v -> v.getUsage().getMax()))
+                .orElse(null);
+        if (pool == null) {
+            log.warn("No heap pool supports collection usage thresholds, so heap backpressure is disabled");
+            return null;
+        }
+        pool.setCollectionUsageThreshold((long) (pool.getUsage().getMax() * threshold));
+        return pool;
+    }
+
+    private static Counter rejected(MeterRegistry registry, String reason) {
+        return Counter.builder("email.limits.rejected")
+                .description("Writes refused by rate limits, quotas and backpressure")
+                .tag("reason", reason)
+                .register(registry);
+    }
+}
@@ -0,0 +1,86 @@
+package com.grasp.email.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.grasp.email.EmailApplication;
+import com.grasp.email.model.Email;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading drafts over HTTP one request per email, against loading the same drafts with a single
+ * batch request
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchBenchmark {
+    private static final long USER_ID = 1L;
+
+    @Param({"100", "1000"})
+    private int emails;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private URI draftUri;
+    private URI batchUri;
+    private String draft;
+    private String batch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = new SpringApplicationBuilder(EmailApplication.class, OpenSecurityConfiguration.class)
+                .run("--server.port=0", "--logging.level.root=WARN", "--email.limits.draft.rate=0");
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        draftUri = URI.create("http://localhost:" + port + "/v1/users/" + USER_ID + "/emails/drafts");
+        batchUri = URI.create("http://localhost:" + port + "/v1/users/" + USER_ID + "/emails/drafts/batch");
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        draft = objectMapper.writeValueAsString(Emails.create(USER_ID, null, 2));
+        List<Email> drafts = new ArrayList<>(emails);
+        for (int i = 0; i < emails; i++) {
+            drafts.add(Emails.create(USER_ID, null, 2));
+        }
+        batch = objectMapper.writeValueAsString(drafts);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int singleRequests() throws Exception {
+        int status = 0;
+        for (int i = 0; i < emails; i++) {
+            status = post(draftUri, draft);
+        }
+        return status;
+    }
+
+    @Benchmark
+    public int batchRequest() throws Exception {
+        return post(batchUri, batch);
+    }
+
+    private int post(URI uri, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
@@ -0,0 +1,61 @@
+package com.grasp.email.benchmark;
+
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+import com.grasp.email.repository.InMemoryEmailRepository;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures single email fetches against mailboxes of increasing size. Fetch latency should stay
+ * flat as the mailbox grows
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmailLookupBenchmark {
+    private static final long USER_ID = 1L;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    private int mailboxSize;
+
+    private InMemoryEmailRepository repository;
+    private long[] emailIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        repository = new InMemoryEmailRepository();
+        emailIds = new long[mailboxSize];
+        for (int i = 0; i < mailboxSize; i++) {
+            Email email = new Email();
+            email.setUserId(USER_ID);
+            email.setFolder(i % 2 == 0 ? Email.INBOX : Email.SENT);
+            email.setSender(new EmailAddress("me@mail.com", "John Doe"));
+            email.setRecipients(List.of(new EmailAddress("abc@mail.com", "Jane Doe")));
+            email.setSubject("Subject " + i);
+            email.setMessage("Message " + i);
+            emailIds[i] = repository.saveEmail(email).getId();
+        }
+    }
+
+    @Benchmark
+    public Email getEmailForUserIdAndEmailId() {
+        long emailId = emailIds[ThreadLocalRandom.current().nextInt(emailIds.length)];
+        return repository.getEmailForUserIdAndEmailId(USER_ID, emailId);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EmailLookupBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,72 @@
+package com.grasp.email.benchmark;
+
+import com.grasp.email.model.Email;
+import com.grasp.email.model.User;
+import com.grasp.email.repository.InMemoryEmailRepository;
+import com.grasp.email.repository.InMemoryUserRepository;
+import com.grasp.email.service.DeliveryService;
+import com.grasp.email.service.EmailService;
+import com.grasp.email.service.SendAuditor;
+import com.grasp.email.service.WriteAdmission;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link EmailService#send} end to end, from saving to the outbox through queueing delivery to
+ * moving to the sent folder, for emails with an increasing number of local recipients
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmailServiceBenchmark {
+    private static final long USER_ID = 1L;
+
+    @Param({"1", "100", "1000"})
+    private int recipients;
+
+    private EmailService service;
+    private DeliveryService deliveryService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemoryEmailRepository emailRepository = new InMemoryEmailRepository();
+        InMemoryUserRepository userRepository = new InMemoryUserRepository();
+        for (int i = 0; i < recipients; i++) {
+            userRepository.saveUser(new User(USER_ID + 1 + i, "Recipient", String.valueOf(i), "to" + i + "@mail.com"));
+        }
+        deliveryService = new DeliveryService(emailRepository, userRepository, new SimpleMeterRegistry(),
+                Runtime.getRuntime().availableProcessors(), 1_000_000, 500);
+
+        service = new EmailService();
+        ReflectionTestUtils.setField(service, "repository", emailRepository);
+        ReflectionTestUtils.setField(service, "deliveryService", deliveryService);
+        ReflectionTestUtils.setField(service, "sendAuditor", new SendAuditor(1.0));
+        // Limits disabled, as the benchmark sends far faster than any one user is allowed to
+        ReflectionTestUtils.setField(service, "admission", new WriteAdmission(emailRepository, deliveryService,
+                new SimpleMeterRegistry(), 0, 1, 0, 1, 1, 0, 0, 0, 0, Duration.ZERO));
+    }
+
+    @TearDown(Level.Iteration)
+    public void awaitDelivery() throws InterruptedException {
+        while (deliveryService.getQueueDepth() > 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        deliveryService.shutdown();
+    }
+
+    @Benchmark
+    public Email send() {
+        return service.send(USER_ID, Emails.create(USER_ID, null, recipients));
+    }
+}
@@ -0,0 +1,43 @@
+package com.grasp.email.benchmark;
+
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds emails for benchmarks
+ */
+final class Emails {
+    private Emails() {
+    }
+
+    /**
+     * Create an email with a typical subject and body
+     * @param userId User identifier
+     * @param folder Folder
+     * @param recipients Number of recipients
+     * @return New {@link Email}
+     */
+    static Email create(long userId, String folder, int recipients) {
+        Email email = new Email();
+        email.setUserId(userId);
+        email.setFolder(folder);
+        email.setSender(new EmailAddress("me@mail.com", "John Doe"));
+        email.setRecipients(addresses("to", recipients));
+        email.setCarbonCopies(addresses("cc", Math.min(recipients, 2)));
+        email.setSubject("Quarterly results");
+        email.setMessage("Hi all,\n\nPlease find the quarterly results attached. Let me know if you have any questions "
+                + "before the review meeting on Thursday.\n\nThanks,\nJohn");
+        return email;
+    }
+
+    static List<EmailAddress> addresses(String prefix, int count) {
+        List<EmailAddress> addresses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            addresses.add(new EmailAddress(prefix + i + "@mail.com", "Recipient " + i));
+        }
+        return addresses;
+    }
+}
@@ -0,0 +1,44 @@
+package com.grasp.email.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.grasp.email.model.Email;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures Jackson serialization and deserialization of an {@link Email} as its recipient list grows
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+    @Param({"1", "100", "10000"})
+    private int recipients;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private Email email;
+    private byte[] json;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JsonProcessingException {
+        email = Emails.create(1L, Email.INBOX, recipients);
+        email.setId(1L);
+        json = mapper.writeValueAsBytes(email);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(email);
+    }
+
+    @Benchmark
+    public Email deserialize() throws IOException {
+        return mapper.readValue(json, Email.class);
+    }
+}
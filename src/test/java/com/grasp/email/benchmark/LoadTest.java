@@ -0,0 +1,185 @@
+package com.grasp.email.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.grasp.email.EmailApplication;
+import com.grasp.email.model.Email;
+import com.grasp.email.repository.EmailRepository;
+import com.grasp.email.repository.InMemoryEmailRepository;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Compares the throughput and latency of the inbox, get and send endpoints when requests are served on
+ * platform threads and on virtual threads. The application is started once per execution mode on a random
+ * port, with a repository that sleeps for <code>loadtest.storage-latency</code> milliseconds on every call to
+ * stand in for a blocking store. Each endpoint is then driven by <code>loadtest.concurrency</code> clients for
+ * <code>loadtest.duration</code> seconds. Run with <code>mvn -Ploadtest verify</code>; virtual threads need Java 21
+ */
+public class LoadTest {
+    private static final long INBOX_USER_ID = 1L;
+    private static final long SENDER_USER_ID = 2L;
+    private static final int INBOX_SIZE = 100;
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = Integer.getInteger("loadtest.concurrency", 400);
+        int durationSeconds = Integer.getInteger("loadtest.duration", 10);
+        // Virtual threads fail startup before Java 21, so only platform threads are measured by default there
+        String[] modes = System.getProperty("loadtest.modes", Runtime.version().feature() >= 21 ? "platform,virtual" : "platform").split(",");
+
+        System.out.printf("%-10s %-6s %12s %10s %10s %8s%n", "Mode", "Call", "Requests/s", "p50 (ms)", "p99 (ms)", "Errors");
+        for (String mode : modes) {
+            try (ConfigurableApplicationContext context = new SpringApplicationBuilder(EmailApplication.class, OpenSecurityConfiguration.class, LoadTestConfiguration.class)
+                    .run("--server.port=0", "--email.web.execution-mode=" + mode, "--logging.level.root=WARN",
+                            "--server.tomcat.max-connections=" + Math.max(concurrency * 2, 8192),
+                            "--email.limits.send.rate=0")) {
+                int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                new LoadTest(mode, "http://localhost:" + port, context.getBean(EmailRepository.class), concurrency, durationSeconds).run();
+            }
+        }
+    }
+
+    private final String mode;
+    private final String baseUrl;
+    private final EmailRepository repository;
+    private final int concurrency;
+    private final int durationSeconds;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private long[] emailIds;
+
+    private LoadTest(String mode, String baseUrl, EmailRepository repository, int concurrency, int durationSeconds) {
+        this.mode = mode;
+        this.baseUrl = baseUrl;
+        this.repository = repository;
+        this.concurrency = concurrency;
+        this.durationSeconds = durationSeconds;
+    }
+
+    private void run() throws Exception {
+        emailIds = new long[INBOX_SIZE];
+        for (int i = 0; i < INBOX_SIZE; i++) {
+            emailIds[i] = repository.saveEmail(Emails.create(INBOX_USER_ID, Email.INBOX, 2)).getId();
+        }
+        String sendBody = objectMapper.writeValueAsString(Emails.create(SENDER_USER_ID, null, 2));
+
+        measure("inbox", () -> get("/v1/users/" + INBOX_USER_ID + "/emails/inbox?limit=20"));
+        measure("get", () -> get("/v1/users/" + INBOX_USER_ID + "/emails/" + emailIds[ThreadLocalRandom.current().nextInt(INBOX_SIZE)]));
+        measure("send", () -> HttpRequest.newBuilder(URI.create(baseUrl + "/v1/users/" + SENDER_USER_ID + "/emails"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(sendBody))
+                .build());
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).header("Accept", "application/json").GET().build();
+    }
+
+    private void measure(String call, Supplier<HttpRequest> requests) throws Exception {
+        // Warm up before measuring
+        drive(requests, Math.max(1, durationSeconds / 5));
+        Result result = drive(requests, durationSeconds);
+        long[] latencies = result.latencies();
+        Arrays.sort(latencies);
+        System.out.printf("%-10s %-6s %12.0f %10.2f %10.2f %8d%n", mode, call,
+                latencies.length / (double) durationSeconds,
+                percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6, result.errors());
+    }
+
+    private Result drive(Supplier<HttpRequest> requests, int seconds) throws Exception {
+        long end = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<Result>> futures = new ArrayList<>(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                futures.add(clients.submit(() -> {
+                    long[] latencies = new long[1024];
+                    int count = 0;
+                    long errors = 0;
+                    while (System.nanoTime() < end) {
+                        HttpRequest request = requests.get();
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() >= 300) {
+                                errors++;
+                                continue;
+                            }
+                        } catch (Exception e) {
+                            errors++;
+                            continue;
+                        }
+                        if (count == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, count * 2);
+                        }
+                        latencies[count++] = System.nanoTime() - start;
+                    }
+                    return new Result(Arrays.copyOf(latencies, count), errors);
+                }));
+            }
+
+            long[] latencies = new long[0];
+            long errors = 0;
+            for (Future<Result> future : futures) {
+                Result result = future.get();
+                int offset = latencies.length;
+                latencies = Arrays.copyOf(latencies, offset + result.latencies().length);
+                System.arraycopy(result.latencies(), 0, latencies, offset, result.latencies().length);
+                errors += result.errors();
+            }
+            return new Result(latencies, errors);
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    private record Result(long[] latencies, long errors) {
+    }
+
+    /**
+     * Slows every repository call down to the latency of a blocking store. Not annotated as a configuration,
+     * so that component scanning doesn't apply it to every context started from the test classpath
+     */
+    static class LoadTestConfiguration {
+
+        @Bean
+        @Primary
+        public EmailRepository blockingEmailRepository() {
+            EmailRepository repository = new InMemoryEmailRepository();
+            long storageLatencyMillis = Long.getLong("loadtest.storage-latency", 5);
+            return (EmailRepository) Proxy.newProxyInstance(EmailRepository.class.getClassLoader(), new Class<?>[]{EmailRepository.class},
+                    (proxy, method, args) -> {
+                        if (storageLatencyMillis > 0) {
+                            Thread.sleep(storageLatencyMillis);
+                        }
+                        try {
+                            return method.invoke(repository, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+}
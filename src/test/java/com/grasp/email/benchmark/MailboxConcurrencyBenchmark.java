@@ -0,0 +1,67 @@
+package com.grasp.email.benchmark;
+
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+import com.grasp.email.repository.InMemoryEmailRepository;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures send (save then atomic move) throughput as threads are added. Each thread writes to its own
+ * mailbox, so with per-user locking throughput should grow with the number of cores. Run through
+ * {@link #main}, which repeats the benchmark for 1, 2, 4... threads up to the number of available processors
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MailboxConcurrencyBenchmark {
+    private final AtomicLong nextUserId = new AtomicLong();
+    private InMemoryEmailRepository repository;
+
+    @State(Scope.Thread)
+    public static class Sender {
+        long userId;
+
+        @Setup(Level.Trial)
+        public void setUp(MailboxConcurrencyBenchmark benchmark) {
+            userId = benchmark.nextUserId.incrementAndGet();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        repository = new InMemoryEmailRepository();
+    }
+
+    @Benchmark
+    public Email send(Sender sender) {
+        Email email = new Email();
+        email.setUserId(sender.userId);
+        email.setFolder(Email.OUTBOX);
+        email.setSender(new EmailAddress("me@mail.com", "John Doe"));
+        email.setRecipients(List.of(new EmailAddress("abc@mail.com", "Jane Doe")));
+        email.setSubject("This is a test");
+        email.setMessage("Just testing if I can save this");
+        repository.saveEmail(email);
+        return repository.moveEmail(sender.userId, email.getId(), Email.OUTBOX, Email.SENT);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= processors; threads *= 2) {
+            new Runner(new OptionsBuilder()
+                    .include(MailboxConcurrencyBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.grasp.email.benchmark;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.web.SecurityFilterChain;
+
+/**
+ * Opens every endpoint to unauthenticated clients, for benchmarks that drive the service over HTTP. Not annotated
+ * as a configuration, so that component scanning doesn't apply it to every context started from the test classpath
+ */
+class OpenSecurityConfiguration {
+
+    /**
+     * Matches every path ahead of the application's own chains, which it replaces
+     */
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public SecurityFilterChain openSecurityFilterChain(HttpSecurity http) throws Exception {
+        return http.securityMatcher("/**")
+                .csrf(v -> v.disable())
+                .authorizeHttpRequests(v -> v.anyRequest().permitAll())
+                .build();
+    }
+}
@@ -0,0 +1,71 @@
+package com.grasp.email.benchmark;
+
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailSummary;
+import com.grasp.email.model.Page;
+import com.grasp.email.repository.InMemoryEmailRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures {@link InMemoryEmailRepository} saves and inbox listings against mailboxes of increasing size.
+ * Run with <code>-t</code> to vary the number of threads; each thread reads a shared mailbox and saves to its own
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepositoryBenchmark {
+    private static final long USER_ID = 1L;
+
+    @Param({"100", "10000", "100000"})
+    private int mailboxSize;
+
+    private final AtomicLong nextWriterId = new AtomicLong(USER_ID);
+    private InMemoryEmailRepository repository;
+
+    @State(Scope.Thread)
+    public static class Writer {
+        long userId;
+
+        @Setup(Level.Trial)
+        public void setUp(RepositoryBenchmark benchmark) {
+            userId = benchmark.nextWriterId.incrementAndGet();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        repository = new InMemoryEmailRepository();
+        for (int i = 0; i < mailboxSize; i++) {
+            // A tenth of the mailbox is in the inbox, the rest is spread over the other folders
+            String folder = i % 10 == 0 ? Email.INBOX : i % 2 == 0 ? Email.SENT : Email.DRAFTS;
+            repository.saveEmail(Emails.create(USER_ID, folder, 3));
+        }
+    }
+
+    @Benchmark
+    public Email saveEmail(Writer writer) {
+        return repository.saveEmail(Emails.create(writer.userId, Email.INBOX, 3));
+    }
+
+    @Benchmark
+    public List<Email> getInbox() {
+        return repository.getInboxForUserId(USER_ID);
+    }
+
+    @Benchmark
+    public Page<Email> getInboxPage() {
+        return repository.getInboxForUserId(USER_ID, 50, null);
+    }
+
+    @Benchmark
+    public Page<EmailSummary> getInboxSummariesPage() {
+        return repository.getInboxSummariesForUserId(USER_ID, 50, null);
+    }
+}
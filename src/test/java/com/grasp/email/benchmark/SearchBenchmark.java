@@ -0,0 +1,57 @@
+package com.grasp.email.benchmark;
+
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailSummary;
+import com.grasp.email.model.Page;
+import com.grasp.email.repository.InMemoryEmailRepository;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures searching mailboxes of increasing size for a rare term, and for a combination of a common
+ * and a rare term. Each email's subject carries a term shared by one in a thousand emails
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+    private static final long USER_ID = 1L;
+
+    @Param({"1000", "100000", "1000000"})
+    private int mailboxSize;
+
+    private InMemoryEmailRepository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        repository = new InMemoryEmailRepository();
+        for (int i = 0; i < mailboxSize; i++) {
+            Email email = Emails.create(USER_ID, i % 2 == 0 ? Email.INBOX : Email.SENT, 1);
+            email.setSubject("Quarterly results project" + (i % 1000));
+            repository.saveEmail(email);
+        }
+    }
+
+    @Benchmark
+    public Page<EmailSummary> searchRareTerm() {
+        return repository.searchForUserId(USER_ID, "project7", null, 20, null);
+    }
+
+    @Benchmark
+    public Page<EmailSummary> searchCommonAndRareTermInFolder() {
+        return repository.searchForUserId(USER_ID, "quarterly project8", Email.INBOX, 20, null);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SearchBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,100 @@
+package com.grasp.email.benchmark;
+
+import com.grasp.email.EmailApplication;
+import com.grasp.email.model.Email;
+import com.grasp.email.repository.EmailRepository;
+import com.grasp.email.security.TokenService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-request cost of security on the inbox and get endpoints over HTTP. <code>open</code>
+ * applies no security, as a baseline. <code>session</code> is the previous default of HTTP Basic credentials
+ * on a session-backed chain; the client ignores cookies, as API clients commonly do, so each request creates
+ * a session. <code>token</code> is the stateless bearer token chain, and <code>token-uncached</code> the
+ * same with the verified token cache disabled, so every request verifies its token's signature
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecurityBenchmark {
+    private static final long USER_ID = 1L;
+    private static final int INBOX_SIZE = 20;
+
+    @Param({"open", "session", "token", "token-uncached"})
+    private String security;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private URI inboxUri;
+    private URI emailUri;
+    private String authorization;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SpringApplicationBuilder builder = switch (security) {
+            case "open" -> new SpringApplicationBuilder(EmailApplication.class, OpenSecurityConfiguration.class);
+            case "session" -> new SpringApplicationBuilder(EmailApplication.class, SessionSecurityConfiguration.class);
+            default -> new SpringApplicationBuilder(EmailApplication.class);
+        };
+        context = builder.run("--server.port=0", "--logging.level.root=WARN",
+                "--spring.security.user.name=user", "--spring.security.user.password=password",
+                "--email.security.token.cache-size=" + ("token-uncached".equals(security) ? 0 : 100000));
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+        EmailRepository repository = context.getBean(EmailRepository.class);
+        long emailId = 0;
+        for (int i = 0; i < INBOX_SIZE; i++) {
+            emailId = repository.saveEmail(Emails.create(USER_ID, Email.INBOX, 2)).getId();
+        }
+        inboxUri = URI.create("http://localhost:" + port + "/v1/users/" + USER_ID + "/emails/inbox");
+        emailUri = URI.create("http://localhost:" + port + "/v1/users/" + USER_ID + "/emails/" + emailId);
+        authorization = switch (security) {
+            case "open" -> null;
+            case "session" -> "Basic " + Base64.getEncoder().encodeToString("user:password".getBytes(StandardCharsets.UTF_8));
+            default -> "Bearer " + context.getBean(TokenService.class).issue(USER_ID, false, Duration.ofHours(1));
+        };
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int getInbox() throws Exception {
+        return get(inboxUri);
+    }
+
+    @Benchmark
+    public int getEmail() throws Exception {
+        return get(emailUri);
+    }
+
+    private int get(URI uri) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).header("Accept", "application/json");
+        if (authorization != null) {
+            request.header("Authorization", authorization);
+        }
+        int status = client.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status != 200) {
+            throw new IllegalStateException("Request failed with status " + status);
+        }
+        return status;
+    }
+}
@@ -0,0 +1,29 @@
+package com.grasp.email.benchmark;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.web.SecurityFilterChain;
+
+/**
+ * Restates Spring Boot's default security, with sessions, CSRF protection, form login and HTTP Basic
+ * credentials checked on every request, as the service was secured before bearer tokens. Not annotated as a
+ * configuration, so that component scanning doesn't apply it to every context started from the test classpath
+ */
+class SessionSecurityConfiguration {
+
+    /**
+     * Matches every path ahead of the application's own chains, which it replaces
+     */
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public SecurityFilterChain sessionSecurityFilterChain(HttpSecurity http) throws Exception {
+        return http.securityMatcher("/**")
+                .authorizeHttpRequests(v -> v.anyRequest().authenticated())
+                .formLogin(Customizer.withDefaults())
+                .httpBasic(Customizer.withDefaults())
+                .build();
+    }
+}
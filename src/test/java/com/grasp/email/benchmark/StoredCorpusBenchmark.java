@@ -0,0 +1,91 @@
+package com.grasp.email.benchmark;
+
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+import com.grasp.email.repository.InMemoryEmailRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the heap held by {@link InMemoryEmailRepository} for a corpus of distinct emails whose addresses
+ * are drawn from a small directory, as a real organisation's are, and the cost of saving into it. Each trial
+ * prints the heap retained per stored email, found by comparing the heap in use after collection before and
+ * after storing the corpus, so should be run with a heap large enough to hold it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class StoredCorpusBenchmark {
+    private static final int DIRECTORY_SIZE = 2000;
+    private static final int USERS = 1000;
+
+    @Param({"100000"})
+    private int corpusSize;
+
+    @Param({"5"})
+    private int recipients;
+
+    private final Random random = new Random(42);
+    private List<EmailAddress> directory;
+    private InMemoryEmailRepository repository;
+    private long saved;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        directory = new ArrayList<>(DIRECTORY_SIZE);
+        for (int i = 0; i < DIRECTORY_SIZE; i++) {
+            directory.add(new EmailAddress("user" + i + "@mail.com", "User " + i));
+        }
+        long before = usedHeap();
+        repository = new InMemoryEmailRepository();
+        for (int i = 0; i < corpusSize; i++) {
+            repository.saveEmail(next(i));
+        }
+        long after = usedHeap();
+        System.out.printf("%n%d emails with %d recipients retain %d bytes each%n", corpusSize, recipients, (after - before) / corpusSize);
+    }
+
+    @Benchmark
+    public Email saveEmail() {
+        return repository.saveEmail(next(corpusSize + saved++));
+    }
+
+    /**
+     * A distinct email, with freshly deserialised addresses as a request would carry
+     */
+    private Email next(long index) {
+        Email email = Emails.create(index % USERS, index % 2 == 0 ? Email.INBOX : Email.SENT, 0);
+        email.setSubject("Quarterly results " + index);
+        email.setSender(copyOf(directory.get(random.nextInt(DIRECTORY_SIZE))));
+        email.setRecipients(pick(recipients));
+        email.setCarbonCopies(pick(2));
+        return email;
+    }
+
+    private List<EmailAddress> pick(int count) {
+        List<EmailAddress> addresses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            addresses.add(copyOf(directory.get(random.nextInt(DIRECTORY_SIZE))));
+        }
+        return addresses;
+    }
+
+    private static EmailAddress copyOf(EmailAddress address) {
+        return new EmailAddress(new String(address.getAddress()), new String(address.getSenderInfo()));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
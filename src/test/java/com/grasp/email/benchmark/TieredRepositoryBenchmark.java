@@ -0,0 +1,80 @@
+package com.grasp.email.benchmark;
+
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailSummary;
+import com.grasp.email.model.Page;
+import com.grasp.email.repository.InMemoryEmailRepository;
+import com.grasp.email.repository.TieredEmailRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures inbox reads and saves against a {@link TieredEmailRepository} holding a fraction of its emails in memory,
+ * compared with an {@link InMemoryEmailRepository} holding them all. Users are picked with a skew towards low
+ * identifiers, so that a small set of active users make most of the requests, as they would in production
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TieredRepositoryBenchmark {
+    private static final int USERS = 10000;
+    private static final int EMAILS_PER_USER = 20;
+
+    /** The fraction of emails held in memory, or 1 for an {@link InMemoryEmailRepository} */
+    @Param({"1.0", "0.2", "0.05"})
+    private double residentFraction;
+
+    private Path directory;
+    private InMemoryEmailRepository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (residentFraction < 1) {
+            directory = Files.createTempDirectory("cold-mailboxes");
+            repository = new TieredEmailRepository(directory, (long) (USERS * EMAILS_PER_USER * residentFraction));
+        } else {
+            repository = new InMemoryEmailRepository();
+        }
+        for (int i = 0; i < EMAILS_PER_USER; i++) {
+            for (long userId = 0; userId < USERS; userId++) {
+                repository.saveEmail(Emails.create(userId, Email.INBOX, 3));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (directory != null) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public Page<EmailSummary> getInboxSummariesPage() {
+        return repository.getInboxSummariesForUserId(nextUserId(), 20, null);
+    }
+
+    @Benchmark
+    public Email saveEmail() {
+        return repository.saveEmail(Emails.create(nextUserId(), Email.INBOX, 3));
+    }
+
+    private static long nextUserId() {
+        double uniform = ThreadLocalRandom.current().nextDouble();
+        return (long) (uniform * uniform * uniform * USERS);
+    }
+}
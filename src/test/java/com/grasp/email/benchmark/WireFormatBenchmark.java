@@ -0,0 +1,57 @@
+package com.grasp.email.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.grasp.email.model.Email;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares encoding and decoding an {@link Email} as JSON against the binary CBOR and Smile encodings the API
+ * negotiates, for a typical email and one with 10,000 recipients. Each trial prints the encoded size, as the
+ * binary formats also trade on payload size
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+    @Param({"json", "cbor", "smile"})
+    private String format;
+
+    @Param({"2", "10000"})
+    private int recipients;
+
+    private ObjectMapper mapper;
+    private Email email;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mapper = switch (format) {
+            case "cbor" -> new CBORMapper();
+            case "smile" -> new SmileMapper();
+            default -> new ObjectMapper();
+        };
+        email = Emails.create(1L, Email.INBOX, recipients);
+        email.setId(1L << 48);
+        email.setVersion(1L);
+        encoded = mapper.writeValueAsBytes(email);
+        System.out.printf("%n%s with %d recipients: %d bytes%n", format, recipients, encoded.length);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return mapper.writeValueAsBytes(email);
+    }
+
+    @Benchmark
+    public Email decode() throws IOException {
+        return mapper.readValue(encoded, Email.class);
+    }
+}
@@ -1,9 +1,13 @@
 package com.grasp.email.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 import com.grasp.email.model.Email;
 import com.grasp.email.model.EmailAddress;
+import com.grasp.email.model.User;
 import com.grasp.email.repository.EmailRepository;
+import com.grasp.email.repository.UserRepository;
 import com.grasp.email.service.EmailService;
 import io.restassured.path.json.JsonPath;
 import jakarta.servlet.http.HttpServletResponse;
@@ -21,7 +25,7 @@ import org.springframework.test.web.servlet.RequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.util.Assert;
 
-import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -37,10 +41,13 @@ class EmailControllerIntegrationTests {
     @Autowired
     private EmailRepository repository;
 
+    @Autowired
+    private UserRepository userRepository;
+
     @Test
     @WithMockUser(username = "admin", roles="ADMIN")
     void givenUserExists_whenNewUserInboxIsRetrieved_thenReturnNoEmails() throws Exception {
-        final BigInteger userId = BigInteger.ONE;
+        final long userId = 1L;
 
         RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/v1/users/1/emails/inbox").accept(MediaType.APPLICATION_JSON);
         MvcResult result = mockMvc.perform(requestBuilder).andReturn();
@@ -55,7 +62,7 @@ class EmailControllerIntegrationTests {
     @Test
     @WithMockUser(username = "admin", roles="ADMIN")
     void givenUserExists_whenUserInboxIsRetrieved_thenReturn3Emails() throws Exception {
-        final BigInteger userId = BigInteger.valueOf(100L);
+        final long userId = 100L;
         repository.saveEmail(newEmail(createEmail(userId), Email.INBOX));
         repository.saveEmail(newEmail(createEmail(userId), Email.INBOX));
         repository.saveEmail(newEmail(createEmail(userId), Email.INBOX));
@@ -70,6 +77,165 @@ class EmailControllerIntegrationTests {
         Assert.isTrue(emails.size() == 3, "User should return 3 emails");
     }
 
+    @Test
+    @WithMockUser(username = "admin", roles="ADMIN")
+    void givenUserExists_whenUserInboxPageIsRetrieved_thenReturnPageAndCursor() throws Exception {
+        final long userId = 104L;
+        repository.saveEmail(newEmail(createEmail(userId), Email.INBOX));
+        repository.saveEmail(newEmail(createEmail(userId), Email.INBOX));
+        repository.saveEmail(newEmail(createEmail(userId), Email.INBOX));
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/v1/users/104/emails/inbox?limit=2").accept(MediaType.APPLICATION_JSON);
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_OK, "Incorrect status " + result.getResponse().getStatus() + " returned");
+        JsonPath json = JsonPath.from(result.getResponse().getContentAsString());
+        Assert.isTrue(json.getList("items").size() == 2, "First page should return 2 emails");
+        String cursor = json.getString("nextCursor");
+        Assert.notNull(cursor, "First page should return a cursor");
+
+        requestBuilder = MockMvcRequestBuilders.get("/v1/users/104/emails/inbox?limit=2&cursor=" + cursor).accept(MediaType.APPLICATION_JSON);
+        result = mockMvc.perform(requestBuilder).andReturn();
+        json = JsonPath.from(result.getResponse().getContentAsString());
+        Assert.isTrue(json.getList("items").size() == 1, "Last page should return 1 email");
+        Assert.isNull(json.getString("nextCursor"), "Last page should not return a cursor");
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles="ADMIN")
+    void givenUserExists_whenUserInboxSummariesAreRetrieved_thenReturnHeadersOnly() throws Exception {
+        final long userId = 105L;
+        repository.saveEmail(newEmail(createEmail(userId), Email.INBOX));
+        repository.saveEmail(newEmail(createEmail(userId), Email.INBOX));
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/v1/users/105/emails/inbox?view=summary").accept(MediaType.APPLICATION_JSON);
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_OK, "Incorrect status " + result.getResponse().getStatus() + " returned");
+        JsonPath json = JsonPath.from(result.getResponse().getContentAsString());
+        List<Map<String, Object>> summaries = json.getList("$");
+        Assert.isTrue(summaries.size() == 2, "User should return 2 email summaries");
+        Assert.isTrue("Just testing if I can save this".equals(summaries.get(0).get("snippet")), "Summary should include a snippet");
+        Assert.isTrue(!summaries.get(0).containsKey("message"), "Summary should not include the message");
+        Assert.isTrue(!summaries.get(0).containsKey("recipients"), "Summary should not include the recipients");
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles="ADMIN")
+    void givenInboxUnchanged_whenPolledWithETag_thenReturnNotModifiedUntilInboxChanges() throws Exception {
+        final long userId = 115L;
+        repository.saveEmail(newEmail(createEmail(userId), Email.INBOX));
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/v1/users/115/emails/inbox").accept(MediaType.APPLICATION_JSON);
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+        String etag = result.getResponse().getHeader("ETag");
+        Assert.notNull(etag, "Inbox should carry an ETag");
+        Assert.notNull(result.getResponse().getHeader("Last-Modified"), "Inbox should carry a Last-Modified time");
+
+        repository.saveEmail(newEmail(createEmail(userId), Email.DRAFTS));
+        requestBuilder = MockMvcRequestBuilders.get("/v1/users/115/emails/inbox").header("If-None-Match", etag).accept(MediaType.APPLICATION_JSON);
+        result = mockMvc.perform(requestBuilder).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_NOT_MODIFIED, "Incorrect status " + result.getResponse().getStatus() + " returned");
+        Assert.isTrue(result.getResponse().getContentLength() == 0, "Not modified response should have no body");
+
+        repository.saveEmail(newEmail(createEmail(userId), Email.INBOX));
+        result = mockMvc.perform(requestBuilder).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_OK, "Incorrect status " + result.getResponse().getStatus() + " returned");
+        Assert.isTrue(!etag.equals(result.getResponse().getHeader("ETag")), "ETag should change with the inbox");
+        JsonPath json = JsonPath.from(result.getResponse().getContentAsString());
+        Assert.isTrue(json.getList("$").size() == 2, "Changed inbox should be returned");
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles="ADMIN")
+    void givenInboxReadAsJson_whenPolledForCborWithItsETag_thenReturnCborAndVaryByAccept() throws Exception {
+        final long userId = 122L;
+        repository.saveEmail(newEmail(createEmail(userId), Email.INBOX));
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/v1/users/122/emails/inbox").accept(MediaType.APPLICATION_JSON);
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+        String etag = result.getResponse().getHeader("ETag");
+        Assert.isTrue(result.getResponse().getHeaders("Vary").contains("Accept"), "Inbox should vary by Accept");
+
+        requestBuilder = MockMvcRequestBuilders.get("/v1/users/122/emails/inbox").header("If-None-Match", etag).accept(MediaType.APPLICATION_CBOR);
+        result = mockMvc.perform(requestBuilder).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_OK, "Incorrect status " + result.getResponse().getStatus() + " returned");
+        Assert.isTrue(MediaType.APPLICATION_CBOR_VALUE.equals(result.getResponse().getContentType()), "Response should be CBOR");
+        Assert.isTrue(!etag.equals(result.getResponse().getHeader("ETag")), "Each encoding should have its own ETag");
+
+        requestBuilder = MockMvcRequestBuilders.get("/v1/users/122/emails/inbox").header("If-None-Match", etag).accept(MediaType.APPLICATION_JSON);
+        result = mockMvc.perform(requestBuilder).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_NOT_MODIFIED, "Incorrect status " + result.getResponse().getStatus() + " returned");
+        Assert.isTrue(result.getResponse().getHeaders("Vary").contains("Accept"), "Not modified response should vary by Accept");
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles="ADMIN")
+    void givenAcceptListingSeveralEncodings_whenInboxIsRead_thenETagNamesTheEncodingWritten() throws Exception {
+        final long userId = 123L;
+        repository.saveEmail(newEmail(createEmail(userId), Email.INBOX));
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/v1/users/123/emails/inbox")
+                .header("Accept", "application/cbor;q=0.5, application/x-jackson-smile");
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_OK, "Incorrect status " + result.getResponse().getStatus() + " returned");
+        Assert.isTrue("application/x-jackson-smile".equals(result.getResponse().getContentType()), "Response should be Smile");
+        Assert.isTrue(result.getResponse().getHeader("ETag").endsWith("-smile\""), "ETag should name the encoding written");
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles="ADMIN")
+    void givenSynchronisedClient_whenChangesAreRetrieved_thenReturnOnlyNewEmails() throws Exception {
+        final long userId = 116L;
+        repository.saveEmail(newEmail(createEmail(userId), Email.INBOX));
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/v1/users/116/emails/changes").accept(MediaType.APPLICATION_JSON);
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_OK, "Incorrect status " + result.getResponse().getStatus() + " returned");
+        JsonPath json = JsonPath.from(result.getResponse().getContentAsString());
+        Assert.isTrue(json.getBoolean("resync"), "Client holding nothing should be told to resync");
+        String token = json.getString("nextToken");
+
+        Email received = repository.saveEmail(newEmail(createEmail(userId), Email.INBOX));
+        requestBuilder = MockMvcRequestBuilders.get("/v1/users/116/emails/changes").param("since", token).accept(MediaType.APPLICATION_JSON);
+        result = mockMvc.perform(requestBuilder).andReturn();
+        json = JsonPath.from(result.getResponse().getContentAsString());
+        Assert.isTrue(!json.getBoolean("resync"), "Synchronised client should not need to resync");
+        Assert.isTrue(json.getList("changes").size() == 1, "Only the new email should be returned");
+        Assert.isTrue(json.getLong("changes[0].id") == received.getId() && Email.INBOX.equals(json.getString("changes[0].folder")), "New email should be returned");
+
+        requestBuilder = MockMvcRequestBuilders.get("/v1/users/116/emails/changes").param("since", "not-a-token").accept(MediaType.APPLICATION_JSON);
+        result = mockMvc.perform(requestBuilder).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_BAD_REQUEST, "Incorrect status " + result.getResponse().getStatus() + " returned");
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles="ADMIN")
+    void givenInvalidLimit_whenUserInboxPageIsRetrieved_thenBadRequest() throws Exception {
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/v1/users/104/emails/inbox?limit=0").accept(MediaType.APPLICATION_JSON);
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_BAD_REQUEST, "Incorrect status " + result.getResponse().getStatus() + " returned");
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles="ADMIN")
+    void givenUserHasEmails_whenSearched_thenReturnMatchingSummaries() throws Exception {
+        final long userId = 110L;
+        Email match = newEmail(createEmail(userId), Email.INBOX);
+        match.setSubject("Invoice for October");
+        repository.saveEmail(match);
+        repository.saveEmail(newEmail(createEmail(userId), Email.INBOX));
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/v1/users/110/emails/search?q=invoice&folder=inbox").accept(MediaType.APPLICATION_JSON);
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_OK, "Incorrect status " + result.getResponse().getStatus() + " returned");
+        JsonPath json = JsonPath.from(result.getResponse().getContentAsString());
+        Assert.isTrue(json.getList("items").size() == 1, "Only the invoice should match");
+        Assert.isTrue(json.getLong("items[0].id") == match.getId(), "Invoice should have been returned");
+
+        requestBuilder = MockMvcRequestBuilders.get("/v1/users/110/emails/search").param("q", " ").accept(MediaType.APPLICATION_JSON);
+        result = mockMvc.perform(requestBuilder).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_BAD_REQUEST, "Blank query should be rejected");
+    }
+
     private Email newEmail(Email email, String folder) {
         email.setId(null);
         email.setFolder(folder);
@@ -80,7 +246,7 @@ class EmailControllerIntegrationTests {
     @WithMockUser(username = "admin", roles="ADMIN")
     @AutoConfigureMockMvc(addFilters = false)
     void givenUserExists_whenDraftEmailIsSaved_thenReturnDraftIdentifier() throws Exception {
-        final BigInteger userId = BigInteger.valueOf(101L);
+        final long userId = 101L;
 
         Email email = createEmail(userId);
         String body =  toJson(email);
@@ -99,7 +265,7 @@ class EmailControllerIntegrationTests {
     @Test
     @WithMockUser(username = "admin", roles="ADMIN")
     void givenUserDoesntExist_whenEmailRequested_thenResourceNotFound() throws Exception {
-        final BigInteger userId = BigInteger.valueOf(102L);
+        final long userId = 102L;
 
         Email email = createEmail(userId);
         String body =  toJson(email);
@@ -115,7 +281,7 @@ class EmailControllerIntegrationTests {
     @WithMockUser(username = "admin", roles="ADMIN")
     @AutoConfigureMockMvc(addFilters = false)
     void givenUserAndNewEmail_whenEmailSent_thenResourceCreated() throws Exception {
-        final BigInteger userId = BigInteger.valueOf(103L);
+        final long userId = 103L;
 
         Email email = createEmail(userId);
         String body =  toJson(email);
@@ -132,12 +298,191 @@ class EmailControllerIntegrationTests {
         Assert.isTrue(Email.SENT.equals(response.get("folder")), "Email should have a folder of " + Email.SENT);
     }
 
+    @Test
+    @WithMockUser(username = "admin", roles="ADMIN")
+    void givenRecipientsListedMoreThanOnce_whenEmailSent_thenKeepEachAtItsFirstListing() throws Exception {
+        final long userId = 121L;
+        Email email = createEmail(userId);
+        email.setRecipients(List.of(new EmailAddress("abc@mail.com", "Jane Doe"), new EmailAddress("ABC@mail.com", null)));
+        email.setCarbonCopies(List.of(new EmailAddress("abc@mail.com", null), new EmailAddress("uvw@mail.com", null)));
+        email.setBlindCarbonCopies(List.of(new EmailAddress("uvw@mail.com", null), new EmailAddress("xyz@mail.com", null)));
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.post("/v1/users/121/emails")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(toJson(email));
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_CREATED, "Incorrect status " + result.getResponse().getStatus() + " returned");
+        Email sent = repository.getEmailForUserIdAndEmailId(userId, JsonPath.from(result.getResponse().getContentAsString()).getLong("id"));
+        Assert.isTrue(sent.getRecipients().equals(List.of(new EmailAddress("abc@mail.com", "Jane Doe"))), "Repeated recipient should be collapsed");
+        Assert.isTrue(sent.getCarbonCopies().equals(List.of(new EmailAddress("uvw@mail.com", null))), "Carbon copy of a recipient should be dropped");
+        Assert.isTrue(sent.getBlindCarbonCopies().equals(List.of(new EmailAddress("xyz@mail.com", null))), "Blind copy of a carbon copy should be dropped");
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles="ADMIN")
+    @AutoConfigureMockMvc(addFilters = false)
+    void givenDraftModifiedSinceRead_whenDraftIsUpdated_thenConflict() throws Exception {
+        final long userId = 109L;
+        Email draft = repository.saveEmail(newEmail(createEmail(userId), Email.DRAFTS));
+        long readVersion = draft.getVersion();
+        draft.setSubject("Edited elsewhere");
+        repository.replaceEmail(draft, Email.DRAFTS);
+
+        draft.setVersion(readVersion);
+        draft.setSubject("Stale edit");
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.put("/v1/users/109/emails/drafts")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(toJson(draft))
+                .with(csrf());
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_CONFLICT, "Incorrect status " + result.getResponse().getStatus() + " returned");
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles="ADMIN")
+    @AutoConfigureMockMvc(addFilters = false)
+    void givenLocalRecipients_whenEmailSent_thenDeliverToRecipientInboxesWithoutBcc() throws Exception {
+        User recipient = userRepository.saveUser(new User(107L, "Jane", "Doe", "jane.doe@mail.com"));
+        User blindRecipient = userRepository.saveUser(new User(108L, "Joe", "Bloggs", "joe.bloggs@mail.com"));
+
+        Email email = createEmail(106L);
+        email.setRecipients(List.of(new EmailAddress("Jane.Doe@mail.com", "Jane Doe"), new EmailAddress("unknown@elsewhere.com", null)));
+        email.setBlindCarbonCopies(List.of(new EmailAddress("joe.bloggs@mail.com", null)));
+        String body =  toJson(email);
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.post("/v1/users/106/emails")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body)
+                .with(csrf());
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_CREATED, "Incorrect status " + result.getResponse().getStatus() + " returned");
+
+        List<Email> inbox = awaitInbox(recipient.getId());
+        Assert.isTrue(inbox.size() == 1, "Recipient should have received the email");
+        Assert.isTrue("This is a test".equals(inbox.get(0).getSubject()), "Recipient should have received the sent subject");
+        Assert.isNull(inbox.get(0).getBlindCarbonCopies(), "Delivered email should not reveal blind carbon copies");
+        Assert.isTrue(awaitInbox(blindRecipient.getId()).size() == 1, "Blind carbon copy recipient should have received the email");
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles="ADMIN")
+    void givenBatchOfEmails_whenBatchSent_thenReturnResultPerEmail() throws Exception {
+        final long userId = 111L;
+        Email draft = repository.saveEmail(newEmail(createEmail(userId), Email.DRAFTS));
+        String body = "[" + toJson(createEmail(userId)) + ",null," + toJson(draft) + "]";
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.post("/v1/users/111/emails/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body)
+                .with(csrf());
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_OK, "Incorrect status " + result.getResponse().getStatus() + " returned");
+        JsonPath json = JsonPath.from(result.getResponse().getContentAsString());
+        Assert.isTrue(json.getInt("[0].status") == HttpServletResponse.SC_CREATED, "New email should have been created");
+        Assert.isTrue(Email.SENT.equals(json.getString("[0].email.folder")), "New email should have been sent");
+        Assert.isTrue(json.getInt("[1].status") == HttpServletResponse.SC_BAD_REQUEST, "Missing email should have been rejected");
+        Assert.isTrue(json.getInt("[2].status") == HttpServletResponse.SC_OK, "Draft should have been sent");
+        Assert.isTrue(json.getLong("[2].email.id") == draft.getId(), "Draft should have kept its identifier");
+        Assert.isTrue(Email.SENT.equals(repository.getEmailForUserIdAndEmailId(userId, draft.getId()).getFolder()), "Draft should have moved to sent");
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles="ADMIN")
+    void givenBatchOfDrafts_whenBatchSaved_thenAllocateIdentifiers() throws Exception {
+        String body = "[" + toJson(createEmail(112L)) + "," + toJson(createEmail(112L)) + "]";
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.post("/v1/users/112/emails/drafts/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body)
+                .with(csrf());
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_OK, "Incorrect status " + result.getResponse().getStatus() + " returned");
+        JsonPath json = JsonPath.from(result.getResponse().getContentAsString());
+        Assert.isTrue(json.getInt("[1].status") == HttpServletResponse.SC_CREATED, "Draft should have been created");
+        Assert.isTrue(json.getLong("[1].email.id") == json.getLong("[0].email.id") + 1, "Drafts should have consecutive identifiers");
+
+        requestBuilder = MockMvcRequestBuilders.post("/v1/users/112/emails/drafts/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[]")
+                .with(csrf());
+        result = mockMvc.perform(requestBuilder).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_BAD_REQUEST, "Empty batch should be rejected");
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles="ADMIN")
+    void givenFolderLargerThanExportPage_whenExported_thenStreamEveryEmailAsJsonLines() throws Exception {
+        final long userId = 113L;
+        List<Email> sent = new ArrayList<>();
+        for (int i = 0; i < 501; i++) {
+            sent.add(newEmail(createEmail(userId), Email.SENT));
+        }
+        repository.saveAll(sent);
+        repository.saveEmail(newEmail(createEmail(userId), Email.INBOX));
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/v1/users/113/emails/sent/export");
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+        result = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result)).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_OK, "Incorrect status " + result.getResponse().getStatus() + " returned");
+        Assert.isTrue(MediaType.APPLICATION_NDJSON_VALUE.equals(result.getResponse().getContentType()), "Response should be JSON lines");
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+        Assert.isTrue(lines.length == 501, "Every sent email should have been exported");
+        Email last = new ObjectMapper().readValue(lines[500], Email.class);
+        Assert.isTrue(last.getId().equals(sent.get(0).getId()), "Emails should have been exported newest first");
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles="ADMIN")
+    void givenInboxRetrieved_whenMetricsScraped_thenPublishRequestAndRepositoryMetrics() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/v1/users/114/emails/inbox").accept(MediaType.APPLICATION_JSON)).andReturn();
+
+        for (String metric : List.of("http.server.requests", "email.repository.operation?tag=operation:getInbox",
+                "email.repository.emails?tag=folder:inbox", "email.repository.heap.estimate", "email.users")) {
+            MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/actuator/metrics/" + metric)).andReturn();
+            Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_OK, "Metric " + metric + " should be published");
+        }
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles="ADMIN")
+    void givenBinaryMediaTypes_whenDraftIsSavedAndInboxRetrieved_thenNegotiateCborAndSmile() throws Exception {
+        final long userId = 120L;
+        Email draft = createEmail(userId);
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.post("/v1/users/120/emails/drafts")
+                .contentType(MediaType.APPLICATION_CBOR)
+                .accept(MediaType.APPLICATION_CBOR)
+                .content(new CBORMapper().writeValueAsBytes(draft));
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_CREATED, "Incorrect status " + result.getResponse().getStatus() + " returned");
+        Assert.isTrue(MediaType.APPLICATION_CBOR_VALUE.equals(result.getResponse().getContentType()), "Response should be CBOR");
+        Email saved = new CBORMapper().readValue(result.getResponse().getContentAsByteArray(), Email.class);
+        Assert.isTrue(saved.getId() != null && saved.getCarbonCopies().equals(draft.getCarbonCopies()), "Draft should have been saved from CBOR");
+
+        repository.saveEmail(newEmail(createEmail(userId), Email.INBOX));
+        requestBuilder = MockMvcRequestBuilders.get("/v1/users/120/emails/inbox").accept("application/x-jackson-smile");
+        result = mockMvc.perform(requestBuilder).andReturn();
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_OK, "Incorrect status " + result.getResponse().getStatus() + " returned");
+        Email[] inbox = new SmileMapper().readValue(result.getResponse().getContentAsByteArray(), Email[].class);
+        Assert.isTrue(inbox.length == 1 && inbox[0].getRecipients().equals(draft.getRecipients()), "Inbox should have been returned as Smile");
+    }
+
+    private List<Email> awaitInbox(long userId) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            List<Email> inbox = repository.getInboxForUserId(userId);
+            if (!inbox.isEmpty()) {
+                return inbox;
+            }
+            Thread.sleep(50);
+        }
+        return Collections.emptyList();
+    }
+
     /**
      * Create a dummy email with required (and some optional) fields populated
      * @param userId User identifier
      * @return New {@link} Email
      */
-    private Email createEmail(BigInteger userId) {
+    private Email createEmail(long userId) {
         Email email = new Email();
         email.setUserId(userId);
         email.setRecipients(List.of(new EmailAddress("abc@mail.com", "Jane Doe"), new EmailAddress("def@mail.com", null)));
@@ -0,0 +1,78 @@
+package com.grasp.email.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.util.Assert;
+
+import java.util.List;
+
+@SpringBootTest(properties = {
+        "email.limits.send.rate=0.01", "email.limits.send.burst=2",
+        "email.limits.draft.rate=0", "email.limits.quota.emails=3"})
+@AutoConfigureMockMvc
+class EmailControllerLimitsIntegrationTests {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    @WithMockUser(username = "admin", roles="ADMIN")
+    void givenUserOverSendRate_whenEmailIsSent_thenReturnTooManyRequestsWithRetryAfter() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            MvcResult result = post("/v1/users/140/emails", createEmail(140L));
+            Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_CREATED, "Sends within the burst should be accepted, but got " + result.getResponse().getStatus());
+        }
+        MvcResult result = post("/v1/users/140/emails", createEmail(140L));
+        Assert.isTrue(result.getResponse().getStatus() == 429, "Send over the rate should be refused, but got " + result.getResponse().getStatus());
+        String retryAfter = result.getResponse().getHeader(HttpHeaders.RETRY_AFTER);
+        Assert.isTrue(retryAfter != null && Long.parseLong(retryAfter) >= 1, "Client should be told when to retry");
+
+        result = post("/v1/users/141/emails", createEmail(141L));
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_CREATED, "Other users should not be limited");
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles="ADMIN")
+    void givenFullMailbox_whenDraftIsSaved_thenReturnInsufficientStorage() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            MvcResult result = post("/v1/users/142/emails/drafts", createEmail(142L));
+            Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_CREATED, "Drafts within the quota should be saved");
+        }
+        MvcResult result = post("/v1/users/142/emails/drafts", createEmail(142L));
+        Assert.isTrue(result.getResponse().getStatus() == 507, "Draft over the quota should be refused, but got " + result.getResponse().getStatus());
+
+        result = post("/v1/users/142/emails/drafts/batch", List.of(createEmail(142L)));
+        Assert.isTrue(result.getResponse().getStatus() == 507, "Batch over the quota should be refused");
+    }
+
+    private MvcResult post(String path, Object body) throws Exception {
+        return mockMvc.perform(MockMvcRequestBuilders.post(path)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(body))).andReturn();
+    }
+
+    private Email createEmail(long userId) {
+        Email email = new Email();
+        email.setUserId(userId);
+        email.setRecipients(List.of(new EmailAddress("abc@mail.com", "Jane Doe")));
+        email.setSender(new EmailAddress("me@mail.com", "John Doe"));
+        email.setSubject("This is a test");
+        email.setMessage("Just testing if I can save this");
+        return email;
+    }
+}
@@ -0,0 +1,93 @@
+package com.grasp.email.controller;
+
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+import com.grasp.email.repository.EmailRepository;
+import com.grasp.email.security.TokenService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.List;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class EmailControllerSecurityIntegrationTests {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EmailRepository repository;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Test
+    void givenOwnersToken_whenInboxAndEmailAreRetrieved_thenReturnThemWithoutSession() throws Exception {
+        Email email = repository.saveEmail(createEmail(130L));
+        String token = tokenService.issue(130L, false, Duration.ofMinutes(5));
+
+        MvcResult result = get("/v1/users/130/emails/inbox", "Bearer " + token);
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_OK, "Owner should read their inbox, but got " + result.getResponse().getStatus());
+        Assert.isNull(result.getRequest().getSession(false), "No session should have been created");
+        Assert.isNull(result.getResponse().getCookie("JSESSIONID"), "No session cookie should have been set");
+
+        result = get("/v1/users/130/emails/" + email.getId(), "Bearer " + token);
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_OK, "Owner should read their email");
+    }
+
+    @Test
+    void givenAnotherUsersToken_whenInboxIsRetrieved_thenForbid() throws Exception {
+        String token = tokenService.issue(131L, false, Duration.ofMinutes(5));
+        MvcResult result = get("/v1/users/132/emails/inbox", "Bearer " + token);
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_FORBIDDEN, "Other users' inboxes should be forbidden");
+
+        result = get("/actuator/metrics", "Bearer " + token);
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_FORBIDDEN, "Administrative endpoints should be forbidden to users");
+    }
+
+    @Test
+    void givenAdminToken_whenAnyInboxIsRetrieved_thenReturnIt() throws Exception {
+        String token = tokenService.issue(1L, true, Duration.ofMinutes(5));
+        MvcResult result = get("/v1/users/133/emails/inbox", "Bearer " + token);
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_OK, "Admin should read any inbox");
+    }
+
+    @Test
+    void givenMissingOrInvalidToken_whenInboxIsRetrieved_thenReturnUnauthorized() throws Exception {
+        MvcResult result = get("/v1/users/134/emails/inbox", null);
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_UNAUTHORIZED, "Anonymous requests should be unauthorized");
+
+        result = get("/v1/users/134/emails/inbox", "Bearer invalid");
+        Assert.isTrue(result.getResponse().getStatus() == HttpServletResponse.SC_UNAUTHORIZED, "Invalid tokens should be unauthorized");
+        Assert.isTrue("Bearer".equals(result.getResponse().getHeader(HttpHeaders.WWW_AUTHENTICATE)), "Bearer authentication should be requested");
+    }
+
+    private MvcResult get(String path, String authorization) throws Exception {
+        var request = MockMvcRequestBuilders.get(path).accept(MediaType.APPLICATION_JSON);
+        if (authorization != null) {
+            request.header(HttpHeaders.AUTHORIZATION, authorization);
+        }
+        return mockMvc.perform(request).andReturn();
+    }
+
+    private Email createEmail(long userId) {
+        Email email = new Email();
+        email.setUserId(userId);
+        email.setFolder(Email.INBOX);
+        email.setRecipients(List.of(new EmailAddress("abc@mail.com", "Jane Doe")));
+        email.setSender(new EmailAddress("me@mail.com", "John Doe"));
+        email.setSubject("This is a test");
+        email.setMessage("Just testing if I can save this");
+        return email;
+    }
+}
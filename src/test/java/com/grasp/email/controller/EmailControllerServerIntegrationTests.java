@@ -0,0 +1,91 @@
+package com.grasp.email.controller;
+
+import com.grasp.email.security.TokenService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.util.Assert;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Exercises the service over a real connection, where errors are rendered by an error dispatch that MockMvc
+ * doesn't perform, so that the status and headers of each error are checked as clients receive them
+ */
+@ExtendWith(OutputCaptureExtension.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"email.limits.send.rate=0.01", "email.limits.send.burst=1"})
+class EmailControllerServerIntegrationTests {
+    private static final String EMAIL = """
+            {"recipients":[{"address":"abc@mail.com"}],"sender":{"address":"me@mail.com"},"subject":"Test","message":"Testing"}""";
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TokenService tokenService;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void givenOwnersToken_whenMissingEmailOrDraftRequested_thenReturnNotFound() throws Exception {
+        String token = tokenService.issue(150L, false, Duration.ofMinutes(5));
+        HttpResponse<String> response = send(request("/v1/users/150/emails/999999", token).GET());
+        Assert.isTrue(response.statusCode() == HttpServletResponse.SC_NOT_FOUND, "Missing email should be 404, but got " + response.statusCode());
+
+        response = send(request("/v1/users/150/emails/drafts", token)
+                .PUT(HttpRequest.BodyPublishers.ofString(EMAIL.replace("{\"recipients\"", "{\"id\":999999,\"folder\":\"drafts\",\"recipients\""))));
+        Assert.isTrue(response.statusCode() == HttpServletResponse.SC_NOT_FOUND, "Missing draft should be 404, but got " + response.statusCode());
+    }
+
+    @Test
+    void givenOwnerOverSendRate_whenEmailSent_thenReturnTooManyRequestsWithRetryAfter() throws Exception {
+        String token = tokenService.issue(151L, false, Duration.ofMinutes(5));
+        HttpResponse<String> response = send(request("/v1/users/151/emails", token).POST(HttpRequest.BodyPublishers.ofString(EMAIL)));
+        Assert.isTrue(response.statusCode() == HttpServletResponse.SC_CREATED, "First send should be accepted, but got " + response.statusCode());
+
+        response = send(request("/v1/users/151/emails", token).POST(HttpRequest.BodyPublishers.ofString(EMAIL)));
+        Assert.isTrue(response.statusCode() == 429, "Send over the rate should be 429, but got " + response.statusCode());
+        Assert.isTrue(response.headers().firstValue("Retry-After").isPresent(), "Retry-After should reach the client");
+    }
+
+    @Test
+    void givenOwnersToken_whenDraftsExported_thenStreamThemWithoutDenyingTheAsyncDispatch(CapturedOutput output) throws Exception {
+        String token = tokenService.issue(152L, false, Duration.ofMinutes(5));
+        HttpResponse<String> response = send(request("/v1/users/152/emails/drafts", token).POST(HttpRequest.BodyPublishers.ofString(EMAIL)));
+        Assert.isTrue(response.statusCode() == HttpServletResponse.SC_CREATED, "Draft should be created, but got " + response.statusCode());
+
+        response = send(request("/v1/users/152/emails/drafts/export", token).header("Accept", "application/x-ndjson").GET());
+        Assert.isTrue(response.statusCode() == HttpServletResponse.SC_OK, "Export should be 200, but got " + response.statusCode());
+        Assert.isTrue(response.body().lines().count() == 1, "Export should hold the draft");
+        // The stream is completed by an async dispatch after the body is sent, so give it time to be authorized
+        Thread.sleep(500);
+        Assert.isTrue(!output.getAll().contains("AccessDeniedException"), "Async dispatch completing the export should have been allowed");
+    }
+
+    @Test
+    void givenNoToken_whenHealthRequested_thenReturnHealth() throws Exception {
+        HttpResponse<String> response = send(request("/actuator/health", null).GET());
+        Assert.isTrue(response.statusCode() == HttpServletResponse.SC_OK, "Health should be open to probes, but got " + response.statusCode());
+    }
+
+    private HttpRequest.Builder request(String path, String token) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Accept", "application/json")
+                .header("Content-Type", "application/json");
+        return token == null ? request : request.header("Authorization", "Bearer " + token);
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws Exception {
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -3,6 +3,7 @@ package com.grasp.email.controller;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.grasp.email.model.Email;
 import com.grasp.email.model.EmailAddress;
+import com.grasp.email.model.FolderVersion;
 import com.grasp.email.service.EmailService;
 import io.restassured.path.json.JsonPath;
 import jakarta.servlet.http.HttpServletResponse;
@@ -20,7 +21,6 @@ import org.springframework.test.web.servlet.RequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.util.Assert;
 
-import java.math.BigInteger;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -39,8 +39,9 @@ class EmailControllerUnitTests {
     @Test
     @WithMockUser(username = "admin", roles="ADMIN")
     void givenUserExists_whenNewUserInboxIsRetrieved_thenReturnNoEmails() throws Exception {
-        Mockito.when(mockService.getInbox(BigInteger.ONE)).thenReturn(Collections.emptyList());
-        final BigInteger userId = BigInteger.ONE;
+        Mockito.when(mockService.getInboxVersion(1L)).thenReturn(FolderVersion.EMPTY);
+        Mockito.when(mockService.getInbox(1L)).thenReturn(Collections.emptyList());
+        final long userId = 1L;
 
         RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/v1/users/1/emails/inbox").accept(MediaType.APPLICATION_JSON);
         MvcResult result = mockMvc.perform(requestBuilder).andReturn();
@@ -55,8 +56,9 @@ class EmailControllerUnitTests {
     @Test
     @WithMockUser(username = "admin", roles="ADMIN")
     void givenUserExists_whenUserInboxIsRetrieved_thenReturn3Emails() throws Exception {
-		Mockito.when(mockService.getInbox(BigInteger.ONE)).thenReturn(List.of(new Email(), new Email(), new Email()));
-        final BigInteger userId = BigInteger.TEN;
+		Mockito.when(mockService.getInboxVersion(1L)).thenReturn(FolderVersion.EMPTY);
+		Mockito.when(mockService.getInbox(1L)).thenReturn(List.of(new Email(), new Email(), new Email()));
+        final long userId = 10L;
 
         RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/v1/users/1/emails/inbox").accept(MediaType.APPLICATION_JSON);
         MvcResult result = mockMvc.perform(requestBuilder).andReturn();
@@ -72,13 +74,13 @@ class EmailControllerUnitTests {
     @WithMockUser(username = "admin", roles="ADMIN")
     @AutoConfigureMockMvc(addFilters = false)
     void givenUserExists_whenDraftEmailIsSaved_thenReturnDraftIdentifier() throws Exception {
-        Mockito.when(mockService.createDraft(Mockito.any(BigInteger.class), Mockito.any(Email.class))).thenAnswer(i -> {
+        Mockito.when(mockService.createDraft(Mockito.anyLong(), Mockito.any(Email.class))).thenAnswer(i -> {
             Email email = i.getArgument(1, Email.class);
-            email.setId(BigInteger.TEN);
+            email.setId(10L);
             email.setFolder(Email.DRAFTS);
             return email;
         });
-        final BigInteger userId = BigInteger.ONE;
+        final long userId = 1L;
 
         Email email = createEmail(userId);
         String body =  toJson(email);
@@ -97,8 +99,8 @@ class EmailControllerUnitTests {
     @Test
     @WithMockUser(username = "admin", roles="ADMIN")
     void givenUserDoesntExist_whenEmailRequested_thenResourceNotFound() throws Exception {
-        Mockito.when(mockService.get(Mockito.any(BigInteger.class), Mockito.any(BigInteger.class))).thenReturn(null);
-        final BigInteger userId = BigInteger.ONE;
+        Mockito.when(mockService.get(Mockito.anyLong(), Mockito.anyLong())).thenReturn(null);
+        final long userId = 1L;
 
         Email email = createEmail(userId);
         String body =  toJson(email);
@@ -115,7 +117,7 @@ class EmailControllerUnitTests {
      * @param userId User identifier
      * @return New {@link} Email
      */
-    private Email createEmail(BigInteger userId) {
+    private Email createEmail(long userId) {
         Email email = new Email();
         email.setUserId(userId);
         email.setRecipients(List.of(new EmailAddress("abc@mail.com", "Jane Doe"), new EmailAddress("def@mail.com", null)));
@@ -0,0 +1,114 @@
+package com.grasp.email.controller;
+
+import com.grasp.email.EmailApplication;
+import com.grasp.email.model.Changes;
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+import com.grasp.email.repository.InMemoryEmailShard;
+import com.grasp.email.repository.RemoteEmailShard;
+import com.grasp.email.repository.ShardedEmailRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a second instance of the service as a shard, as a separate process would, and partitions mailboxes
+ * between it and a local shard
+ */
+class ShardControllerIntegrationTests {
+    private static ConfigurableApplicationContext shardProcess;
+    private static String url;
+
+    @BeforeAll
+    static void startShard() {
+        shardProcess = new SpringApplicationBuilder(EmailApplication.class)
+                .run("--server.port=0",
+                        "--email.shard.server.enabled=true",
+                        "--email.repository.shard-index=1",
+                        "--spring.security.user.name=shard",
+                        "--spring.security.user.password=secret");
+        url = "http://localhost:" + shardProcess.getEnvironment().getProperty("local.server.port");
+    }
+
+    @AfterAll
+    static void stopShard() {
+        shardProcess.close();
+    }
+
+    @Test
+    void givenRemoteShard_whenEmailsSavedAndChanged_thenServeThemFromTheShardProcess() {
+        RemoteEmailShard remote = createRemoteShard("secret");
+        Email saved = remote.saveEmail(createEmail(800L, Email.DRAFTS));
+        Assert.isTrue(saved.getId() >= ShardedEmailRepository.firstIdOf(1) && saved.getVersion() == 1L, "Email should be stored with the shard's identifiers");
+
+        Email moved = remote.moveEmail(800L, saved.getId(), Email.DRAFTS, Email.OUTBOX);
+        Assert.isTrue(moved != null && Email.OUTBOX.equals(moved.getFolder()), "Email should have been moved");
+        Assert.isNull(remote.moveEmail(800L, saved.getId(), Email.DRAFTS, Email.OUTBOX), "Email no longer in drafts should not be moved");
+        Assert.isNull(remote.getEmailForUserIdAndEmailId(800L, saved.getId() + 1), "Unknown email should not be found");
+
+        saved.setVersion(1L);
+        Assertions.assertThrows(IllegalStateException.class, () -> remote.replaceEmail(saved, Email.OUTBOX), "Stale version should conflict");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> remote.getChangesForUserId(800L, "not a token"), "Invalid token should be rejected");
+        Changes changes = remote.getChangesForUserId(800L, null);
+        Assert.isTrue(changes.isResync() && changes.getNextToken() != null, "Changes should be read from the shard");
+        Assert.isTrue(!"0".equals(remote.getFolderVersionForUserId(800L, Email.OUTBOX).getTag()), "Folder version should be read from the shard");
+    }
+
+    @Test
+    void givenWrongPassword_whenShardCalled_thenRejectRequest() {
+        RemoteEmailShard remote = createRemoteShard("wrong");
+        Assertions.assertThrows(RuntimeException.class, () -> remote.getInboxForUserId(801L), "Shard should require its credentials");
+    }
+
+    @Test
+    void givenLocalShard_whenRemoteShardAdded_thenMoveMailboxesToTheShardProcess() {
+        ShardedEmailRepository repository = new ShardedEmailRepository(List.of(new InMemoryEmailShard(null, ShardedEmailRepository.firstIdOf(0))));
+        List<Email> batch = new ArrayList<>();
+        for (long userId = 810L; userId < 850L; userId++) {
+            batch.add(createEmail(userId, Email.INBOX));
+            batch.add(createEmail(userId, Email.INBOX));
+        }
+        repository.saveAll(batch);
+
+        RemoteEmailShard remote = createRemoteShard("secret");
+        repository.addShard(remote);
+        Assert.isTrue(!remote.getUserIds().isEmpty(), "Some mailboxes should have moved to the shard process");
+
+        for (long userId = 810L; userId < 850L; userId++) {
+            List<Email> inbox = repository.getInboxForUserId(userId);
+            Assert.isTrue(inbox.size() == 2, "Inbox of user " + userId + " should have moved intact");
+            Assert.isTrue(inbox.stream().allMatch(v -> v.getVersion() == 1L), "Emails should keep their versions");
+        }
+        List<Email> delivery = new ArrayList<>();
+        for (long userId = 810L; userId < 850L; userId++) {
+            delivery.add(createEmail(userId, Email.INBOX));
+        }
+        repository.saveAll(delivery);
+        Assert.isTrue(delivery.stream().allMatch(v -> v.getId() != null && v.getVersion() == 1L), "Batch should have been saved across both shards");
+        Assert.isTrue(repository.getInboxForUserId(849L).size() == 3, "Delivered email should be in the inbox");
+    }
+
+    private static RemoteEmailShard createRemoteShard(String password) {
+        return new RemoteEmailShard(new RestTemplateBuilder(), url, "shard", password, Duration.ofSeconds(5));
+    }
+
+    private static Email createEmail(long userId, String folder) {
+        Email email = new Email();
+        email.setUserId(userId);
+        email.setFolder(folder);
+        email.setRecipients(List.of(new EmailAddress("abc@mail.com", "Jane Doe")));
+        email.setSender(new EmailAddress("me@mail.com", "John Doe"));
+        email.setSubject("This is a test");
+        email.setMessage("Just testing if I can save this");
+        return email;
+    }
+}
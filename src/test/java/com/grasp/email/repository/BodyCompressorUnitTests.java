@@ -0,0 +1,27 @@
+package com.grasp.email.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+
+class BodyCompressorUnitTests {
+    private final BodyCompressor compressor = new BodyCompressor(64, 6);
+
+    @Test
+    void givenLongBody_whenCompressed_thenDecompressToOriginal() {
+        String body = "Hi all,\n\nPlease find attached the quarterly report. Let me know if you have any questions. Café ☕ 😀\n".repeat(20);
+
+        byte[] compressed = compressor.compress(body);
+        Assert.notNull(compressed, "Long body should have been compressed");
+        Assert.isTrue(compressed.length * 4 < body.length(), "Repetitive body should compress at least 4 to 1");
+        Assert.isTrue(body.equals(compressor.decompress(compressed)), "Body should decompress to the original");
+        Assert.isTrue(Arrays.equals(compressed, compressor.compress(body)), "Compression should be deterministic");
+    }
+
+    @Test
+    void givenBodyBelowThreshold_whenCompressed_thenLeaveUncompressed() {
+        Assert.isNull(compressor.compress("Short body"), "Short body should not have been compressed");
+        Assert.isNull(compressor.compress(null), "Missing body should not have been compressed");
+    }
+}
@@ -0,0 +1,82 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ContentStoreUnitTests {
+    @Test
+    void givenEqualContentStoredConcurrently_whenAcquired_thenShareOneCompressedCopy() throws Exception {
+        final int threads = 8;
+        ContentStore store = new ContentStore(new BodyCompressor(64, 6));
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<MessageContent> acquired = new ArrayList<>();
+        try {
+            List<Future<MessageContent>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return store.acquire(MessageContent.of(createEmail()));
+                }));
+            }
+            start.countDown();
+            for (Future<MessageContent> future : futures) {
+                acquired.add(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        MessageContent shared = acquired.get(0);
+        Assert.isTrue(acquired.stream().allMatch(v -> v == shared), "Every thread should share the same copy");
+        Assert.isTrue(store.size() == 1 && shared.references == threads, "Content should be held once with a reference per thread");
+        Assert.isTrue(shared.getCompressedLength() > 0 && store.getCompressionRatio() > 1, "Shared copy should be compressed and counted once");
+        Assert.isTrue(shared.getMessage().equals(createEmail().getMessage()), "Shared copy should decompress to the original body");
+
+        acquired.forEach(store::release);
+        Assert.isTrue(store.size() == 0 && store.getEstimatedBytes() == 0, "Content should be freed with its last reference");
+    }
+
+    @Test
+    void givenCompactedCopyStored_whenEqualContentAcquired_thenMatchWithoutDecompressing() {
+        AtomicInteger decompressions = new AtomicInteger();
+        ContentStore store = new ContentStore(new BodyCompressor(64, 6) {
+            @Override
+            String decompress(byte[] compressed) {
+                decompressions.incrementAndGet();
+                return super.decompress(compressed);
+            }
+        });
+        MessageContent shared = store.acquire(MessageContent.of(createEmail()));
+        Assert.isTrue(shared.getCompressedLength() > 0, "Stored copy should be compressed");
+
+        for (int i = 0; i < 5; i++) {
+            Assert.isTrue(store.acquire(MessageContent.of(createEmail())) == shared, "Equal content should share the stored copy");
+        }
+        Email other = createEmail();
+        other.setMessage(other.getMessage().replace("report", "budget"));
+        Assert.isTrue(store.acquire(MessageContent.of(other)) != shared, "Different body of the same length should not be shared");
+        Assert.isTrue(decompressions.get() == 0, "Matching should not have decompressed the stored copy, but did " + decompressions.get() + " times");
+    }
+
+    private static Email createEmail() {
+        Email email = new Email();
+        email.setUserId(1L);
+        email.setFolder(Email.INBOX);
+        email.setRecipients(List.of(new EmailAddress("abc@mail.com", "Jane Doe")));
+        email.setSender(new EmailAddress("me@mail.com", "John Doe"));
+        email.setSubject("Quarterly report");
+        email.setMessage("Please find attached the quarterly report. Let me know if you have any questions.\n".repeat(10));
+        return email;
+    }
+}
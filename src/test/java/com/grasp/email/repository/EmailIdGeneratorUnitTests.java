@@ -0,0 +1,48 @@
+package com.grasp.email.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+class EmailIdGeneratorUnitTests {
+    @Test
+    void givenSeveralThreads_whenIdentifiersAreAllocated_thenAllIdentifiersAreUnique() throws Exception {
+        final int threads = 8;
+        final int perThread = EmailIdGenerator.BLOCK_SIZE * 3 + 7;
+        EmailIdGenerator generator = new EmailIdGenerator();
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    ids.add(generator.next());
+                }
+            });
+        }
+        executor.shutdown();
+        Assert.isTrue(executor.awaitTermination(30, TimeUnit.SECONDS), "Allocation should have completed");
+        Assert.isTrue(ids.size() == threads * perThread, "Every allocated identifier should be unique");
+        Assert.isTrue(!ids.contains(0L), "Identifiers should start from 1");
+    }
+
+    @Test
+    void givenShortLivedThreads_whenIdentifiersAreAllocated_thenShareReservedBlocks() throws Exception {
+        final int threads = 4000;
+        EmailIdGenerator generator = new EmailIdGenerator();
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> ids.add(generator.next()));
+            thread.start();
+            thread.join();
+        }
+        Assert.isTrue(ids.size() == threads, "Every allocated identifier should be unique");
+        Assert.isTrue(generator.getReservationCount() < threads / 2, "Each thread should not have reserved a block of its own");
+    }
+}
@@ -0,0 +1,86 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stress test of a single mailbox under concurrent sends, folder moves and reads. Throughput scaling with
+ * thread count is measured separately by {@link com.grasp.email.benchmark.MailboxConcurrencyBenchmark}
+ */
+class InMemoryEmailRepositoryConcurrencyTests {
+    private static final int THREADS = 8;
+    private static final int SENDS_PER_THREAD = 2000;
+
+    @Test
+    void givenConcurrentSendsAndReads_whenEmailsAreMoved_thenEveryReadIsConsistent() throws Exception {
+        final long userId = 400L;
+        InMemoryEmailRepository repository = new InMemoryEmailRepository();
+        ConcurrentLinkedQueue<Long> sent = new ConcurrentLinkedQueue<>();
+        AtomicLong latest = new AtomicLong();
+        AtomicReference<String> failure = new AtomicReference<>();
+        CountDownLatch writersDone = new CountDownLatch(THREADS);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS * 2);
+        for (int t = 0; t < THREADS; t++) {
+            executor.submit(() -> {
+                try {
+                    for (int i = 0; i < SENDS_PER_THREAD; i++) {
+                        Email email = repository.saveEmail(createEmail(userId, Email.OUTBOX));
+                        if (repository.moveEmail(userId, email.getId(), Email.OUTBOX, Email.SENT) == null) {
+                            failure.compareAndSet(null, "Email " + email.getId() + " should have been moved");
+                        }
+                        sent.add(email.getId());
+                        latest.set(email.getId());
+                    }
+                } finally {
+                    writersDone.countDown();
+                }
+            });
+            executor.submit(() -> {
+                while (writersDone.getCount() > 0) {
+                    long id = latest.get();
+                    if (id != 0) {
+                        Email email = repository.getEmailForUserIdAndEmailId(userId, id);
+                        if (email == null || !Email.SENT.equals(email.getFolder()) || !"This is a test".equals(email.getSubject())) {
+                            failure.compareAndSet(null, "Inconsistent read of email " + id + ": " + email);
+                        }
+                    }
+                    for (Email email : repository.getInboxForUserId(userId)) {
+                        failure.compareAndSet(null, "Inbox should never contain email " + email.getId());
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        Assert.isTrue(executor.awaitTermination(60, TimeUnit.SECONDS), "Stress test should have completed");
+        Assert.isNull(failure.get(), String.valueOf(failure.get()));
+
+        Assert.isTrue(sent.size() == THREADS * SENDS_PER_THREAD, "Every email should have been sent");
+        for (Long id : sent) {
+            Email email = repository.getEmailForUserIdAndEmailId(userId, id);
+            Assert.isTrue(Email.SENT.equals(email.getFolder()) && email.getVersion() == 2L, "Email " + id + " should have been saved then moved once");
+        }
+    }
+
+    private Email createEmail(long userId, String folder) {
+        Email email = new Email();
+        email.setUserId(userId);
+        email.setFolder(folder);
+        email.setRecipients(List.of(new EmailAddress("abc@mail.com", "Jane Doe")));
+        email.setSender(new EmailAddress("me@mail.com", "John Doe"));
+        email.setSubject("This is a test");
+        email.setMessage("Just testing if I can save this");
+        return email;
+    }
+}
@@ -0,0 +1,331 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.Changes;
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailChange;
+import com.grasp.email.model.EmailAddress;
+import com.grasp.email.model.EmailSummary;
+import com.grasp.email.model.MailboxUsage;
+import com.grasp.email.model.Page;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+
+class InMemoryEmailRepositoryUnitTests {
+    private final InMemoryEmailRepository repository = new InMemoryEmailRepository();
+
+    @Test
+    void givenEmailsInSeveralFolders_whenInboxIsRetrieved_thenReturnOnlyInboxEmails() {
+        final long userId = 200L;
+        repository.saveEmail(createEmail(userId, Email.INBOX));
+        repository.saveEmail(createEmail(userId, Email.INBOX));
+        repository.saveEmail(createEmail(userId, Email.DRAFTS));
+        repository.saveEmail(createEmail(userId, Email.SENT));
+
+        List<Email> inbox = repository.getInboxForUserId(userId);
+        Assert.isTrue(inbox.size() == 2, "User should have 2 emails in their inbox");
+        Assert.isTrue(inbox.stream().allMatch(v -> Email.INBOX.equals(v.getFolder())), "Only inbox emails should be returned");
+    }
+
+    @Test
+    void givenEmailInInbox_whenSameInstanceIsMovedAndSaved_thenRemoveFromInbox() {
+        final long userId = 201L;
+        Email email = repository.saveEmail(createEmail(userId, Email.INBOX));
+        Assert.isTrue(repository.getInboxForUserId(userId).size() == 1, "Email should be in the inbox");
+
+        email.setFolder(Email.SENT);
+        repository.saveEmail(email);
+        Assert.isTrue(repository.getInboxForUserId(userId).isEmpty(), "Email should no longer be in the inbox");
+        Assert.notNull(repository.getEmailForUserIdAndEmailId(userId, email.getId()), "Email should still exist");
+    }
+
+    @Test
+    void givenInboxOf5Emails_whenPagedBy2_thenReturnAllEmailsNewestFirst() {
+        final long userId = 202L;
+        for (int i = 0; i < 5; i++) {
+            repository.saveEmail(createEmail(userId, Email.INBOX));
+        }
+
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            Page<Email> page = repository.getInboxForUserId(userId, 2, cursor);
+            page.getItems().forEach(v -> ids.add(v.getId()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        Assert.isTrue(pages == 3, "Inbox should have been returned in 3 pages");
+        Assert.isTrue(ids.size() == 5, "All 5 emails should have been returned");
+        List<Long> sorted = new ArrayList<>(ids);
+        sorted.sort(Comparator.reverseOrder());
+        Assert.isTrue(ids.equals(sorted), "Emails should be returned newest first");
+    }
+
+    @Test
+    void givenInvalidCursor_whenInboxPageIsRetrieved_thenRejectCursor() {
+        final long userId = 203L;
+        repository.saveEmail(createEmail(userId, Email.INBOX));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> repository.getInboxForUserId(userId, 10, "not a cursor"));
+    }
+
+    @Test
+    void givenSameMessageForSeveralUsers_whenSaved_thenStoreContentOnce() {
+        for (long userId = 204L; userId < 207L; userId++) {
+            repository.saveEmail(createEmail(userId, Email.INBOX));
+        }
+        Assert.isTrue(repository.getDistinctMessageCount() == 1, "Identical messages should share one stored content");
+
+        Email email = repository.getInboxForUserId(204L).get(0);
+        email.setMessage("Edited");
+        repository.saveEmail(email);
+        Assert.isTrue(repository.getDistinctMessageCount() == 2, "Edited message should be stored separately");
+        Assert.isTrue("Just testing if I can save this".equals(repository.getInboxForUserId(205L).get(0).getMessage()), "Other mailboxes should be unaffected by the edit");
+
+        email.setMessage("Edited again");
+        repository.saveEmail(email);
+        Assert.isTrue(repository.getDistinctMessageCount() == 2, "Unreferenced content should have been freed");
+    }
+
+    @Test
+    void givenEmailInOutbox_whenMovedToSent_thenMoveAtomicallyAndKeepContent() {
+        final long userId = 207L;
+        Email email = repository.saveEmail(createEmail(userId, Email.OUTBOX));
+
+        Email moved = repository.moveEmail(userId, email.getId(), Email.OUTBOX, Email.SENT);
+        Assert.isTrue(Email.SENT.equals(moved.getFolder()), "Email should have been moved to the sent folder");
+        Assert.isTrue(moved.getVersion() == email.getVersion() + 1, "Move should have produced a new version");
+        Assert.isTrue("This is a test".equals(moved.getSubject()), "Move should have kept the content");
+        Assert.isNull(repository.moveEmail(userId, email.getId(), Email.OUTBOX, Email.SENT), "Email is no longer in the outbox to move");
+    }
+
+    @Test
+    void givenStaleDraftVersion_whenDraftIsReplaced_thenRejectReplacement() {
+        final long userId = 208L;
+        Email draft = repository.saveEmail(createEmail(userId, Email.DRAFTS));
+        long version = draft.getVersion();
+
+        draft.setSubject("First edit");
+        Assert.notNull(repository.replaceEmail(draft, Email.DRAFTS), "Current version should be replaced");
+
+        draft.setVersion(version);
+        draft.setSubject("Stale edit");
+        Assertions.assertThrows(IllegalStateException.class, () -> repository.replaceEmail(draft, Email.DRAFTS));
+        Assert.isTrue("First edit".equals(repository.getEmailForUserIdAndEmailId(userId, draft.getId()).getSubject()), "Stale edit should not have been stored");
+
+        repository.moveEmail(userId, draft.getId(), Email.DRAFTS, Email.SENT);
+        draft.setVersion(null);
+        Assertions.assertThrows(IllegalStateException.class, () -> repository.replaceEmail(draft, Email.DRAFTS));
+    }
+
+    @Test
+    void givenEmailsInSeveralFolders_whenSearched_thenReturnMatchesRankedAndFiltered() {
+        final long userId = 209L;
+        Email inBody = createEmail(userId, Email.INBOX);
+        inBody.setSubject("Weekly update");
+        inBody.setMessage("The quarterly report is attached");
+        repository.saveEmail(inBody);
+        Email inSubject = createEmail(userId, Email.INBOX);
+        inSubject.setSubject("Quarterly report");
+        repository.saveEmail(inSubject);
+        Email draft = createEmail(userId, Email.DRAFTS);
+        draft.setSubject("Draft quarterly report");
+        repository.saveEmail(draft);
+        repository.saveEmail(createEmail(userId, Email.INBOX));
+
+        Page<EmailSummary> all = repository.searchForUserId(userId, "Quarterly REPORT", null, 10, null);
+        Assert.isTrue(all.getItems().size() == 3, "All 3 emails mentioning the report should match");
+        Assert.isTrue(all.getItems().get(2).getId().equals(inBody.getId()), "Body matches should rank below subject matches");
+
+        Page<EmailSummary> inbox = repository.searchForUserId(userId, "quarterly report", Email.INBOX, 1, null);
+        Assert.isTrue(inbox.getItems().get(0).getId().equals(inSubject.getId()), "Best inbox match should come first");
+        inbox = repository.searchForUserId(userId, "quarterly report", Email.INBOX, 1, inbox.getNextCursor());
+        Assert.isTrue(inbox.getItems().get(0).getId().equals(inBody.getId()), "Second page should hold the next match");
+        Assert.isNull(inbox.getNextCursor(), "Drafts should not have been searched");
+
+        Assert.isTrue(repository.searchForUserId(userId, "abc@mail.com", null, 10, null).getItems().size() == 4, "Recipient address should match");
+        Assert.isTrue(repository.searchForUserId(userId, "quarterly missing", null, 10, null).getItems().isEmpty(), "Every term should have to match");
+    }
+
+    @Test
+    void givenIndexedDraft_whenReplacedAndMoved_thenSearchReflectsChanges() {
+        final long userId = 210L;
+        Email draft = repository.saveEmail(createEmail(userId, Email.DRAFTS));
+        draft.setSubject("Holiday plans");
+        repository.replaceEmail(draft, Email.DRAFTS);
+
+        Assert.isTrue(repository.searchForUserId(userId, "test", null, 10, null).getItems().isEmpty(), "Replaced subject should no longer match");
+        Assert.isTrue(repository.searchForUserId(userId, "holiday", Email.DRAFTS, 10, null).getItems().size() == 1, "New subject should match");
+
+        repository.moveEmail(userId, draft.getId(), Email.DRAFTS, Email.SENT);
+        Assert.isTrue(repository.searchForUserId(userId, "holiday", Email.DRAFTS, 10, null).getItems().isEmpty(), "Moved email should not be in drafts");
+        Assert.isTrue(repository.searchForUserId(userId, "holiday", Email.SENT, 10, null).getItems().size() == 1, "Moved email should be found in sent");
+    }
+
+    @Test
+    void givenBatchForSeveralUsers_whenSavedTogether_thenAllocateConsecutiveIdsAndStoreEach() {
+        Email existing = repository.saveEmail(createEmail(211L, Email.DRAFTS));
+        existing.setFolder(Email.SENT);
+        List<Email> batch = List.of(createEmail(211L, Email.INBOX), createEmail(212L, Email.INBOX), existing, createEmail(211L, Email.INBOX));
+
+        repository.saveAll(batch);
+        Assert.isTrue(batch.get(1).getId() == batch.get(0).getId() + 1 && batch.get(3).getId() == batch.get(0).getId() + 2, "New emails should have consecutive identifiers");
+        Assert.isTrue(existing.getVersion() == 2, "Existing email should have a new version");
+        Assert.isTrue(repository.getInboxForUserId(211L).size() == 2, "Both of the first user's emails should be in their inbox");
+        Assert.isTrue(repository.getInboxForUserId(212L).size() == 1, "Second user's email should be in their inbox");
+        Assert.isTrue(Email.SENT.equals(repository.getEmailForUserIdAndEmailId(211L, existing.getId()).getFolder()), "Existing email should have been moved");
+    }
+
+    @Test
+    void givenCompressingRepository_whenLongBodiesSaved_thenShareCompressedContentAndReadOriginalBody() {
+        InMemoryEmailRepository compressing = new InMemoryEmailRepository(new BodyCompressor(64, 6));
+        String body = "Please find the minutes of today's meeting below.\n".repeat(40) + "Action: renew the licence";
+        List<Email> copies = new ArrayList<>();
+        for (long userId = 213L; userId < 216L; userId++) {
+            Email email = createEmail(userId, Email.INBOX);
+            email.setMessage(body);
+            copies.add(email);
+        }
+        compressing.saveAll(copies);
+
+        Assert.isTrue(compressing.getDistinctMessageCount() == 1, "Compressed copies should share one stored content");
+        Email email = compressing.getEmailForUserIdAndEmailId(214L, copies.get(1).getId());
+        Assert.isTrue(body.equals(email.getMessage()), "Body should be read back uncompressed");
+        Assert.isTrue(compressing.getInboxSummariesForUserId(214L).get(0).getSnippet().startsWith("Please find the minutes"), "Summary should carry the snippet");
+        Assert.isTrue(compressing.searchForUserId(215L, "licence", null, 10, null).getItems().size() == 1, "Compressed body should be searchable");
+    }
+
+    @Test
+    void givenChangesSinceToken_whenChangesAreRetrieved_thenReturnLatestChangeToEachEmail() {
+        final long userId = 216L;
+        Email kept = repository.saveEmail(createEmail(userId, Email.INBOX));
+        Changes initial = repository.getChangesForUserId(userId, null);
+        Assert.isTrue(initial.isResync() && initial.getChanges().isEmpty(), "Client holding nothing should be told to resync");
+
+        Email draft = repository.saveEmail(createEmail(userId, Email.DRAFTS));
+        repository.moveEmail(userId, draft.getId(), Email.DRAFTS, Email.SENT);
+        Email received = repository.saveEmail(createEmail(userId, Email.INBOX));
+        Changes changes = repository.getChangesForUserId(userId, initial.getNextToken());
+        Assert.isTrue(!changes.isResync(), "Recent changes should be known");
+        Assert.isTrue(changes.getChanges().size() == 2, "Only the latest change to each email should be returned");
+        EmailChange moved = changes.getChanges().get(0);
+        Assert.isTrue(moved.getId().equals(draft.getId()) && Email.SENT.equals(moved.getFolder()) && moved.getVersion() == 2L, "Move should be reported with the email's folder and version");
+        Assert.isTrue(changes.getChanges().get(1).getId().equals(received.getId()), "Changes should be returned oldest first");
+        Assert.isTrue(changes.getChanges().stream().noneMatch(v -> v.getId().equals(kept.getId())), "Emails unchanged since the token should not be returned");
+
+        Changes none = repository.getChangesForUserId(userId, changes.getNextToken());
+        Assert.isTrue(none.getChanges().isEmpty() && none.getNextToken().equals(changes.getNextToken()), "No changes should be returned for an up to date client");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> repository.getChangesForUserId(userId, "not-a-token"));
+    }
+
+    @Test
+    void givenTokenFromBeforeMailboxExisted_whenChangesAreRetrievedAfterFirstWrite_thenReturnEveryChange() {
+        final long userId = 221L;
+        Changes empty = repository.getChangesForUserId(userId, null);
+        Assert.isTrue(empty.isResync() && empty.getChanges().isEmpty(), "Client holding nothing should be told to resync");
+
+        Email first = repository.saveEmail(createEmail(userId, Email.INBOX));
+        Changes changes = repository.getChangesForUserId(userId, empty.getNextToken());
+        Assert.isTrue(!changes.isResync() && changes.getChanges().size() == 1, "Every write since the mailbox was created should be returned");
+        Assert.isTrue(changes.getChanges().get(0).getId().equals(first.getId()), "First email should be returned");
+    }
+
+    @Test
+    void givenCursorBeyondMatches_whenSearched_thenRejectCursor() {
+        final long userId = 222L;
+        repository.saveEmail(createEmail(userId, Email.INBOX));
+        String cursor = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                Long.toString(Integer.MAX_VALUE - 10, Character.MAX_RADIX).getBytes(StandardCharsets.US_ASCII));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> repository.searchForUserId(userId, "test", null, 10, cursor));
+    }
+
+    @Test
+    void givenEmailsRemovedFromIndex_whenTermsNoLongerHeld_thenDropThemFromDictionary() {
+        SearchIndex index = new SearchIndex();
+        Email email = createEmail(223L, Email.INBOX);
+        for (long sequence = 1; sequence <= 100; sequence++) {
+            email.setSubject("Ticket " + sequence);
+            index.add(sequence, MessageContent.of(email), email.getMessage());
+        }
+        int shared = index.getTermCount() - 100;
+        for (long sequence = 1; sequence <= 99; sequence++) {
+            index.remove(sequence);
+        }
+        Assert.isTrue(index.getTermCount() == shared + 1, "Only the terms of the remaining email should be held, but " + index.getTermCount() + " are");
+        email.setSubject("Ticket 101");
+        index.add(101, MessageContent.of(email), email.getMessage());
+        Assert.isTrue(index.search("101").count() == 1 && index.search("100").count() == 1 && index.search("5").count() == 0, "Reused term numbers should index the new terms");
+    }
+
+    @Test
+    void givenTokenOlderThanJournal_whenChangesAreRetrieved_thenRequireResync() {
+        final long userId = 217L;
+        repository.saveEmail(createEmail(userId, Email.INBOX));
+        String token = repository.getChangesForUserId(userId, null).getNextToken();
+        for (int i = 0; i < Mailbox.JOURNAL_CAPACITY; i++) {
+            repository.saveEmail(createEmail(userId, Email.INBOX));
+        }
+        Changes changes = repository.getChangesForUserId(userId, token);
+        Assert.isTrue(!changes.isResync() && changes.getChanges().size() == Mailbox.JOURNAL_CAPACITY, "Changes filling the journal should be known");
+
+        repository.saveEmail(createEmail(userId, Email.INBOX));
+        changes = repository.getChangesForUserId(userId, token);
+        Assert.isTrue(changes.isResync() && changes.getChanges().isEmpty(), "Client should resync once its changes have left the journal");
+        InMemoryEmailRepository rebuilt = new InMemoryEmailRepository();
+        rebuilt.saveEmail(createEmail(userId, Email.INBOX));
+        Assert.isTrue(rebuilt.getChangesForUserId(userId, changes.getNextToken()).isResync(), "Token from another instance of the mailbox should need a resync");
+    }
+
+    @Test
+    void givenEmailsSavedReplacedAndMoved_whenUsageIsRetrieved_thenCountEachEmailOnceAtItsCurrentSize() {
+        final long userId = 218L;
+        Assert.isTrue(repository.getUsageForUserId(userId).getEmails() == 0, "User without a mailbox should use nothing");
+        Email draft = repository.saveEmail(createEmail(userId, Email.DRAFTS));
+        repository.saveEmail(createEmail(userId, Email.INBOX));
+        MailboxUsage usage = repository.getUsageForUserId(userId);
+        Assert.isTrue(usage.getEmails() == 2 && usage.getBytes() > 0, "Both emails should be counted");
+
+        draft.setMessage(draft.getMessage().repeat(10));
+        repository.replaceEmail(draft, Email.DRAFTS);
+        MailboxUsage replaced = repository.getUsageForUserId(userId);
+        Assert.isTrue(replaced.getEmails() == 2 && replaced.getBytes() > usage.getBytes(), "Replacing should charge the new size rather than add an email");
+
+        repository.moveEmail(userId, draft.getId(), Email.DRAFTS, Email.SENT);
+        Assert.isTrue(repository.getUsageForUserId(userId).equals(replaced), "Moving should not change usage");
+    }
+
+    @Test
+    void givenEmailsSharingAddresses_whenSaved_thenHoldOneInstanceOfEachAddress() {
+        Email first = repository.saveEmail(createEmail(219L, Email.INBOX));
+        Email second = createEmail(220L, Email.SENT);
+        second.setSubject("A different message");
+        second.setCarbonCopies(List.of(new EmailAddress("abc@mail.com", "Jane Doe")));
+        repository.saveEmail(second);
+
+        Email stored = repository.getEmailForUserIdAndEmailId(220L, second.getId());
+        Email other = repository.getEmailForUserIdAndEmailId(219L, first.getId());
+        Assert.isTrue(stored.getSender() == other.getSender(), "Sender should be interned across messages");
+        Assert.isTrue(stored.getCarbonCopies().get(0) == other.getRecipients().get(0), "Address should be interned across lists and messages");
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> stored.getRecipients().add(new EmailAddress("x@mail.com", null)),
+                "Stored address lists should be read only");
+    }
+
+    private Email createEmail(long userId, String folder) {
+        Email email = new Email();
+        email.setUserId(userId);
+        email.setFolder(folder);
+        email.setRecipients(List.of(new EmailAddress("abc@mail.com", "Jane Doe")));
+        email.setSender(new EmailAddress("me@mail.com", "John Doe"));
+        email.setSubject("This is a test");
+        email.setMessage("Just testing if I can save this");
+        return email;
+    }
+}
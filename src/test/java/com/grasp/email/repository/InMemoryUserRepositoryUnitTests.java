@@ -0,0 +1,28 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.User;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+class InMemoryUserRepositoryUnitTests {
+    private final InMemoryUserRepository repository = new InMemoryUserRepository();
+
+    @Test
+    void givenRegisteredAddress_whenAnotherUserSavedWithIt_thenRefuseAndKeepOwner() {
+        User owner = repository.saveUser(new User(null, "Jane", "Doe", "jane@mail.com"));
+        Assertions.assertThrows(IllegalStateException.class, () -> repository.saveUser(new User(null, "Joe", "Bloggs", "JANE@mail.com")),
+                "Address should not be taken over");
+        Assert.isTrue(repository.getUserForAddress("jane@mail.com") == owner, "Address should still deliver to its owner");
+
+        owner.setSurname("Smith");
+        Assert.isTrue(repository.saveUser(owner) == owner, "Owner should be able to save themselves again");
+    }
+
+    @Test
+    void givenUserWithExplicitId_whenAnotherIsAllocatedOne_thenAllocatePastIt() {
+        repository.saveUser(new User(5L, "Jane", "Doe", "jane@mail.com"));
+        User allocated = repository.saveUser(new User(null, "Joe", "Bloggs", "joe@mail.com"));
+        Assert.isTrue(allocated.getId() > 5L, "Allocated identifier should not collide with an explicit one");
+    }
+}
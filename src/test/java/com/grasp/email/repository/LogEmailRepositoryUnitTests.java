@@ -0,0 +1,161 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+class LogEmailRepositoryUnitTests {
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+    @TempDir
+    Path coldDirectory;
+
+    @Test
+    void givenSavedEmails_whenRepositoryIsReopened_thenRecoverEmailsAndFolders() throws Exception {
+        Email moved;
+        try (LogEmailRepository repository = open()) {
+            for (int i = 0; i < 50; i++) {
+                repository.saveEmail(createEmail(300L + i % 5, Email.INBOX));
+            }
+            moved = repository.saveEmail(createEmail(310L, Email.OUTBOX));
+            moved.setFolder(Email.SENT);
+            repository.saveEmail(moved);
+        }
+        Assert.isTrue(segments().size() > 1, "Emails should have been spread over several segments");
+
+        try (LogEmailRepository repository = open()) {
+            Assert.isTrue(repository.getInboxForUserId(300L).size() == 10, "Inbox should have been recovered");
+            Email recovered = repository.getEmailForUserIdAndEmailId(310L, moved.getId());
+            Assert.notNull(recovered, "Moved email should have been recovered");
+            Assert.isTrue(Email.SENT.equals(recovered.getFolder()), "Email should have been recovered in its latest folder");
+            Assert.isTrue(repository.saveEmail(createEmail(300L, Email.INBOX)).getId() > moved.getId(), "New identifiers should not reuse recovered identifiers");
+        }
+    }
+
+    @Test
+    void givenBatchSaved_whenRepositoryIsReopened_thenRecoverEveryEmailInBatch() throws Exception {
+        List<Email> batch = List.of(createEmail(340L, Email.INBOX), createEmail(341L, Email.INBOX), createEmail(340L, Email.DRAFTS));
+        try (LogEmailRepository repository = open()) {
+            repository.saveAll(batch);
+        }
+
+        try (LogEmailRepository repository = open()) {
+            Assert.isTrue(repository.getInboxForUserId(340L).size() == 1 && repository.getInboxForUserId(341L).size() == 1, "Inboxes should have been recovered");
+            Email draft = repository.getEmailForUserIdAndEmailId(340L, batch.get(2).getId());
+            Assert.isTrue(draft != null && Email.DRAFTS.equals(draft.getFolder()), "Draft should have been recovered");
+        }
+    }
+
+    @Test
+    void givenSnapshot_whenRepositoryIsReopened_thenRecoverFromSnapshotAndLaterSegments() throws Exception {
+        try (LogEmailRepository repository = open()) {
+            for (int i = 0; i < 50; i++) {
+                repository.saveEmail(createEmail(320L, Email.INBOX));
+            }
+            repository.snapshot();
+            repository.saveEmail(createEmail(320L, Email.INBOX));
+        }
+        Assert.isTrue(segments().size() <= 2, "Segments covered by the snapshot should have been deleted");
+
+        try (LogEmailRepository repository = open()) {
+            Assert.isTrue(repository.getInboxForUserId(320L).size() == 51, "Inbox should have been recovered");
+        }
+    }
+
+    @Test
+    void givenTornRecord_whenRepositoryIsReopened_thenRecoverEmailsBeforeIt() throws Exception {
+        try (LogEmailRepository repository = open()) {
+            repository.saveEmail(createEmail(330L, Email.INBOX));
+            repository.saveEmail(createEmail(330L, Email.INBOX));
+        }
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+            channel.read(header, 0);
+            int second = 2 * Integer.BYTES + header.getInt(0);
+            channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3, 4}), second + 2 * Integer.BYTES);
+        }
+
+        try (LogEmailRepository repository = open()) {
+            Assert.isTrue(repository.getInboxForUserId(330L).size() == 1, "Only the intact record should have been recovered");
+        }
+    }
+
+    @Test
+    void givenGarbageRecordLength_whenRepositoryIsReopened_thenTreatItAsTheEndOfTheLog() throws Exception {
+        try (LogEmailRepository repository = open()) {
+            repository.saveEmail(createEmail(331L, Email.INBOX));
+            repository.saveEmail(createEmail(331L, Email.INBOX));
+        }
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+            channel.read(header, 0);
+            int second = 2 * Integer.BYTES + header.getInt(0);
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, Integer.MAX_VALUE - 8), second);
+        }
+
+        try (LogEmailRepository repository = open()) {
+            Assert.isTrue(repository.getInboxForUserId(331L).size() == 1, "Only the record before the garbage length should have been recovered");
+        }
+    }
+
+    @Test
+    void givenMailboxesPagedOut_whenSnapshottedAndReopened_thenRecoverEveryMailbox() throws Exception {
+        try (LogEmailRepository repository = openTiered()) {
+            for (int i = 0; i < 40; i++) {
+                repository.saveEmail(createEmail(350L + i % 8, Email.INBOX));
+            }
+            repository.cleanUp();
+            Assert.isTrue(repository.getColdMailboxCount() > 0, "Mailboxes should have been paged out");
+            repository.snapshot();
+            repository.saveEmail(createEmail(350L, Email.INBOX));
+        }
+
+        try (LogEmailRepository repository = openTiered()) {
+            for (int i = 0; i < 8; i++) {
+                int expected = i == 0 ? 6 : 5;
+                Assert.isTrue(repository.getInboxForUserId(350L + i).size() == expected, "Paged out mailbox should have been recovered from the snapshot");
+            }
+        }
+    }
+
+    private LogEmailRepository openTiered() throws IOException {
+        return new LogEmailRepository(directory, SEGMENT_SIZE, Duration.ofHours(1), 4, null, coldDirectory, 12, 1L);
+    }
+
+    private LogEmailRepository open() throws IOException {
+        return new LogEmailRepository(directory, SEGMENT_SIZE, Duration.ofHours(1), 4);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(v -> v.toString().endsWith(".segment")).sorted().toList();
+        }
+    }
+
+    private Email createEmail(long userId, String folder) {
+        Email email = new Email();
+        email.setUserId(userId);
+        email.setFolder(folder);
+        email.setRecipients(List.of(new EmailAddress("abc@mail.com", "Jane Doe")));
+        email.setSender(new EmailAddress("me@mail.com", "John Doe"));
+        email.setSubject("This is a test");
+        email.setMessage("Just testing if I can save this, with a body long enough to fill a few segments");
+        return email;
+    }
+}
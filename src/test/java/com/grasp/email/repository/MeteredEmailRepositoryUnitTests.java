@@ -0,0 +1,42 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import java.util.List;
+
+class MeteredEmailRepositoryUnitTests {
+    @Test
+    void givenRepositoryThatIsNotAShard_whenMetered_thenDoNotOfferShardOperations() {
+        EmailRepository metered = new MeteredEmailRepository(new ShardedEmailRepository(List.of(new InMemoryEmailShard())), new SimpleMeterRegistry());
+        Assert.isTrue(!(metered instanceof EmailShard), "Only shards should be metered as shards");
+    }
+
+    @Test
+    void givenShard_whenMeteredAndMailboxMoved_thenPassTransfersToShard() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MeteredEmailShard source = new MeteredEmailShard(new InMemoryEmailShard(), registry);
+        MeteredEmailShard target = new MeteredEmailShard(new InMemoryEmailShard(), registry);
+        source.saveEmail(createEmail(210L));
+
+        target.importMailbox(source.exportMailbox(210L));
+        source.removeMailbox(210L);
+        Assert.isTrue(source.getUserIds().isEmpty() && target.getUserIds().contains(210L), "Mailbox should have moved");
+        Assert.isTrue(target.getInboxForUserId(210L).size() == 1, "Moved mailbox should keep its emails");
+        Assert.isTrue(registry.get("email.repository.operation").tag("operation", "save").timer().count() == 1, "Save should have been timed");
+    }
+
+    private static Email createEmail(long userId) {
+        Email email = new Email();
+        email.setUserId(userId);
+        email.setFolder(Email.INBOX);
+        email.setRecipients(List.of(new EmailAddress("abc@mail.com", "Jane Doe")));
+        email.setSender(new EmailAddress("me@mail.com", "John Doe"));
+        email.setSubject("This is a test");
+        email.setMessage("Just testing if I can save this");
+        return email;
+    }
+}
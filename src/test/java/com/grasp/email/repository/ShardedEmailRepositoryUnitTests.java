@@ -0,0 +1,178 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ShardedEmailRepositoryUnitTests {
+
+    @Test
+    void givenSeveralShards_whenEmailsSaved_thenKeepEachMailboxOnItsShardWithItsIdRange() {
+        List<InMemoryEmailShard> shards = createShards(4);
+        ShardedEmailRepository repository = new ShardedEmailRepository(shards);
+        for (long userId = 500L; userId < 600L; userId++) {
+            repository.saveEmail(createEmail(userId, Email.INBOX));
+        }
+
+        for (long userId = 500L; userId < 600L; userId++) {
+            int index = repository.shardOf(userId);
+            Email email = shards.get(index).getInboxForUserId(userId).get(0);
+            Assert.isTrue(email.getId() >= ShardedEmailRepository.firstIdOf(index) && email.getId() < ShardedEmailRepository.firstIdOf(index + 1), "Email should have an identifier from its shard's range");
+            Assert.isTrue(repository.getEmailForUserIdAndEmailId(userId, email.getId()) != null, "Email should be found through the sharded repository");
+            for (int other = 0; other < shards.size(); other++) {
+                Assert.isTrue(other == index || shards.get(other).getInboxForUserId(userId).isEmpty(), "Mailbox should only be on one shard");
+            }
+        }
+        for (InMemoryEmailShard shard : shards) {
+            Assert.isTrue(!shard.getUserIds().isEmpty(), "Users should be spread across every shard");
+        }
+    }
+
+    @Test
+    void givenBatchForUsersOnSeveralShards_whenSaved_thenSaveEachPartOnItsShard() {
+        ShardedEmailRepository repository = new ShardedEmailRepository(createShards(3));
+        List<Email> batch = new ArrayList<>();
+        for (long userId = 600L; userId < 630L; userId++) {
+            batch.add(createEmail(userId, Email.INBOX));
+        }
+        repository.saveAll(batch);
+
+        for (Email email : batch) {
+            Assert.isTrue(email.getId() != null && email.getVersion() == 1L, "Every email in the batch should have been stored");
+            Assert.isTrue(repository.getInboxForUserId(email.getUserId()).size() == 1, "Email should be in its recipient's inbox");
+        }
+        Assert.isTrue(batch.stream().mapToLong(Email::getId).distinct().count() == batch.size(), "Identifiers should be unique across shards");
+    }
+
+    @Test
+    void givenShardAdded_whenRingGrows_thenOnlyMoveUsersOntoNewShard() {
+        ShardRing ring = new ShardRing(4);
+        ShardRing grown = new ShardRing(5);
+        int moved = 0;
+        for (long userId = 0; userId < 10000; userId++) {
+            int to = grown.shardOf(userId);
+            if (to != ring.shardOf(userId)) {
+                Assert.isTrue(to == 4, "Users should only move onto the new shard");
+                moved++;
+            }
+        }
+        Assert.isTrue(moved > 1000 && moved < 3000, "Around a fifth of users should move, but " + moved + " did");
+    }
+
+    @Test
+    void givenWritersDuringRebalance_whenShardAdded_thenLoseNoEmails() throws Exception {
+        List<InMemoryEmailShard> shards = createShards(3);
+        ShardedEmailRepository repository = new ShardedEmailRepository(shards);
+        for (long userId = 700L; userId < 800L; userId++) {
+            repository.saveEmail(createEmail(userId, Email.INBOX));
+        }
+
+        AtomicBoolean adding = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        int[] written = new int[2];
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 2; t++) {
+                int writer = t;
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; adding.get() || i < 200; i++) {
+                        repository.saveAll(List.of(createEmail(700L + (i * 7 + writer) % 100, Email.INBOX), createEmail(700L + (i * 13 + writer) % 100, Email.INBOX)));
+                        written[writer] += 2;
+                    }
+                }));
+            }
+            InMemoryEmailShard added = new InMemoryEmailShard(null, ShardedEmailRepository.firstIdOf(3));
+            repository.addShard(added);
+            adding.set(false);
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            Assert.isTrue(!added.getUserIds().isEmpty(), "Some mailboxes should have moved to the new shard");
+        } finally {
+            executor.shutdown();
+        }
+
+        int total = 0;
+        for (long userId = 700L; userId < 800L; userId++) {
+            total += repository.getInboxForUserId(userId).size();
+        }
+        Assert.isTrue(total == 100 + written[0] + written[1], "Every email should have been kept, but found " + total);
+        Assert.isTrue(repository.getShardCount() == 4, "Shard should have been added");
+        for (int index = 0; index < 3; index++) {
+            for (long userId : shards.get(index).getUserIds()) {
+                Assert.isTrue(repository.shardOf(userId) == index, "Moved mailboxes should have been removed from their old shard");
+            }
+        }
+    }
+
+    @Test
+    void givenUsersCreatedDuringRebalance_whenShardAdded_thenListEachShardOnceAndMoveNewUsersToo() throws Exception {
+        AtomicInteger listings = new AtomicInteger();
+        List<InMemoryEmailShard> shards = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            shards.add(new InMemoryEmailShard(null, ShardedEmailRepository.firstIdOf(i)) {
+                @Override
+                public Collection<Long> getUserIds() {
+                    listings.incrementAndGet();
+                    return super.getUserIds();
+                }
+            });
+        }
+        ShardedEmailRepository repository = new ShardedEmailRepository(shards);
+        for (long userId = 860L; userId < 900L; userId++) {
+            repository.saveEmail(createEmail(userId, Email.INBOX));
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (long userId = 900L; userId < 1000L; userId++) {
+                    repository.saveEmail(createEmail(userId, Email.INBOX));
+                }
+            });
+            repository.addShard(new InMemoryEmailShard(null, ShardedEmailRepository.firstIdOf(3)));
+            writer.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.isTrue(listings.get() == 3, "Each shard should have been listed once, but were listed " + listings.get() + " times");
+        for (long userId = 860L; userId < 1000L; userId++) {
+            Assert.isTrue(repository.getInboxForUserId(userId).size() == 1, "Mailbox of user " + userId + " should be on its shard");
+        }
+        for (int index = 0; index < 3; index++) {
+            for (long userId : shards.get(index).getUserIds()) {
+                Assert.isTrue(repository.shardOf(userId) == index, "Moved mailboxes should have been removed from their old shard");
+            }
+        }
+    }
+
+    private static List<InMemoryEmailShard> createShards(int count) {
+        List<InMemoryEmailShard> shards = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            shards.add(new InMemoryEmailShard(null, ShardedEmailRepository.firstIdOf(i)));
+        }
+        return shards;
+    }
+
+    private static Email createEmail(long userId, String folder) {
+        Email email = new Email();
+        email.setUserId(userId);
+        email.setFolder(folder);
+        email.setRecipients(List.of(new EmailAddress("abc@mail.com", "Jane Doe")));
+        email.setSender(new EmailAddress("me@mail.com", "John Doe"));
+        email.setSubject("This is a test");
+        email.setMessage("Just testing if I can save this");
+        return email;
+    }
+}
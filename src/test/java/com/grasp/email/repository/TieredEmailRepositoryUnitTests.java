@@ -0,0 +1,131 @@
+package com.grasp.email.repository;
+
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+import com.grasp.email.model.EmailSummary;
+import com.grasp.email.model.Page;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.Assert;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class TieredEmailRepositoryUnitTests {
+    private static final long MAX_RESIDENT_EMAILS = 20;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void givenMoreEmailsThanCap_whenSaved_thenPageOutMailboxesAndReadThemBack() throws Exception {
+        TieredEmailRepository repository = new TieredEmailRepository(directory, MAX_RESIDENT_EMAILS);
+        List<Email> saved = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            saved.add(repository.saveEmail(createEmail(400L + i % 10, Email.INBOX)));
+        }
+        repository.cleanUp();
+        Assert.isTrue(repository.getResidentWeight() <= MAX_RESIDENT_EMAILS, "Resident emails should be capped");
+        Assert.isTrue(repository.getColdMailboxCount() > 0, "Mailboxes should have been paged out to disk");
+
+        for (long userId = 400L; userId < 410L; userId++) {
+            Assert.isTrue(repository.getInboxForUserId(userId).size() == 5, "Inbox of user " + userId + " should have been paged back in");
+        }
+        Email first = repository.getEmailForUserIdAndEmailId(400L, saved.get(0).getId());
+        Assert.isTrue(first != null && first.getVersion() == 1L, "Email should be read back at its version");
+        Page<EmailSummary> matches = repository.searchForUserId(401L, "testing", null, 10, null);
+        Assert.isTrue(matches.getItems().size() == 5, "Paged in mailbox should be searchable");
+        Assert.isTrue(repository.getInboxForUserId(499L).isEmpty(), "Unknown user should have an empty inbox");
+    }
+
+    @Test
+    void givenMailboxPagedOut_whenEmailIsMovedAndReplaced_thenKeepWritesAcrossPaging() throws Exception {
+        TieredEmailRepository repository = new TieredEmailRepository(directory, MAX_RESIDENT_EMAILS);
+        Email draft = repository.saveEmail(createEmail(410L, Email.DRAFTS));
+        repository.pageOutAll();
+        Assert.isTrue(repository.getColdMailboxCount() == 1, "Mailbox should have been paged out");
+        Assert.isTrue(repository.getDistinctMessageCount() == 0, "Paged out content should have been released");
+
+        Email moved = repository.moveEmail(410L, draft.getId(), Email.DRAFTS, Email.OUTBOX);
+        Assert.isTrue(moved != null && moved.getVersion() == 2L, "Paged out email should have been moved");
+        repository.pageOutAll();
+
+        moved.setSubject("Revised");
+        Email replaced = repository.replaceEmail(moved, Email.OUTBOX);
+        Assert.isTrue(replaced != null && replaced.getVersion() == 3L, "Paged out email should have been replaced");
+        repository.pageOutAll();
+
+        Email stored = repository.getEmailForUserIdAndEmailId(410L, draft.getId());
+        Assert.isTrue(Email.OUTBOX.equals(stored.getFolder()) && "Revised".equals(stored.getSubject()), "Both writes should have been kept");
+        Assert.isTrue(repository.getColdMailboxCount() == 0, "Mailbox file should have been removed once paged in");
+    }
+
+    @Test
+    void givenMailboxPagedOut_whenMovedToAnotherShard_thenTakeItOffDiskAndServeItThere() throws Exception {
+        TieredEmailShard source = new TieredEmailShard(directory.resolve("source"), MAX_RESIDENT_EMAILS, null, ShardedEmailRepository.firstIdOf(0));
+        TieredEmailShard target = new TieredEmailShard(directory.resolve("target"), MAX_RESIDENT_EMAILS, null, ShardedEmailRepository.firstIdOf(1));
+        Email email = source.saveEmail(createEmail(411L, Email.INBOX));
+        source.pageOutAll();
+
+        target.importMailbox(source.exportMailbox(411L));
+        source.removeMailbox(411L);
+
+        Assert.isTrue(source.getUserIds().isEmpty() && source.getColdMailboxCount() == 0, "Mailbox should have been removed from disk");
+        Email moved = target.getEmailForUserIdAndEmailId(411L, email.getId());
+        Assert.isTrue(moved != null && moved.getVersion() == 1L, "Mailbox should be served by the other shard at its version");
+    }
+
+    @Test
+    void givenConcurrentWritersOverCap_whenSaving_thenLoseNoEmails() throws Exception {
+        TieredEmailRepository repository = new TieredEmailRepository(directory, MAX_RESIDENT_EMAILS);
+        int threads = 4;
+        int emailsPerThread = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < emailsPerThread; i++) {
+                        repository.saveEmail(createEmail(420L + i % 8, Email.INBOX));
+                        repository.getInboxSummariesForUserId(420L + (i + 3) % 8);
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        int total = 0;
+        for (long userId = 420L; userId < 428L; userId++) {
+            total += repository.getInboxForUserId(userId).size();
+        }
+        Assert.isTrue(total == threads * emailsPerThread, "Every email should have been kept, but found " + total);
+    }
+
+    @Test
+    void givenFilesFromPreviousRun_whenOpened_thenDiscardThem() throws Exception {
+        Files.writeString(directory.resolve("430.mailbox"), "stale");
+        TieredEmailRepository repository = new TieredEmailRepository(directory, MAX_RESIDENT_EMAILS);
+        Assert.isTrue(Files.notExists(directory.resolve("430.mailbox")), "Stale mailbox file should have been deleted");
+        Assert.isTrue(repository.getInboxForUserId(430L).isEmpty(), "Stale mailbox should not be read");
+    }
+
+    private Email createEmail(long userId, String folder) {
+        Email email = new Email();
+        email.setUserId(userId);
+        email.setFolder(folder);
+        email.setRecipients(List.of(new EmailAddress("abc@mail.com", "Jane Doe")));
+        email.setSender(new EmailAddress("me@mail.com", "John Doe"));
+        email.setSubject("This is a test");
+        email.setMessage("Just testing if I can save this");
+        return email;
+    }
+}
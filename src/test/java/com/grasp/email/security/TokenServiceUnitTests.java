@@ -0,0 +1,85 @@
+package com.grasp.email.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+class TokenServiceUnitTests {
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    void givenIssuedToken_whenVerified_thenIdentifyUserAndRole() {
+        TokenService tokens = new TokenService(SECRET, 100);
+        TokenAuthentication user = tokens.verify(tokens.issue(42L, false, Duration.ofMinutes(5)));
+        Assert.isTrue(user != null && user.getUserId() == 42L && !user.isAdmin(), "User token should be verified");
+        Assert.isTrue(user.getAuthorities().stream().noneMatch(v -> "ROLE_ADMIN".equals(v.getAuthority())), "User token should not grant admin");
+
+        TokenAuthentication admin = tokens.verify(tokens.issue(1L, true, Duration.ofMinutes(5)));
+        Assert.isTrue(admin != null && admin.isAdmin(), "Admin token should be verified");
+    }
+
+    @Test
+    void givenTamperedOrForeignToken_whenVerified_thenReject() {
+        TokenService tokens = new TokenService(SECRET, 100);
+        String token = tokens.issue(42L, false, Duration.ofMinutes(5));
+        String forged = Base64.getUrlEncoder().withoutPadding().encodeToString("42.9999999999.admin".getBytes(StandardCharsets.US_ASCII))
+                + token.substring(token.indexOf('.'));
+        Assert.isNull(tokens.verify(forged), "Token with a changed payload should be rejected");
+        Assert.isNull(tokens.verify(token + "x"), "Token with a changed signature should be rejected");
+        Assert.isNull(tokens.verify("not a token"), "Malformed token should be rejected");
+
+        TokenService other = new TokenService("fedcba9876543210fedcba9876543210".getBytes(StandardCharsets.US_ASCII), 100);
+        Assert.isNull(other.verify(token), "Token signed with another secret should be rejected");
+    }
+
+    @Test
+    void givenCachedToken_whenItExpires_thenReject() {
+        MutableClock clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+        TokenService tokens = new TokenService(SECRET, 100, clock);
+        String token = tokens.issue(42L, false, Duration.ofMinutes(5));
+        Assert.notNull(tokens.verify(token), "Token should be verified before it expires");
+        Assert.notNull(tokens.verify(token), "Cached token should be accepted before it expires");
+
+        clock.now = clock.now.plus(Duration.ofMinutes(6));
+        Assert.isNull(tokens.verify(token), "Cached token should be rejected once expired");
+    }
+
+    @Test
+    void givenNoCache_whenVerifiedRepeatedly_thenVerifyEveryTime() {
+        TokenService tokens = new TokenService(SECRET, 0);
+        String token = tokens.issue(42L, false, Duration.ofMinutes(5));
+        for (int i = 0; i < 3; i++) {
+            Assert.notNull(tokens.verify(token), "Token should be verified without a cache");
+        }
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.grasp.email.service;
+
+import com.grasp.email.exception.ServiceUnavailableException;
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+import com.grasp.email.model.User;
+import com.grasp.email.repository.EmailRepository;
+import com.grasp.email.repository.InMemoryUserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.util.Assert;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class DeliveryServiceUnitTests {
+    @Test
+    void givenQueueWithoutRoomForEveryBatch_whenDelivered_thenQueueNoneOfThem() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        EmailRepository emailRepository = Mockito.mock(EmailRepository.class);
+        Mockito.when(emailRepository.saveAll(ArgumentMatchers.anyList())).thenAnswer(v -> {
+            release.await(10, TimeUnit.SECONDS);
+            return v.getArgument(0);
+        });
+        InMemoryUserRepository userRepository = new InMemoryUserRepository();
+        userRepository.saveUser(new User(null, "Jane", "Doe", "jane@mail.com"));
+        userRepository.saveUser(new User(null, "Joe", "Bloggs", "joe@mail.com"));
+        DeliveryService delivery = new DeliveryService(emailRepository, userRepository, new SimpleMeterRegistry(), 1, 3, 1);
+        try {
+            // One batch is held by the worker and one waits, leaving room for one more
+            delivery.deliver(createEmail());
+            Assertions.assertThrows(ServiceUnavailableException.class, () -> delivery.deliver(createEmail()),
+                    "Email needing two batches should be refused with room for one");
+            Assert.isTrue(delivery.getQueueDepth() <= 1, "No batch of the refused email should have been queued");
+
+            release.countDown();
+            for (int i = 0; i < 100 && delivery.getQueueDepth() > 0; i++) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(50);
+            delivery.deliver(createEmail());
+        } finally {
+            release.countDown();
+            delivery.shutdown();
+        }
+    }
+
+    private static Email createEmail() {
+        Email email = new Email();
+        email.setUserId(1L);
+        email.setSender(new EmailAddress("me@mail.com", "John Doe"));
+        email.setRecipients(List.of(new EmailAddress("jane@mail.com", null), new EmailAddress("joe@mail.com", null)));
+        email.setSubject("Test");
+        email.setMessage("Testing");
+        return email;
+    }
+}
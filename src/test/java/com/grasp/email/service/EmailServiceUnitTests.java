@@ -1,4 +1,119 @@
 package com.grasp.email.service;
 
+import com.grasp.email.exception.ConflictException;
+import com.grasp.email.exception.ResourceNotFoundException;
+import com.grasp.email.model.BatchItemResult;
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+import com.grasp.email.repository.EmailRepository;
+import com.grasp.email.repository.InMemoryEmailRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.Assert;
+
+import java.util.List;
+
+@ExtendWith(MockitoExtension.class)
 public class EmailServiceUnitTests {
+    @Spy
+    private EmailRepository repository = new InMemoryEmailRepository();
+
+    @Mock
+    private DeliveryService deliveryService;
+
+    @Mock
+    private SendAuditor sendAuditor;
+
+    @Mock
+    private WriteAdmission admission;
+
+    @InjectMocks
+    private EmailService service;
+
+    @Test
+    void givenEmailMovedOutOfOutboxDuringDelivery_whenBatchIsSent_thenReportConflictAndLeaveItWhereItWasMoved() {
+        Email first = createEmail();
+        Email second = createEmail();
+        Mockito.doAnswer(v -> {
+            Email email = v.getArgument(0);
+            if (email == second) {
+                repository.moveEmail(1L, email.getId(), Email.OUTBOX, Email.DRAFTS);
+            }
+            return null;
+        }).when(deliveryService).deliver(ArgumentMatchers.any());
+
+        List<BatchItemResult> results = service.sendAll(1L, List.of(first, second));
+
+        Assert.isTrue(results.get(0).getStatus() == HttpStatus.CREATED.value(), "First email should have been sent");
+        Assert.isTrue(Email.SENT.equals(results.get(0).getEmail().getFolder()), "First email should be in the sent folder");
+        Assert.isTrue(results.get(1).getStatus() == HttpStatus.CONFLICT.value(), "Moved email should be reported as a conflict");
+        Assert.isTrue(Email.DRAFTS.equals(repository.getEmailForUserIdAndEmailId(1L, second.getId()).getFolder()),
+                "Moved email should not have been written back to the sent folder");
+        Assert.isTrue(Email.OUTBOX.equals(second.getFolder()), "Caller's email should not have been changed after it was saved");
+    }
+
+    @Test
+    void givenEmailMovedOutOfOutboxDuringDelivery_whenSent_thenRejectAsConflict() {
+        Email email = createEmail();
+        Mockito.doAnswer(v -> repository.moveEmail(1L, email.getId(), Email.OUTBOX, Email.DRAFTS))
+                .when(deliveryService).deliver(email);
+
+        Assertions.assertThrows(ConflictException.class, () -> service.send(1L, email),
+                "Send should fail once the email has left the outbox");
+        Assert.isTrue(Email.DRAFTS.equals(repository.getEmailForUserIdAndEmailId(1L, email.getId()).getFolder()),
+                "Email should have been left where it was moved");
+    }
+
+    @Test
+    void givenSentEmail_whenSentAgainWithItsIdentifier_thenRejectWithoutOverwritingIt() {
+        Email email = service.send(1L, createEmail());
+
+        Email resent = createEmail();
+        resent.setId(email.getId());
+        resent.setSubject("Changed");
+        Assertions.assertThrows(ConflictException.class, () -> service.send(1L, resent),
+                "Email no longer in drafts should not be sent again");
+        Assert.isTrue("Test".equals(repository.getEmailForUserIdAndEmailId(1L, email.getId()).getSubject()),
+                "Sent email should not have been overwritten");
+    }
+
+    @Test
+    void givenUnknownIdentifier_whenSent_thenRejectAsNotFound() {
+        Email email = createEmail();
+        email.setId(999_999L);
+
+        Assertions.assertThrows(ResourceNotFoundException.class, () -> service.send(1L, email),
+                "Email without a stored draft should not be sent");
+        Assert.isNull(repository.getEmailForUserIdAndEmailId(1L, 999_999L), "No email should have been stored");
+        Mockito.verifyNoInteractions(deliveryService);
+    }
+
+    @Test
+    void givenDraft_whenSentWithItsIdentifier_thenMoveItToSent() {
+        Email draft = service.createDraft(1L, createEmail());
+
+        Email email = createEmail();
+        email.setId(draft.getId());
+        Email sent = service.send(1L, email);
+
+        Assert.isTrue(Email.SENT.equals(sent.getFolder()), "Draft should have been sent");
+        Assert.isTrue(draft.getId().equals(sent.getId()), "Draft should have kept its identifier");
+    }
+
+    private static Email createEmail() {
+        Email email = new Email();
+        email.setSender(new EmailAddress("me@mail.com", "John Doe"));
+        email.setRecipients(List.of(new EmailAddress("jane@mail.com", null)));
+        email.setSubject("Test");
+        email.setMessage("Testing");
+        return email;
+    }
 }
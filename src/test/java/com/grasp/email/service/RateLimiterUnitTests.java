@@ -0,0 +1,44 @@
+package com.grasp.email.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+class RateLimiterUnitTests {
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    @Test
+    void givenFullBucket_whenBurstIsTaken_thenRejectUntilRefilled() {
+        RateLimiter limiter = new RateLimiter(10, 5, 100, now::get);
+        for (int i = 0; i < 5; i++) {
+            Assert.isTrue(limiter.tryAcquire(1L, 1) == 0, "Burst should be admitted");
+        }
+        long wait = limiter.tryAcquire(1L, 1);
+        Assert.isTrue(wait == TimeUnit.MILLISECONDS.toNanos(100), "Caller should wait one interval, not " + wait);
+
+        now.addAndGet(wait);
+        Assert.isTrue(limiter.tryAcquire(1L, 1) == 0, "Permit should be admitted once refilled");
+        Assert.isTrue(limiter.tryAcquire(1L, 1) > 0, "Only one permit should have refilled");
+    }
+
+    @Test
+    void givenExhaustedUser_whenAnotherUserAcquires_thenAdmitThem() {
+        RateLimiter limiter = new RateLimiter(1, 2, 100, now::get);
+        Assert.isTrue(limiter.tryAcquire(1L, 2) == 0, "First user's burst should be admitted");
+        Assert.isTrue(limiter.tryAcquire(1L, 1) > 0, "First user should be limited");
+        Assert.isTrue(limiter.tryAcquire(2L, 2) == 0, "Second user should have their own bucket");
+    }
+
+    @Test
+    void givenBatchLargerThanBurst_whenAcquired_thenChargeWholeBurst() {
+        RateLimiter limiter = new RateLimiter(10, 5, 100, now::get);
+        Assert.isTrue(limiter.tryAcquire(1L, 50) == 0, "Batch should be admitted with a full bucket");
+        Assert.isTrue(limiter.tryAcquire(1L, 50) == TimeUnit.MILLISECONDS.toNanos(500), "Next batch should wait for the whole bucket to refill");
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        Assert.isTrue(limiter.tryAcquire(1L, 5) == 0, "Idle bucket should refill no further than the burst");
+        Assert.isTrue(limiter.tryAcquire(1L, 1) > 0, "Idle bucket should not accumulate beyond the burst");
+    }
+}
@@ -0,0 +1,58 @@
+package com.grasp.email.service;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.List;
+
+class SendAuditorUnitTests {
+    private final Logger logger = (Logger) LoggerFactory.getLogger(SendAuditor.LOGGER_NAME);
+    private final ListAppender<ILoggingEvent> events = new ListAppender<>();
+
+    @BeforeEach
+    void setUp() {
+        events.start();
+        logger.addAppender(events);
+    }
+
+    @AfterEach
+    void tearDown() {
+        logger.detachAppender(events);
+    }
+
+    @Test
+    void givenSentEmail_whenAudited_thenRecordCountsAndSizeButNoAddressesOrContent() {
+        new SendAuditor(1.0).sent(createEmail());
+
+        Assert.isTrue(events.list.size() == 1, "Send should have been audited");
+        String event = events.list.get(0).getFormattedMessage();
+        Assert.isTrue("sent id=5 user=7 to=2 cc=0 bcc=1 bytes=15".equals(event), "Unexpected audit event " + event);
+        Assert.isTrue(!event.contains("secret@mail.com") && !event.contains("Body"), "Audit event should not leak addresses or content");
+    }
+
+    @Test
+    void givenZeroSampleRate_whenAudited_thenRecordNothing() {
+        new SendAuditor(0.0).sent(createEmail());
+
+        Assert.isTrue(events.list.isEmpty(), "Unsampled send should not have been audited");
+    }
+
+    private Email createEmail() {
+        Email email = new Email();
+        email.setId(5L);
+        email.setUserId(7L);
+        email.setRecipients(List.of(new EmailAddress("abc@mail.com", "Jane Doe"), new EmailAddress("def@mail.com", null)));
+        email.setBlindCarbonCopies(List.of(new EmailAddress("secret@mail.com", null)));
+        email.setSubject("Café");
+        email.setMessage("Body text!");
+        return email;
+    }
+}
@@ -0,0 +1,65 @@
+package com.grasp.email.service;
+
+import com.grasp.email.exception.QuotaExceededException;
+import com.grasp.email.model.Email;
+import com.grasp.email.model.EmailAddress;
+import com.grasp.email.repository.EmailRepository;
+import com.grasp.email.repository.InMemoryEmailRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.List;
+
+class WriteAdmissionUnitTests {
+    private final EmailRepository repository = new InMemoryEmailRepository();
+
+    @Test
+    void givenMailboxAtEmailQuota_whenDraftIsReplacedOrSent_thenAdmitItButNotNewEmails() {
+        WriteAdmission admission = createAdmission(1, 0);
+        Email draft = repository.saveEmail(createEmail(Email.DRAFTS, "Draft"));
+
+        Email replacement = createEmail(Email.DRAFTS, "Revised draft");
+        replacement.setId(draft.getId());
+        admission.admitDrafts(1L, List.of(replacement));
+        admission.admitSends(1L, List.of(replacement));
+        Assertions.assertThrows(QuotaExceededException.class, () -> admission.admitDrafts(1L, List.of(createEmail(Email.DRAFTS, "New"))),
+                "New draft should be refused in a full mailbox");
+    }
+
+    @Test
+    void givenMailboxNearByteQuota_whenWriteWouldOvershootIt_thenRefuseItCountingTheIncomingBytes() {
+        Email draft = repository.saveEmail(createEmail(Email.DRAFTS, "Draft"));
+        WriteAdmission admission = createAdmission(0, repository.getUsageForUserId(1L).getBytes() + 10);
+
+        Assertions.assertThrows(QuotaExceededException.class, () -> admission.admitDrafts(1L, List.of(createEmail(Email.DRAFTS, "New"))),
+                "Draft that doesn't fit should be refused while the mailbox is under its quota");
+
+        Email sameSize = createEmail(Email.DRAFTS, "Draft");
+        sameSize.setId(draft.getId());
+        admission.admitDrafts(1L, List.of(sameSize));
+
+        Email larger = createEmail(Email.DRAFTS, "Draft grown by far more than the room left");
+        larger.setId(draft.getId());
+        Assertions.assertThrows(QuotaExceededException.class, () -> admission.admitDrafts(1L, List.of(larger)),
+                "Replacement should be charged what it adds to the stored draft");
+    }
+
+    private WriteAdmission createAdmission(long maxEmails, long maxBytes) {
+        return new WriteAdmission(repository, Mockito.mock(DeliveryService.class), new SimpleMeterRegistry(),
+                0, 1000, 0, 1000, 100, maxEmails, maxBytes, 0, 0, Duration.ofSeconds(1));
+    }
+
+    private static Email createEmail(String folder, String subject) {
+        Email email = new Email();
+        email.setUserId(1L);
+        email.setFolder(folder);
+        email.setSender(new EmailAddress("me@mail.com", "John Doe"));
+        email.setRecipients(List.of(new EmailAddress("jane@mail.com", null)));
+        email.setSubject(subject);
+        email.setMessage("Testing");
+        return email;
+    }
+}